@@ -0,0 +1,12 @@
+/**
+ * The JCalculator engine: the arithmetic parser, its parse trees, and the
+ * evaluators built on them. It requires nothing beyond java.base, so it can be
+ * linked into a small runtime image without AWT or Swing. The Vector API is
+ * used by BatchEvaluator when jdk.incubator.vector has been added to the
+ * runtime, and scalar loops are used otherwise.
+ */
+module org.kmfahey.jcalculator {
+    requires static jdk.incubator.vector;
+
+    exports org.kmfahey.jcalculator;
+}
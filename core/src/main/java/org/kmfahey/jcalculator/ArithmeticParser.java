@@ -0,0 +1,526 @@
+package org.kmfahey.jcalculator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.text.ParseException;
+
+/**
+ * Implements the shunting-yard algorithm to parse the given arithmetic
+ * expression and return a parse tree composed of ParseTreeNode objects.
+ *
+ * The operators an expression may use are those of an OperatorRegistry, by
+ * default the calculator's own. Each operator is resolved to an Operator as
+ * the expression is tokenized, so the algorithm reads its precedence,
+ * associativity and arity from fields, rather than looking them up by its
+ * symbol at every step.
+ *
+ * The parser streams: it pulls each token from an ExpressionLexer as it's
+ * needed, rather than tokenizing the whole expression first, and its operator
+ * and operand stacks are plain arrays, with each terminal value held as a
+ * primitive double and float until it's reduced into a node. Parsing takes time linear
+ * in the length of the expression, and beyond the tree it builds, memory in
+ * proportion to how deeply the expression nests: a chain of left-associative
+ * operators is reduced as it's read, so only parens, right-associative chains
+ * and operators awaiting an operand of higher precedence deepen the stacks.
+ *
+ * The algorithm outputs the expression's operands and operators in postfix
+ * order. parseExpression() builds a tree from them; compileExpression()
+ * instead emits them straight into a PostfixProgram, for a caller that only
+ * wants to evaluate the expression, without building a tree first. */
+public class ArithmeticParser {
+
+    /* Serves the purpose of a C Union type: an operand stack element may be
+     * either a String or a ParseTreeNode, so it's typed StackElement and the
+     * object is instanced around either value as appropriate. StackElement
+     * and instanceNodeInStackElem() are used by IncrementalExpression, whose
+     * immutable stacks can't be the arrays TreeBuilder uses; they build the
+     * same nodes TreeBuilder.applyOperator() does, so its trees are identical
+     * to these. */
+    static record StackElement(String token, ParseTreeNode node) { }
+
+    /* The error reported for an operand no operator joins to the rest of the
+     * expression, as in "2(3)", which the lexer has always accepted. */
+    private static final String MISSING_OPERATOR = "math expression has an operand with no operator";
+
+    private ArithmeticParser() { }
+
+    /**
+     * Parses the arithmetic expression this object was instanced around, using
+     * Dijkstra's shunting-yard algorithm. Returns a ParseTreeNode object which
+     * is the root of the resultant parse tree.
+     *
+     * @return a ParseTreeNode object which is the root of the generated parse
+     *         tree
+     */
+    public static ParseTreeNode parseExpression(String expression) throws ParseException {
+        return parseExpression(expression, false);
+    }
+
+    /**
+     * Parses an arithmetic expression as parseExpression(String) does, but if
+     * variablesAllowed is true, also accepts variable names as operands; each
+     * becomes a variable leaf ParseTreeNode. In that mode an expression that's
+     * a lone number, which parseExpression(String) has always returned null
+     * for, is returned as a terminal leaf ParseTreeNode.
+     *
+     * @param  expression       the arithmetic expression to parse
+     * @param  variablesAllowed true if variable names are allowed as operands
+     * @return a ParseTreeNode object which is the root of the generated parse
+     *         tree
+     */
+    public static ParseTreeNode parseExpression(final String expression, final boolean variablesAllowed)
+            throws ParseException {
+        return parseExpression(expression, variablesAllowed, OperatorRegistry.STANDARD);
+    }
+
+    /**
+     * Parses an arithmetic expression as parseExpression(String, boolean)
+     * does, accepting the operators defined in the given registry as well as
+     * the calculator's own. The expression may be any CharSequence, such as a
+     * CharBuffer over a memory-mapped file, and is scanned where it lies.
+     *
+     * @param  expression       the arithmetic expression to parse
+     * @param  variablesAllowed true if variable names are allowed as operands
+     * @param  registry         the operators the expression may use
+     * @return a ParseTreeNode object which is the root of the generated parse
+     *         tree
+     */
+    public static ParseTreeNode parseExpression(final CharSequence expression, final boolean variablesAllowed,
+                                                final OperatorRegistry registry) throws ParseException {
+        if (registry == null) { throw new IllegalArgumentException("argument 'registry' was null"); }
+        TreeBuilder treeBuilder = new TreeBuilder();
+        parseTokens(new ExpressionLexer(expression, variablesAllowed, registry), treeBuilder);
+        return treeBuilder.root(variablesAllowed);
+    }
+
+    /**
+     * Parses an arithmetic expression as parseExpression(String) does, reading
+     * it from a range of UTF-8 bytes rather than a String. The bytes are
+     * tokenized where they lie, so a line of a memory-mapped file can be
+     * parsed without first being decoded into a String. The buffer's position
+     * and limit are ignored and left unchanged, so several threads can parse
+     * from one buffer at once.
+     *
+     * @param  bytes      the buffer holding the expression
+     * @param  bytesStart the offset of the expression's first byte
+     * @param  bytesEnd   the offset one past its last byte
+     * @return a ParseTreeNode object which is the root of the generated parse
+     *         tree
+     */
+    public static ParseTreeNode parseExpression(final ByteBuffer bytes, final int bytesStart, final int bytesEnd)
+            throws ParseException {
+        TreeBuilder treeBuilder = new TreeBuilder();
+        parseTokens(new ExpressionLexer(bytes, bytesStart, bytesEnd, false), treeBuilder);
+        return treeBuilder.root(false);
+    }
+
+    /**
+     * Parses an arithmetic expression and compiles it into a PostfixProgram,
+     * emitting each instruction as the shunting-yard algorithm outputs it,
+     * rather than building a parse tree and compiling that. The program is
+     * the one PostfixProgram.compile() would make from the tree
+     * parseExpression(String) returns, and PostfixProgram.toParseTree() gives
+     * that tree back. An expression that's a lone number is compiled into a
+     * program that pushes it.
+     *
+     * @param  expression the arithmetic expression to parse
+     * @return a PostfixProgram that evaluates the expression
+     */
+    public static PostfixProgram compileExpression(final String expression) throws ParseException {
+        return compileExpression(expression, false);
+    }
+
+    /**
+     * Parses an arithmetic expression and compiles it into a PostfixProgram
+     * as compileExpression(String) does, but if variablesAllowed is true,
+     * also accepts variable names as operands; each distinct one is bound to
+     * a slot of the program.
+     *
+     * A malformed number, such as "1.2.3", is converted as it's read, so it's
+     * reported by a NumberFormatException even where the expression is a lone
+     * number.
+     *
+     * @param  expression       the arithmetic expression to parse
+     * @param  variablesAllowed true if variable names are allowed as operands
+     * @return a PostfixProgram that evaluates the expression
+     */
+    public static PostfixProgram compileExpression(final CharSequence expression, final boolean variablesAllowed)
+            throws ParseException {
+        ProgramBuilder programBuilder = new ProgramBuilder();
+        parseTokens(new ExpressionLexer(expression, variablesAllowed), programBuilder);
+        return programBuilder.build();
+    }
+
+    /* Runs the shunting-yard algorithm over the tokens a lexer scans, pulling
+     * each from the lexer in turn, and sends its output to the given Output.
+     * The lexer checks each token for syntax errors as it's scanned and
+     * resolves each operator, distinguishing between unary and binary minus.
+     *
+     * A syntax error anywhere in the expression has always been reported
+     * ahead of an error the algorithm itself runs into, such as an unmatched
+     * right paren, since the whole expression used to be tokenized first. So
+     * if the algorithm throws, the rest of the expression is scanned for a
+     * syntax error before the exception is rethrown. */
+    private static void parseTokens(final ExpressionLexer lexer, final Output output) throws ParseException {
+        OperatorStack operatorStack = new OperatorStack();
+
+        try {
+            // Pull a token from the lexer
+            for (int tokenCode = lexer.nextToken(); tokenCode != ExpressionLexer.END_OF_INPUT;
+                    tokenCode = lexer.nextToken()) {
+                Operator firstOperator = lexer.tokenOperator();
+                // If the token is an operand, then push onto operand stack.
+                if (tokenCode == ExpressionLexer.NUMBER) {
+                    output.pushNumber(lexer.tokenText());
+                // If the token is a variable name, then push a variable leaf onto operand stack.
+                } else if (tokenCode == ExpressionLexer.IDENTIFIER) {
+                    output.pushVariable(lexer.tokenText());
+                // If the token is an unary prefix operator, then push onto operator stack.
+                } else if (firstOperator != null && firstOperator.isUnary()) {
+                    operatorStack.push(firstOperator);
+                // If the token is a binary operator, o1, then
+                } else if (firstOperator != null) {
+                    boolean firstLeftAssoc = firstOperator.isLeftAssociative();
+                    int firstPrecedence = firstOperator.precedence();
+                    int secondPrecedence;
+                    // While there's an operator token, o2, at top of operator stack;
+                    while (true) {
+                        if (operatorStack.isEmpty() || operatorStack.peek() == null) {
+                            break;
+                        }
+                        secondPrecedence = operatorStack.peek().precedence();
+                        // And either o1 is left associative and its precedence is
+                        // less-than-or-equal-to the precedence of o2, or o1 is
+                        // right associative and its precedence is less than the
+                        // precedence of o2,
+                        if (firstLeftAssoc && !(firstPrecedence <= secondPrecedence)) {
+                            break;
+                        } else if (!firstLeftAssoc && !(firstPrecedence < secondPrecedence)) {
+                            break;
+                        }
+                        // Reduce an expression from the operator and operand stacks
+                        // onto the operand stack.
+                        reduce(operatorStack, output);
+                    }
+                    operatorStack.push(firstOperator);
+                // If the token is a left paren, then push it onto operator stack.
+                } else if (tokenCode == ExpressionLexer.LEFT_PAREN) {
+                    operatorStack.push(null);
+                // If the token is a right paren,
+                } else if (tokenCode == ExpressionLexer.RIGHT_PAREN) {
+                    // Until the token at top of operator stack is a left paren,
+                    while (!operatorStack.isEmpty() && operatorStack.peek() != null) {
+                        // Reduce an expression from the operator and operand stacks
+                        // onto the operand stack.
+                        reduce(operatorStack, output);
+                    }
+                    // Then remove the left paren from the operator stack and
+                    // discard it; and discard the right paren as well.
+                    operatorStack.pop();
+                }
+                // An unrecognized character has never contributed to the parse tree.
+            }
+        } catch (RuntimeException exception) {
+            while (lexer.nextToken() != ExpressionLexer.END_OF_INPUT) {
+                continue;
+            }
+            throw exception;
+        }
+
+        // When the expression is exhausted, iteratively reduce expressions onto
+        // the operand stack until the operator stack is empty.
+        while (!operatorStack.isEmpty()) {
+            reduce(operatorStack, output);
+        }
+    }
+
+    /* Executes part of the shunting-yard algorithm: pops an operator off the
+     * operator stack and outputs it, which reduces it with its operands. A
+     * left paren left unclosed is popped as a null, and is reported as it
+     * always has been. */
+    private static void reduce(final OperatorStack operatorStack, final Output output) {
+        Operator operator = operatorStack.pop();
+        if (operator == null) {
+            throw new IllegalStateException("operator '(' not in unary/binary table");
+        }
+        output.applyOperator(operator);
+    }
+
+    /* Instances and returns a StackElement object with a null token() value and
+     * a node() value of a new ParseTreeNode object instanced from the contents
+     * of the StackElement object argument and the operator argument.
+     *
+     * @param operator   an arithmetic operator
+     * @param rightChild a StackElement object with either a String token value
+     *                   or a ParseTreeNode node value
+     * @return           a StackElement object with a null token and a new
+     *                   ParseTreeNode object instanced from the method
+     *                   arguments
+     */
+    static StackElement instanceNodeInStackElem(final Operator operator, final StackElement rightChild) {
+        if (rightChild.token() != null) {
+            double rightValue = Double.parseDouble(rightChild.token());
+            return new StackElement(null, new ParseTreeNode(operator, rightValue,
+                                                            nearestFloat(rightValue, rightChild.token()),
+                                                            rightChild.token()));
+        } else {
+            return new StackElement(null, new ParseTreeNode(operator, rightChild.node()));
+        }
+    }
+
+    /* Instances and returns a StackElement object with a null token() value and
+     * a node() value of a new ParseTreeNode object instanced from the contents
+     * of the two StackElement object arguments and the operator argument.
+     *
+     * @param leftChild  a StackElement object with either a String token value
+     *                   or a ParseTreeNode node value
+     * @param operator   an arithmetic operator
+     * @param rightChild a StackElement object with either a String token value
+     *                   or a ParseTreeNode node value
+     * @return           a StackElement object with a null token and a new
+     *                   ParseTreeNode object instanced from the method
+     *                   arguments
+     */
+    static StackElement instanceNodeInStackElem(final StackElement leftChild, final Operator operator,
+                                        final StackElement rightChild) {
+        if (leftChild.token() != null && rightChild.token() != null) {
+            double leftValue = Double.parseDouble(leftChild.token());
+            double rightValue = Double.parseDouble(rightChild.token());
+            return new StackElement(null, new ParseTreeNode(leftValue, nearestFloat(leftValue, leftChild.token()),
+                                                            leftChild.token(), operator, rightValue,
+                                                            nearestFloat(rightValue, rightChild.token()),
+                                                            rightChild.token()));
+        } else if (leftChild.node() != null && rightChild.token() != null) {
+            double rightValue = Double.parseDouble(rightChild.token());
+            return new StackElement(null, new ParseTreeNode(leftChild.node(), operator, rightValue,
+                                                            nearestFloat(rightValue, rightChild.token()),
+                                                            rightChild.token()));
+        } else if (leftChild.token() != null && rightChild.node() != null) {
+            double leftValue = Double.parseDouble(leftChild.token());
+            return new StackElement(null, new ParseTreeNode(leftValue, nearestFloat(leftValue, leftChild.token()),
+                                                            leftChild.token(), operator, rightChild.node()));
+        } else {
+            return new StackElement(null, new ParseTreeNode(leftChild.node(), operator, rightChild.node()));
+        }
+    }
+
+    /* Returns the float nearest a number, given its text and the double
+     * nearest it. That's the double narrowed to a float, unless the double
+     * lies exactly halfway between two floats: the number itself needn't, so
+     * narrowing would round it a second time, and possibly the wrong way, and
+     * the text is parsed as a float instead, as it always was. */
+    static float nearestFloat(final double value, final String numberText) {
+        float narrowed = (float) value;
+        if (!Float.isFinite(narrowed) || narrowed == value) {
+            return narrowed;
+        }
+        double neighbour = (value > narrowed) ? Math.nextUp(narrowed) : Math.nextDown(narrowed);
+        return (value - narrowed == neighbour - value) ? Float.parseFloat(numberText) : narrowed;
+    }
+
+    /* Receives the shunting-yard algorithm's output: each operand as it's
+     * read, and each operator as it's reduced, so the whole expression in
+     * postfix order. */
+    private interface Output {
+
+        /* Receives a number, given its text. */
+        void pushNumber(String numberText);
+
+        /* Receives a variable, given its name. */
+        void pushVariable(String name);
+
+        /* Receives an operator, which applies to the one or two operands most
+         * recently output and not yet applied to. */
+        void applyOperator(Operator operator);
+    }
+
+    /* The shunting-yard algorithm's operator stack, as a growable array. A
+     * left paren is a null. Popping it when it's empty throws an
+     * EmptyStackException, as java.util.Stack did. */
+    private static final class OperatorStack {
+
+        private Operator[] operators = new Operator[16];
+        private int operatorCount;
+
+        void push(final Operator operator) {
+            if (operatorCount == operators.length) {
+                operators = Arrays.copyOf(operators, operatorCount * 2);
+            }
+            operators[operatorCount++] = operator;
+        }
+
+        boolean isEmpty() {
+            return operatorCount == 0;
+        }
+
+        Operator peek() {
+            return operators[operatorCount - 1];
+        }
+
+        Operator pop() {
+            if (operatorCount == 0) {
+                throw new EmptyStackException();
+            }
+            Operator operator = operators[--operatorCount];
+            operators[operatorCount] = null;
+            return operator;
+        }
+    }
+
+    /* Builds a parse tree from the algorithm's output on an operand stack of
+     * growable arrays. An operand is either a terminal value, held as a
+     * double, a float and its text with a null node, or a node.
+     *
+     * The text of a number is converted as it's pushed, but a malformed one,
+     * such as "1.2.3", has always been reported only once it's reduced into a
+     * node, and a lone number has never been converted at all; so its text is
+     * kept, and converted again to throw the same NumberFormatException where
+     * it always has been. Popping an empty stack throws an
+     * EmptyStackException, as java.util.Stack did. */
+    private static final class TreeBuilder implements Output {
+
+        private double[] values = new double[16];
+        private float[] floats = new float[16];
+        private String[] texts = new String[16];
+        private ParseTreeNode[] nodes = new ParseTreeNode[16];
+        private String[] malformedNumbers = new String[16];
+        private int operandCount;
+
+        public void pushNumber(final String numberText) {
+            int index = growOperands();
+            try {
+                values[index] = Double.parseDouble(numberText);
+                floats[index] = nearestFloat(values[index], numberText);
+                texts[index] = numberText;
+                malformedNumbers[index] = null;
+            } catch (NumberFormatException exception) {
+                malformedNumbers[index] = numberText;
+            }
+            nodes[index] = null;
+        }
+
+        public void pushVariable(final String name) {
+            pushNode(new ParseTreeNode(name));
+        }
+
+        /* If the operator is binary, pops two operands off the operand stack,
+         * otherwise pops just one. Builds a new ParseTreeNode from them and
+         * pushes it onto the operand stack. */
+        public void applyOperator(final Operator operator) {
+            ParseTreeNode node;
+            if (!operator.isUnary()) {
+                int right = popOperand();
+                int left = popOperand();
+                if (nodes[left] == null && nodes[right] == null) {
+                    node = new ParseTreeNode(terminalValue(left), floats[left], texts[left], operator,
+                                             terminalValue(right), floats[right], texts[right]);
+                } else if (nodes[left] != null && nodes[right] == null) {
+                    node = new ParseTreeNode(nodes[left], operator, terminalValue(right), floats[right], texts[right]);
+                } else if (nodes[left] == null) {
+                    node = new ParseTreeNode(terminalValue(left), floats[left], texts[left], operator, nodes[right]);
+                } else {
+                    node = new ParseTreeNode(nodes[left], operator, nodes[right]);
+                }
+            } else {
+                int sole = popOperand();
+                node = (nodes[sole] == null) ? new ParseTreeNode(operator, terminalValue(sole), floats[sole],
+                                                                 texts[sole])
+                                             : new ParseTreeNode(operator, nodes[sole]);
+            }
+            pushNode(node);
+        }
+
+        /* Pops the root of the parse tree off the operand stack. A terminal
+         * value at the root is the whole expression, a lone number, which is
+         * returned as a leaf if variables are allowed and otherwise as null.
+         * Any operand left under the root had no operator to join it to the
+         * rest, as the 2 in "2(3+4)" doesn't. */
+        ParseTreeNode root(final boolean variablesAllowed) {
+            int index = popOperand();
+            if (operandCount != 0) {
+                throw new IllegalStateException(MISSING_OPERATOR);
+            }
+            if (nodes[index] == null) {
+                return variablesAllowed ? new ParseTreeNode(terminalValue(index), floats[index], texts[index]) : null;
+            }
+            return nodes[index];
+        }
+
+        private void pushNode(final ParseTreeNode node) {
+            int index = growOperands();
+            nodes[index] = node;
+            malformedNumbers[index] = null;
+        }
+
+        /* Pops an operand, returning its index; its slot is valid until the
+         * next push. */
+        private int popOperand() {
+            if (operandCount == 0) {
+                throw new EmptyStackException();
+            }
+            return --operandCount;
+        }
+
+        /* Returns the value of the terminal operand at an index, throwing a
+         * NumberFormatException if its number was malformed. */
+        private double terminalValue(final int index) {
+            return (malformedNumbers[index] != null) ? Double.parseDouble(malformedNumbers[index]) : values[index];
+        }
+
+        /* Makes room for an operand and returns the index of its slot. */
+        private int growOperands() {
+            if (operandCount == values.length) {
+                values = Arrays.copyOf(values, operandCount * 2);
+                floats = Arrays.copyOf(floats, operandCount * 2);
+                texts = Arrays.copyOf(texts, operandCount * 2);
+                nodes = Arrays.copyOf(nodes, operandCount * 2);
+                malformedNumbers = Arrays.copyOf(malformedNumbers, operandCount * 2);
+            }
+            return operandCount++;
+        }
+    }
+
+    /* Emits the algorithm's output as PostfixProgram instructions. No operand
+     * stack is kept, only its depth, so that an operator without its operands
+     * throws an EmptyStackException as TreeBuilder does. */
+    private static final class ProgramBuilder implements Output {
+
+        private final PostfixProgram.Emitter emitter = new PostfixProgram.Emitter();
+        private int operandCount;
+
+        public void pushNumber(final String numberText) {
+            double value = Double.parseDouble(numberText);
+            emitter.emitConstant(value, nearestFloat(value, numberText));
+            operandCount++;
+        }
+
+        public void pushVariable(final String name) {
+            emitter.emitVariable(name);
+            operandCount++;
+        }
+
+        public void applyOperator(final Operator operator) {
+            if (!operator.isBuiltIn()) {
+                throw new IllegalArgumentException("operator '" + operator + "' isn't built in");
+            }
+            int arity = operator.isUnary() ? 1 : 2;
+            if (operandCount < arity) {
+                throw new EmptyStackException();
+            }
+            emitter.emitOperator((byte) operator.opcode(), null);
+            operandCount -= arity - 1;
+        }
+
+        /* Returns the finished program, once the whole expression has been
+         * output. */
+        PostfixProgram build() {
+            if (operandCount == 0) {
+                throw new EmptyStackException();
+            } else if (operandCount != 1) {
+                throw new IllegalStateException(MISSING_OPERATOR);
+            }
+            return emitter.build();
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package org.kmfahey.jcalculator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The headless front end to the package: evaluates arithmetic expressions read
+ * one per line from files or standard input, and writes one line of output per
+ * line of input to standard output. Each output line is either the result,
+ * formatted as the calculator's display formats it, or "error: " followed by
+ * what went wrong.
+ *
+ * Input is read through an NIO channel into byte buffers of a bounded size,
+ * so files of any length are evaluated in bounded memory, and each line is
+ * tokenized as UTF-8 bytes where it lies in the buffer, without being decoded
+ * into a String. A line ends at "\n" or "\r\n", but not at a lone "\r".
+ * By default lines are read in chunks, which are
+ * evaluated in parallel on a ForkJoinPool with a worker per core; finished
+ * chunks are held in a reorder buffer until every chunk before them has been
+ * written, so output is always in input order. Only a fixed number of chunks
+ * are in flight at once, so reading stalls while evaluation catches up. The
+ * class loads nothing from Swing or AWT, so it starts up quickly enough to be
+ * called from scripts.
+ *
+ * With --mmap, each input file is memory-mapped rather than read, and its
+ * lines are tokenized where they lie in the mapping. Chunks of the mapping,
+ * like chunks read from a channel, are split at line boundaries, so each
+ * worker evaluates whole lines.
+ *
+ * Usage: java org.kmfahey.jcalculator.BatchCalculator [--sequential]
+ *            [--threads=N] [--mmap] [--numbers=BACKEND] [file ...]
+ *
+ * With no file arguments, or a file argument of "-", standard input is read;
+ * it's read as a stream even with --mmap. --sequential evaluates every line
+ * on the main thread, and --threads=N sets the number of worker threads used
+ * otherwise. --numbers=BACKEND evaluates in the NumberBackend of that name, as
+ * NumberBackend.forName() names them: float, as the calculator does and the
+ * default, double, decimal or decimal:N.
+ * The exit status is 0 if every line evaluated, 1 if any line was an error,
+ * and 2 if an input couldn't be read or the arguments were invalid.
+ */
+public final class BatchCalculator {
+
+    /** The size of the output buffer, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The exit status when every line evaluated. */
+    private static final int EXIT_SUCCESS = 0;
+
+    /** The exit status when any line was an error. */
+    private static final int EXIT_LINE_ERRORS = 1;
+
+    /** The exit status when an input couldn't be read or the arguments were
+     *  invalid. */
+    private static final int EXIT_FAILURE = 2;
+
+    /** The prefix of every output line reporting an error. */
+    private static final String ERROR_PREFIX = "error: ";
+
+    /** The most lines in a chunk evaluated as one parallel task. */
+    private static final int CHUNK_LINES = 4096;
+
+    /** The most chars of input in a chunk, bounding the chunk's memory
+     *  however long its lines are. */
+    private static final int CHUNK_CHARS = 1 << 20;
+
+    /** The number of chunks that may be in flight per worker thread; enough
+     *  to keep every worker busy while the main thread writes. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** The most bytes of a memory-mapped file in a chunk, before the chunk is
+     *  extended to the end of the line it stops in. */
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /** The most bytes of a file mapped at once; a file larger than this is
+     *  mapped in successive regions, each ending at a line boundary. */
+    private static final int REGION_BYTES = 1 << 30;
+
+    private static final String USAGE = "usage: java " + BatchCalculator.class.getName()
+                                        + " [--sequential] [--threads=N] [--mmap] [--numbers=BACKEND] [file ...]";
+
+    private BatchCalculator() { }
+
+    /**
+     * Evaluates the expressions in each file named on the command line, or on
+     * standard input, in order, and exits with the status described above.
+     *
+     * @param args the files to read, "-" standing for standard input
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args));
+    }
+
+    /* Does the work of main(), returning the exit status. */
+    private static int run(final String[] args) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        boolean memoryMapped = false;
+        NumberBackend<?> backend = NumberBackend.FLOAT;
+        int argIndex = 0;
+        for (; argIndex < args.length && args[argIndex].startsWith("--"); argIndex++) {
+            String option = args[argIndex];
+            if (option.equals("--sequential")) {
+                threadCount = 1;
+            } else if (option.equals("--mmap")) {
+                memoryMapped = true;
+            } else if (option.startsWith("--numbers=")) {
+                try {
+                    backend = NumberBackend.forName(option.substring("--numbers=".length()));
+                } catch (IllegalArgumentException exception) {
+                    System.err.println("error: " + exception.getMessage());
+                    System.err.println(USAGE);
+                    return EXIT_FAILURE;
+                }
+            } else if (option.startsWith("--threads=")) {
+                try {
+                    threadCount = Integer.parseInt(option.substring("--threads=".length()));
+                } catch (NumberFormatException exception) {
+                    threadCount = 0;
+                }
+                if (threadCount < 1) {
+                    System.err.println(USAGE);
+                    return EXIT_FAILURE;
+                }
+            } else {
+                System.err.println(USAGE);
+                return EXIT_FAILURE;
+            }
+        }
+        String[] inputNames = new String[Math.max(args.length - argIndex, 1)];
+        inputNames[0] = "-";
+        System.arraycopy(args, argIndex, inputNames, 0, args.length - argIndex);
+        ForkJoinPool pool = (threadCount > 1) ? new ForkJoinPool(threadCount) : null;
+        long errorCount = 0;
+        Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out),
+                                                                  StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            for (String inputName : inputNames) {
+                try {
+                    if (memoryMapped && !inputName.equals("-")) {
+                        errorCount += evaluateMappedFile(Paths.get(inputName), output, pool, backend);
+                        continue;
+                    }
+                    ReadableByteChannel input = openInput(inputName);
+                    try {
+                        errorCount += evaluateChannel(input, output, pool, backend);
+                    } finally {
+                        /* Standard input is left open, in case it's named
+                         * again. */
+                        if (!inputName.equals("-")) {
+                            input.close();
+                        }
+                    }
+                } catch (IOException exception) {
+                    output.flush();
+                    System.err.println("error reading " + inputName + ": " + exception.getMessage());
+                    return EXIT_FAILURE;
+                }
+            }
+            output.flush();
+        } catch (IOException exception) {
+            System.err.println("error writing output: " + exception.getMessage());
+            return EXIT_FAILURE;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        return (errorCount > 0) ? EXIT_LINE_ERRORS : EXIT_SUCCESS;
+    }
+
+    /**
+     * Evaluates every line read from the input, writing one line of output for
+     * each. The output isn't flushed.
+     *
+     * @param  input  the expressions to evaluate, one per line
+     * @param  output where the results are written, one per line
+     * @return the number of lines that were errors
+     */
+    public static long evaluateLines(final BufferedReader input, final Writer output) throws IOException {
+        return evaluateLines(input, output, NumberBackend.FLOAT);
+    }
+
+    /**
+     * Evaluates every line read from the input in the given NumberBackend,
+     * writing one line of output for each. The output isn't flushed.
+     *
+     * @param  input   the expressions to evaluate, one per line
+     * @param  output  where the results are written, one per line
+     * @param  backend the arithmetic the expressions are evaluated in
+     * @return the number of lines that were errors
+     */
+    public static long evaluateLines(final BufferedReader input, final Writer output, final NumberBackend<?> backend)
+            throws IOException {
+        if (backend == null) { throw new IllegalArgumentException("argument 'backend' was null"); }
+        long errorCount = 0;
+        String line;
+        while ((line = input.readLine()) != null) {
+            String result = evaluateLine(line, null, backend, null, 0, 0);
+            if (result.startsWith(ERROR_PREFIX)) {
+                errorCount++;
+            }
+            output.write(result);
+            output.write('\n');
+        }
+        return errorCount;
+    }
+
+    /**
+     * Evaluates every line read from the input on the given pool, writing one
+     * line of output for each, in input order. Lines are read and submitted
+     * in chunks, and at most CHUNKS_PER_THREAD chunks per pool thread are in
+     * flight at a time; once that many are, the main thread waits for the
+     * eldest to finish and writes it before reading more. The output isn't
+     * flushed.
+     *
+     * @param  input  the expressions to evaluate, one per line
+     * @param  output where the results are written, one per line
+     * @param  pool   the pool the chunks are evaluated on
+     * @return the number of lines that were errors
+     */
+    public static long evaluateLines(final BufferedReader input, final Writer output, final ForkJoinPool pool)
+            throws IOException {
+        return evaluateLines(input, output, pool, NumberBackend.FLOAT);
+    }
+
+    /**
+     * Evaluates every line read from the input on the given pool, in the given
+     * NumberBackend, as evaluateLines(BufferedReader, Writer, ForkJoinPool)
+     * does. The output isn't flushed.
+     *
+     * @param  input   the expressions to evaluate, one per line
+     * @param  output  where the results are written, one per line
+     * @param  pool    the pool the chunks are evaluated on
+     * @param  backend the arithmetic the expressions are evaluated in
+     * @return the number of lines that were errors
+     */
+    public static long evaluateLines(final BufferedReader input, final Writer output, final ForkJoinPool pool,
+                                     final NumberBackend<?> backend) throws IOException {
+        if (pool == null) { throw new IllegalArgumentException("argument 'pool' was null"); }
+        if (backend == null) { throw new IllegalArgumentException("argument 'backend' was null"); }
+        return runChunks(() -> {
+            String[] lines = readChunk(input);
+            return (lines != null) ? () -> evaluateChunk(lines, backend) : null;
+        }, output, pool);
+    }
+
+    /**
+     * Evaluates every line read from a channel, writing one line of output for
+     * each, in input order. The channel is read into buffers of about
+     * CHUNK_BYTES, each ending at a line boundary, and each line is parsed
+     * from its UTF-8 bytes in the buffer. The buffers are evaluated as chunks
+     * on the given pool as evaluateLines() evaluates chunks, or on the calling
+     * thread if the pool is null. The channel isn't closed, and the output
+     * isn't flushed.
+     *
+     * @param  input  the expressions to evaluate, one per line
+     * @param  output where the results are written, one per line
+     * @param  pool   the pool the chunks are evaluated on, or null
+     * @return the number of lines that were errors
+     */
+    public static long evaluateChannel(final ReadableByteChannel input, final Writer output, final ForkJoinPool pool)
+            throws IOException {
+        return evaluateChannel(input, output, pool, NumberBackend.FLOAT);
+    }
+
+    /**
+     * Evaluates every line read from a channel, in the given NumberBackend, as
+     * evaluateChannel(ReadableByteChannel, Writer, ForkJoinPool) does. The
+     * channel isn't closed, and the output isn't flushed.
+     *
+     * @param  input   the expressions to evaluate, one per line
+     * @param  output  where the results are written, one per line
+     * @param  pool    the pool the chunks are evaluated on, or null
+     * @param  backend the arithmetic the expressions are evaluated in
+     * @return the number of lines that were errors
+     */
+    public static long evaluateChannel(final ReadableByteChannel input, final Writer output, final ForkJoinPool pool,
+                                       final NumberBackend<?> backend) throws IOException {
+        if (input == null) { throw new IllegalArgumentException("argument 'input' was null"); }
+        if (backend == null) { throw new IllegalArgumentException("argument 'backend' was null"); }
+        return runChunks(new ChannelChunkSource(input, backend), output, pool);
+    }
+
+    /**
+     * Evaluates every line of a file by memory-mapping it, writing one line of
+     * output for each, in input order. Each line is parsed from the mapped
+     * UTF-8 bytes in place. The file is split into chunks at line boundaries,
+     * which are evaluated on the given pool as evaluateLines() evaluates
+     * chunks, or on the calling thread if the pool is null. The output isn't
+     * flushed.
+     *
+     * @param  file   the file of expressions to evaluate, one per line
+     * @param  output where the results are written, one per line
+     * @param  pool   the pool the chunks are evaluated on, or null
+     * @return the number of lines that were errors
+     */
+    public static long evaluateMappedFile(final Path file, final Writer output, final ForkJoinPool pool)
+            throws IOException {
+        return evaluateMappedFile(file, output, pool, NumberBackend.FLOAT);
+    }
+
+    /**
+     * Evaluates every line of a file by memory-mapping it, in the given
+     * NumberBackend, as evaluateMappedFile(Path, Writer, ForkJoinPool) does.
+     * The output isn't flushed.
+     *
+     * @param  file    the file of expressions to evaluate, one per line
+     * @param  output  where the results are written, one per line
+     * @param  pool    the pool the chunks are evaluated on, or null
+     * @param  backend the arithmetic the expressions are evaluated in
+     * @return the number of lines that were errors
+     */
+    public static long evaluateMappedFile(final Path file, final Writer output, final ForkJoinPool pool,
+                                          final NumberBackend<?> backend) throws IOException {
+        if (file == null) { throw new IllegalArgumentException("argument 'file' was null"); }
+        if (backend == null) { throw new IllegalArgumentException("argument 'backend' was null"); }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return runChunks(new MappedChunkSource(channel, backend), output, pool);
+        }
+    }
+
+    /* Evaluates each chunk the source supplies, on the pool if there is one,
+     * writing their output in order. At most CHUNKS_PER_THREAD chunks per pool
+     * thread are in flight at a time; once that many are, the calling thread
+     * waits for the eldest to finish and writes it before taking more from the
+     * source. Returns the number of lines that were errors. */
+    private static long runChunks(final ChunkSource source, final Writer output, final ForkJoinPool pool)
+            throws IOException {
+        int maxChunksInFlight = (pool != null) ? CHUNKS_PER_THREAD * pool.getParallelism() : 1;
+        ArrayDeque<Future<ChunkResult>> chunksInFlight = new ArrayDeque<>(maxChunksInFlight);
+        long errorCount = 0;
+        try {
+            Callable<ChunkResult> chunk;
+            while ((chunk = source.nextChunk()) != null) {
+                if (chunksInFlight.size() == maxChunksInFlight) {
+                    errorCount += writeChunk(chunksInFlight.removeFirst(), output);
+                }
+                if (pool != null) {
+                    chunksInFlight.addLast(pool.submit(chunk));
+                } else {
+                    try {
+                        chunksInFlight.addLast(CompletableFuture.completedFuture(chunk.call()));
+                    } catch (Exception exception) {
+                        chunksInFlight.addLast(CompletableFuture.failedFuture(exception));
+                    }
+                }
+            }
+            while (!chunksInFlight.isEmpty()) {
+                errorCount += writeChunk(chunksInFlight.removeFirst(), output);
+            }
+        } finally {
+            for (Future<ChunkResult> abandonedChunk : chunksInFlight) {
+                abandonedChunk.cancel(false);
+            }
+        }
+        return errorCount;
+    }
+
+    /**
+     * Parses and evaluates a single expression, returning its formatted result
+     * or a description of the error that prevented evaluating it.
+     *
+     * @param  expression the arithmetic expression to evaluate
+     * @return the result as ResultFormatter formats it, or "error: " followed
+     *         by the error's message
+     */
+    public static String evaluateLine(final String expression) {
+        return evaluateLine(expression, null, NumberBackend.FLOAT, null, 0, 0);
+    }
+
+    /**
+     * Parses a single expression and evaluates it in the given NumberBackend,
+     * returning its result as the backend formats it or a description of the
+     * error that prevented evaluating it.
+     *
+     * @param  expression the arithmetic expression to evaluate
+     * @param  backend    the arithmetic the expression is evaluated in
+     * @return the result as the backend formats it, or "error: " followed by
+     *         the error's message
+     */
+    public static String evaluateLine(final String expression, final NumberBackend<?> backend) {
+        if (backend == null) { throw new IllegalArgumentException("argument 'backend' was null"); }
+        return evaluateLine(expression, null, backend, null, 0, 0);
+    }
+
+    /**
+     * Parses and evaluates a single expression as evaluateLine(String) does,
+     * looking its parse tree up in a ParseCache rather than always parsing it.
+     *
+     * @param  expression the arithmetic expression to evaluate
+     * @param  cache      the cache to parse the expression through
+     * @return the result as ResultFormatter formats it, or "error: " followed
+     *         by the error's message
+     */
+    public static String evaluateLine(final String expression, final ParseCache cache) {
+        if (cache == null) { throw new IllegalArgumentException("argument 'cache' was null"); }
+        return evaluateLine(expression, cache, NumberBackend.FLOAT, null, 0, 0);
+    }
+
+    /**
+     * Parses and evaluates a single expression held as UTF-8 bytes, as
+     * evaluateLine(String) does, without decoding it into a String. The
+     * buffer's position and limit are ignored and left unchanged.
+     *
+     * @param  bytes      the buffer holding the expression
+     * @param  bytesStart the offset of the expression's first byte
+     * @param  bytesEnd   the offset one past its last byte
+     * @return the result as ResultFormatter formats it, or "error: " followed
+     *         by the error's message
+     */
+    public static String evaluateLine(final ByteBuffer bytes, final int bytesStart, final int bytesEnd) {
+        return evaluateLine(null, null, NumberBackend.FLOAT, bytes, bytesStart, bytesEnd);
+    }
+
+    /* Does the work of the evaluateLine() methods; the expression is either
+     * the String, if it's not null, or the range of bytes. A String is parsed
+     * through the cache if there is one. */
+    private static String evaluateLine(final String expression, final ParseCache cache,
+                                       final NumberBackend<?> backend, final ByteBuffer bytes, final int bytesStart,
+                                       final int bytesEnd) {
+        if ((expression != null) ? expression.isEmpty() : bytesStart == bytesEnd) {
+            return ERROR_PREFIX + "math expression is empty";
+        }
+        try {
+            ParseTreeNode parseTree = (cache != null) ? cache.parseExpression(expression)
+                                      : (expression != null) ? ArithmeticParser.parseExpression(expression)
+                                      : ArithmeticParser.parseExpression(bytes, bytesStart, bytesEnd);
+            /* The parser returns no tree for an expression that's a lone
+             * number, possibly in parens, which has been validated by then.
+             * The number's text is taken from the lexer, so the backend parses
+             * it at its own precision, as a tree's terminals can't be. */
+            if (parseTree != null) {
+                return backend.evaluateAndFormat(parseTree);
+            }
+            return parseAndFormat(backend, loneNumberText((expression != null) ? new ExpressionLexer(expression)
+                                                          : new ExpressionLexer(bytes, bytesStart, bytesEnd, false)));
+        } catch (ParseException exception) {
+            return ERROR_PREFIX + exception.getMessage() + " at offset " + exception.getErrorOffset();
+        } catch (NumberFormatException exception) {
+            /* The tokenizer accepts any run of digits and points as a number
+             * token, so "1.2.3" only fails once it's converted. */
+            return ERROR_PREFIX + "malformed number in math expression";
+        } catch (RuntimeException exception) {
+            /* Besides the IllegalStateExceptions evaluating throws, the parser
+             * reports an operator missing its operand, or an unmatched right
+             * paren, with an EmptyStackException that has no message. */
+            return errorLine(exception);
+        }
+    }
+
+    /* Returns the error line reporting an exception, which gives its message
+     * but never its class name. */
+    static String errorLine(final RuntimeException exception) {
+        return ERROR_PREFIX + ((exception.getMessage() != null) ? exception.getMessage() : "malformed math expression");
+    }
+
+    /* Returns the text of the number token in an expression the parser has
+     * found to be a lone number. */
+    private static String loneNumberText(final ExpressionLexer lexer) throws ParseException {
+        int tokenCode;
+        do {
+            tokenCode = lexer.nextToken();
+        } while (tokenCode != ExpressionLexer.NUMBER && tokenCode != ExpressionLexer.END_OF_INPUT);
+        return lexer.tokenText();
+    }
+
+    /* Parses a lone number in a NumberBackend and formats it. */
+    private static <N> String parseAndFormat(final NumberBackend<N> backend, final String numberText) {
+        return backend.format(backend.parse(numberText));
+    }
+
+    /* Reads up to CHUNK_LINES lines, stopping early once CHUNK_CHARS chars
+     * have been read. Returns null at the end of the input. */
+    private static String[] readChunk(final BufferedReader input) throws IOException {
+        String[] lines = new String[CHUNK_LINES];
+        int lineCount = 0;
+        int charCount = 0;
+        String line;
+        while (lineCount < CHUNK_LINES && charCount < CHUNK_CHARS && (line = input.readLine()) != null) {
+            lines[lineCount++] = line;
+            charCount += line.length() + 1;
+        }
+        if (lineCount == 0) {
+            return null;
+        }
+        return (lineCount == CHUNK_LINES) ? lines : Arrays.copyOf(lines, lineCount);
+    }
+
+    /* Evaluates the lines in a range of a buffer of input into one block of
+     * output text. The range ends at a line boundary or the end of the input. */
+    private static ChunkResult evaluateChunk(final ByteBuffer bytes, final int chunkStart, final int chunkEnd,
+                                             final NumberBackend<?> backend) {
+        StringBuilder text = new StringBuilder((chunkEnd - chunkStart) / 2);
+        int errorCount = 0;
+        int lineStart = chunkStart;
+        while (lineStart < chunkEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < chunkEnd && bytes.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int expressionEnd = (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+            String result = evaluateChunkLine(null, backend, bytes, lineStart, expressionEnd);
+            if (result.startsWith(ERROR_PREFIX)) {
+                errorCount++;
+            }
+            text.append(result).append('\n');
+            lineStart = lineEnd + 1;
+        }
+        return new ChunkResult(text, errorCount);
+    }
+
+    /* Evaluates a chunk of lines into one block of output text. */
+    private static ChunkResult evaluateChunk(final String[] lines, final NumberBackend<?> backend) {
+        StringBuilder text = new StringBuilder(lines.length * 8);
+        int errorCount = 0;
+        for (String line : lines) {
+            String result = evaluateChunkLine(line, backend, null, 0, 0);
+            if (result.startsWith(ERROR_PREFIX)) {
+                errorCount++;
+            }
+            text.append(result).append('\n');
+        }
+        return new ChunkResult(text, errorCount);
+    }
+
+    /* Evaluates one line of a chunk as evaluateLine() does, which reports
+     * anything that goes wrong parsing or evaluating the line as an error
+     * line. Anything else a line throws is reported the same way, so that a
+     * chunk always yields one output line per input line, and one bad line
+     * can't fail the chunk, and with it the run. */
+    private static String evaluateChunkLine(final String expression, final NumberBackend<?> backend,
+                                            final ByteBuffer bytes, final int bytesStart, final int bytesEnd) {
+        try {
+            return evaluateLine(expression, null, backend, bytes, bytesStart, bytesEnd);
+        } catch (RuntimeException exception) {
+            return errorLine(exception);
+        }
+    }
+
+    /* Waits for a chunk to finish evaluating and writes its output, returning
+     * its error count. A chunk reports each bad line in its output, so it
+     * only fails on an Error or a fault of its own, which is rethrown. */
+    private static int writeChunk(final Future<ChunkResult> pendingChunk, final Writer output) throws IOException {
+        ChunkResult result;
+        try {
+            result = pendingChunk.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a chunk to be evaluated");
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            } else if (exception.getCause() instanceof Error) {
+                throw (Error) exception.getCause();
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+        output.append(result.text);
+        return result.errorCount;
+    }
+
+    /* Opens a named input for reading, "-" standing for standard input. */
+    private static ReadableByteChannel openInput(final String inputName) throws IOException {
+        if (inputName.equals("-")) {
+            return Channels.newChannel(System.in);
+        }
+        return FileChannel.open(Paths.get(inputName), StandardOpenOption.READ);
+    }
+
+    /* Supplies the chunks of input that runChunks() evaluates, each as a task
+     * returning the chunk's output, or null once the input is exhausted. */
+    private interface ChunkSource {
+
+        Callable<ChunkResult> nextChunk() throws IOException;
+    }
+
+    /* Supplies the chunks of input read from a channel. Each chunk is read
+     * into a buffer of its own, so it can be evaluated while the next is read;
+     * the buffer is filled, and the chunk ends at the last line boundary in
+     * it, the bytes after that being carried over to the start of the next
+     * chunk's buffer. A buffer holding no line boundary is doubled until it
+     * holds one, up to REGION_BYTES. */
+    private static final class ChannelChunkSource implements ChunkSource {
+
+        private final ReadableByteChannel channel;
+        private final NumberBackend<?> backend;
+        private ByteBuffer pending;
+        private long pendingOffset;
+        private boolean endOfInput;
+
+        ChannelChunkSource(final ReadableByteChannel channelVal, final NumberBackend<?> backendVal) {
+            channel = channelVal;
+            backend = backendVal;
+            pending = ByteBuffer.allocate(CHUNK_BYTES);
+        }
+
+        public Callable<ChunkResult> nextChunk() throws IOException {
+            ByteBuffer bytes = pending;
+            int chunkEnd = 0;
+            while (!endOfInput) {
+                if (!bytes.hasRemaining()) {
+                    chunkEnd = bytes.position();
+                    while (chunkEnd > 0 && bytes.get(chunkEnd - 1) != '\n') {
+                        chunkEnd--;
+                    }
+                    if (chunkEnd > 0) {
+                        break;
+                    } else if (bytes.capacity() >= REGION_BYTES) {
+                        throw new IOException("line at byte " + pendingOffset + " is longer than " + REGION_BYTES
+                                              + " bytes");
+                    }
+                    bytes = ByteBuffer.allocate(Math.min(bytes.capacity() * 2, REGION_BYTES)).put(bytes.flip());
+                }
+                if (channel.read(bytes) < 0) {
+                    endOfInput = true;
+                    chunkEnd = bytes.position();
+                }
+            }
+            if (chunkEnd == 0) {
+                return null;
+            }
+            int carriedLength = bytes.position() - chunkEnd;
+            pending = ByteBuffer.allocate(Math.max(CHUNK_BYTES, carriedLength * 2))
+                                .put(bytes.duplicate().limit(bytes.position()).position(chunkEnd));
+            pendingOffset += chunkEnd;
+            final ByteBuffer chunkBytes = bytes;
+            final int finalEnd = chunkEnd;
+            return () -> evaluateChunk(chunkBytes, 0, finalEnd, backend);
+        }
+    }
+
+    /* Supplies the chunks of a memory-mapped file. The file is mapped one
+     * region at a time, each region ending at the last line boundary within
+     * REGION_BYTES of its start, and each region is split into chunks of
+     * about CHUNK_BYTES, each extended to the end of the line it stops in. A
+     * chunk holds a reference to its region's mapping, so the mapping lives
+     * until every chunk in it has been evaluated. */
+    private static final class MappedChunkSource implements ChunkSource {
+
+        private final FileChannel channel;
+        private final NumberBackend<?> backend;
+        private final long fileSize;
+        private ByteBuffer region;
+        private long regionOffset;
+        private int regionEnd;
+        private int chunkStart;
+
+        MappedChunkSource(final FileChannel channelVal, final NumberBackend<?> backendVal) throws IOException {
+            channel = channelVal;
+            backend = backendVal;
+            fileSize = channelVal.size();
+        }
+
+        public Callable<ChunkResult> nextChunk() throws IOException {
+            if (region == null || chunkStart == regionEnd) {
+                if (region != null) {
+                    regionOffset += regionEnd;
+                }
+                if (regionOffset >= fileSize) {
+                    return null;
+                }
+                mapRegion();
+            }
+            final ByteBuffer bytes = region;
+            final int start = chunkStart;
+            int end = (int) Math.min((long) start + CHUNK_BYTES, regionEnd);
+            while (end < regionEnd && bytes.get(end - 1) != '\n') {
+                end++;
+            }
+            final int finalEnd = end;
+            chunkStart = end;
+            return () -> evaluateChunk(bytes, start, finalEnd, backend);
+        }
+
+        /* Maps the region starting at regionOffset, finding where the last
+         * line in it ends. */
+        private void mapRegion() throws IOException {
+            long regionSize = Math.min(REGION_BYTES, fileSize - regionOffset);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, regionOffset, regionSize);
+            regionEnd = (int) regionSize;
+            chunkStart = 0;
+            if (regionOffset + regionSize < fileSize) {
+                while (regionEnd > 0 && region.get(regionEnd - 1) != '\n') {
+                    regionEnd--;
+                }
+                if (regionEnd == 0) {
+                    throw new IOException("line at byte " + regionOffset + " is longer than " + REGION_BYTES
+                                          + " bytes");
+                }
+            }
+        }
+    }
+
+    /* The output of evaluating one chunk of lines. */
+    private static final class ChunkResult {
+
+        final StringBuilder text;
+        final int errorCount;
+
+        ChunkResult(final StringBuilder textVal, final int errorCountVal) {
+            text = textVal;
+            errorCount = errorCountVal;
+        }
+    }
+}
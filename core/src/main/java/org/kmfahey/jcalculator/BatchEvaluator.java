@@ -0,0 +1,213 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Arrays;
+
+/**
+ * Implements batch evaluation of a PreparedExpression over columns of input
+ * values. Column i holds the successive values of the variable in slot i, and
+ * row r of the output receives the expression's value for row r of the
+ * inputs.
+ *
+ * Rather than running the program once per row, the evaluator runs it once per
+ * block of rows, with each operand stack entry holding a whole block's worth
+ * of values. The "+", "-", "×" and "÷" instructions run through the Vector
+ * API when the jdk.incubator.vector module is available, and through plain
+ * loops when it isn't. Either way the arithmetic is the same float arithmetic
+ * PreparedExpression.evaluate() performs.
+ *
+ * A divide by zero doesn't abort the batch. Instead the row it occurred in is
+ * flagged in the error mask passed to evaluate(), and that row's output is
+ * NaN.
+ */
+public final class BatchEvaluator {
+
+    /** The number of rows evaluated at a time; small enough that a block of
+     *  every operand stack entry stays in cache. */
+    private static final int BLOCK_SIZE = 1024;
+
+    /** The kernels used for "+", "-", "×" and "÷". */
+    private static final BatchKernels KERNELS = loadKernels();
+
+    /** The program being evaluated. */
+    private final PostfixProgram program;
+
+    /**
+     * Constructs a BatchEvaluator for the given expression.
+     *
+     * @param expression the expression to evaluate
+     */
+    public BatchEvaluator(final PreparedExpression expression) {
+        if (expression == null) { throw new IllegalArgumentException("argument 'expression' was null"); }
+        program = expression.getProgram();
+    }
+
+    /**
+     * Returns true if the Vector API is in use, false if the scalar fallback
+     * is.
+     *
+     * @return whether batch evaluation is vectorized
+     */
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof BatchKernels.Scalar);
+    }
+
+    /**
+     * Evaluates the expression over float input columns. The number of rows
+     * evaluated is the length of the output array.
+     *
+     * @param  columns   the input columns, indexed by slot; each must have at
+     *                   least as many rows as the output
+     * @param  output    the array the results are stored in
+     * @param  errorMask an array at least as long as the output, in which each
+     *                   row that divided by zero is set to true and every
+     *                   other row to false
+     * @return the number of rows that divided by zero
+     */
+    public int evaluate(final float[][] columns, final float[] output, final boolean[] errorMask) {
+        checkArguments(columns, output.length, errorMask);
+        return run(columns, null, output, null, errorMask);
+    }
+
+    /**
+     * Evaluates the expression over double input columns, as
+     * evaluate(float[][], float[], boolean[]) does. Each input value is
+     * narrowed to float, as the expression's arithmetic is float arithmetic.
+     *
+     * @param  columns   the input columns, indexed by slot; each must have at
+     *                   least as many rows as the output
+     * @param  output    the array the results are stored in
+     * @param  errorMask an array at least as long as the output, in which each
+     *                   row that divided by zero is set to true and every
+     *                   other row to false
+     * @return the number of rows that divided by zero
+     */
+    public int evaluate(final double[][] columns, final double[] output, final boolean[] errorMask) {
+        checkArguments(columns, output.length, errorMask);
+        return run(null, columns, null, output, errorMask);
+    }
+
+    /* Runs the program over every block of rows. Exactly one of floatColumns
+     * and doubleColumns is non-null, and likewise for the outputs. */
+    private int run(final float[][] floatColumns, final double[][] doubleColumns, final float[] floatOutput,
+                    final double[] doubleOutput, final boolean[] errorMask) {
+        int rowCount = (floatOutput != null) ? floatOutput.length : doubleOutput.length;
+        float[][] stack = new float[Math.max(program.maxStackDepth(), 1)][BLOCK_SIZE];
+        float[][] temporaries = new float[program.temporaryCount()][BLOCK_SIZE];
+        Arrays.fill(errorMask, 0, rowCount, false);
+
+        for (int firstRow = 0; firstRow < rowCount; firstRow += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, rowCount - firstRow);
+            int stackDepth = 0;
+            for (int index = 0; index < program.length(); index++) {
+                byte opcode = program.opcodeAt(index);
+                switch (opcode) {
+                    case Opcodes.CONSTANT:
+                        Arrays.fill(stack[stackDepth++], 0, length, program.floatConstantAt(index));
+                        break;
+                    case Opcodes.VARIABLE:
+                        float[] column = stack[stackDepth++];
+                        if (floatColumns != null) {
+                            System.arraycopy(floatColumns[program.slotAt(index)], firstRow, column, 0, length);
+                        } else {
+                            double[] source = doubleColumns[program.slotAt(index)];
+                            for (int row = 0; row < length; row++) {
+                                column[row] = (float) source[firstRow + row];
+                            }
+                        }
+                        break;
+                    case Opcodes.STORE:
+                        System.arraycopy(stack[stackDepth - 1], 0, temporaries[program.temporaryAt(index)], 0, length);
+                        break;
+                    case Opcodes.LOAD:
+                        System.arraycopy(temporaries[program.temporaryAt(index)], 0, stack[stackDepth++], 0, length);
+                        break;
+                    case Opcodes.NEGATE:
+                    case Opcodes.SQUARE_ROOT:
+                        float[] operand = stack[stackDepth - 1];
+                        for (int row = 0; row < length; row++) {
+                            operand[row] = Opcodes.apply(opcode, 0F, operand[row]);
+                        }
+                        break;
+                    default:
+                        stackDepth--;
+                        applyBinary(opcode, stack[stackDepth - 1], stack[stackDepth], length, errorMask, firstRow);
+                        break;
+                }
+            }
+            if (floatOutput != null) {
+                System.arraycopy(stack[0], 0, floatOutput, firstRow, length);
+            } else {
+                for (int row = 0; row < length; row++) {
+                    doubleOutput[firstRow + row] = stack[0][row];
+                }
+            }
+        }
+
+        int errorCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (errorMask[row]) {
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+    /* Applies a binary operator to two operand stack entries, storing the
+     * result in the left one. */
+    private static void applyBinary(final byte opcode, final float[] left, final float[] right, final int length,
+                                    final boolean[] errorMask, final int firstRow) {
+        switch (opcode) {
+            case Opcodes.ADD:
+                KERNELS.add(left, right, length);
+                break;
+            case Opcodes.SUBTRACT:
+                KERNELS.subtract(left, right, length);
+                break;
+            case Opcodes.MULTIPLY:
+                KERNELS.multiply(left, right, length);
+                break;
+            case Opcodes.DIVIDE:
+                KERNELS.divide(left, right, length, errorMask, firstRow);
+                break;
+            default:
+                for (int row = 0; row < length; row++) {
+                    left[row] = Opcodes.apply(opcode, left[row], right[row]);
+                }
+                break;
+        }
+    }
+
+    /* Throws an IllegalArgumentException if there are too few columns, or a
+     * column or the error mask has too few rows. */
+    private void checkArguments(final Object[] columns, final int rowCount, final boolean[] errorMask) {
+        if (columns.length < program.variableCount()) {
+            throw new IllegalArgumentException("expected " + program.variableCount() + " columns, got "
+                                               + columns.length);
+        }
+        for (int slot = 0; slot < program.variableCount(); slot++) {
+            int columnLength = (columns[slot] instanceof float[]) ? ((float[]) columns[slot]).length
+                                                                  : ((double[]) columns[slot]).length;
+            if (columnLength < rowCount) {
+                throw new IllegalArgumentException("column " + slot + " has " + columnLength + " rows, expected "
+                                                   + rowCount);
+            }
+        }
+        if (errorMask.length < rowCount) {
+            throw new IllegalArgumentException("error mask has " + errorMask.length + " rows, expected " + rowCount);
+        }
+    }
+
+    /* Returns the Vector API kernels if the jdk.incubator.vector module has
+     * been resolved, or the scalar kernels otherwise. */
+    private static BatchKernels loadKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (BatchKernels) Class.forName("org.kmfahey.jcalculator.VectorKernels")
+                                           .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError exception) {
+                return BatchKernels.Scalar.INSTANCE;
+            }
+        }
+        return BatchKernels.Scalar.INSTANCE;
+    }
+}
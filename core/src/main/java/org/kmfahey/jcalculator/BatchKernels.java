@@ -0,0 +1,63 @@
+package org.kmfahey.jcalculator;
+
+/**
+ * Defines the column-wise arithmetic BatchEvaluator runs a program with. Each
+ * method combines the first length elements of two columns lane by lane,
+ * storing the results in the left column, as the binary instructions of a
+ * PostfixProgram do with the top two values of the operand stack.
+ */
+interface BatchKernels {
+
+    /* Adds the right column to the left column. */
+    void add(float[] left, float[] right, int length);
+
+    /* Subtracts the right column from the left column. */
+    void subtract(float[] left, float[] right, int length);
+
+    /* Multiplies the left column by the right column. */
+    void multiply(float[] left, float[] right, int length);
+
+    /* Divides the left column by the right column. A lane whose divisor is
+     * zero is set to NaN rather than throwing, and the row it belongs to,
+     * firstRow plus the lane's index, is flagged in errorMask. */
+    void divide(float[] left, float[] right, int length, boolean[] errorMask, int firstRow);
+
+    /* Implements the kernels as plain loops, leaving any vectorization to the
+     * JIT. This is the fallback when the Vector API isn't available. */
+    final class Scalar implements BatchKernels {
+
+        static final Scalar INSTANCE = new Scalar();
+
+        private Scalar() { }
+
+        public void add(final float[] left, final float[] right, final int length) {
+            for (int index = 0; index < length; index++) {
+                left[index] += right[index];
+            }
+        }
+
+        public void subtract(final float[] left, final float[] right, final int length) {
+            for (int index = 0; index < length; index++) {
+                left[index] -= right[index];
+            }
+        }
+
+        public void multiply(final float[] left, final float[] right, final int length) {
+            for (int index = 0; index < length; index++) {
+                left[index] *= right[index];
+            }
+        }
+
+        public void divide(final float[] left, final float[] right, final int length, final boolean[] errorMask,
+                           final int firstRow) {
+            for (int index = 0; index < length; index++) {
+                if (right[index] == 0) {
+                    left[index] = Float.NaN;
+                    errorMask[firstRow + index] = true;
+                } else {
+                    left[index] /= right[index];
+                }
+            }
+        }
+    }
+}
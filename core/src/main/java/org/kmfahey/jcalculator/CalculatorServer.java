@@ -0,0 +1,460 @@
+package org.kmfahey.jcalculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implements a TCP server that evaluates arithmetic expressions. A client sends
+ * expressions one per line, terminated by "\n" or "\r\n", and gets back one line
+ * per expression, in order: the result, formatted as BatchCalculator formats
+ * it, or "error: " followed by what went wrong. Requests are pipelined: a
+ * client may send any number of lines without waiting for their responses. The
+ * line "#stats" is answered with a one-line summary of the server's request
+ * count, latencies and parse cache counters, rather than evaluated.
+ *
+ * The server is built on non-blocking NIO. An acceptor thread accepts
+ * connections and hands each to one of several event loops, each a thread
+ * running its own Selector over its share of the connections, so one thread
+ * serves thousands of connections and no thread is ever blocked on one
+ * client. Every loop parses through one shared ParseCache. A connection whose
+ * client isn't reading its responses stops being read from once too many
+ * bytes of responses are waiting to be written.
+ *
+ * A request's latency is measured from when the read that completed its line
+ * returned to when the last byte of its response was written to the socket,
+ * and recorded in a LatencyHistogram.
+ *
+ * Usage: java org.kmfahey.jcalculator.CalculatorServer [--port=N]
+ *            [--threads=N] [--cache-size=N]
+ *
+ * The server listens on the loopback interface, on port 7070 by default; a
+ * port of 0 picks a free port, which is printed on standard error.
+ */
+public final class CalculatorServer implements Closeable {
+
+    /** The port listened on by default. */
+    private static final int DEFAULT_PORT = 7070;
+
+    /** The number of parse trees the shared cache holds by default. */
+    private static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    /** The size a connection's read buffer starts at. */
+    private static final int INITIAL_READ_BUFFER_SIZE = 1 << 10;
+
+    /** The longest line a client may send, in bytes; a longer line is
+     *  answered with an error and the connection is closed. */
+    private static final int MAX_LINE_BYTES = 1 << 16;
+
+    /** The most bytes of responses that may be waiting to be written to a
+     *  connection before the server stops reading requests from it. */
+    private static final int MAX_PENDING_OUTPUT_BYTES = 1 << 20;
+
+    /** The request line answered with statistics rather than evaluated. */
+    private static final String STATS_REQUEST = "#stats";
+
+    private static final String USAGE = "usage: java " + CalculatorServer.class.getName()
+                                        + " [--port=N] [--threads=N] [--cache-size=N]";
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private final ParseCache parseCache;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder connectionCount = new LongAdder();
+    private Thread acceptorThread;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a server bound to the given address, which doesn't accept
+     * connections until it's started.
+     *
+     * @param address        the address to listen on
+     * @param eventLoopCount the number of event loop threads
+     * @param parseCacheVal  the cache all requests are parsed through
+     */
+    public CalculatorServer(final InetSocketAddress address, final int eventLoopCount,
+                            final ParseCache parseCacheVal) throws IOException {
+        if (address == null) { throw new IllegalArgumentException("argument 'address' was null"); }
+        if (parseCacheVal == null) { throw new IllegalArgumentException("argument 'parseCacheVal' was null"); }
+        if (eventLoopCount < 1) { throw new IllegalArgumentException("argument 'eventLoopCount' was less than 1"); }
+        parseCache = parseCacheVal;
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(address, 1 << 12);
+            eventLoops = new EventLoop[eventLoopCount];
+            for (int index = 0; index < eventLoopCount; index++) {
+                eventLoops[index] = new EventLoop(index);
+            }
+        } catch (IOException exception) {
+            serverChannel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Starts the server: runs a thread for each event loop, and one accepting
+     * connections.
+     */
+    public synchronized void start() {
+        if (acceptorThread != null) {
+            throw new IllegalStateException("server already started");
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+        acceptorThread = new Thread(this::acceptConnections, "calculator-server-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the histogram of request latencies.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the cache requests are parsed through.
+     *
+     * @return the parse cache
+     */
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    /**
+     * Renders the server's connection and request counts, latencies and parse
+     * cache counters in a one-line summary.
+     *
+     * @return a summary of the server's statistics
+     */
+    public String statistics() {
+        return "connections=" + connectionCount.sum() + " requests: " + latencies + " cache: hits="
+               + parseCache.hitCount() + " misses=" + parseCache.missCount() + " evictions="
+               + parseCache.evictionCount();
+    }
+
+    /**
+     * Stops the server, closing every connection.
+     */
+    public void close() throws IOException {
+        closed = true;
+        serverChannel.close();
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs a server until the JVM is stopped, printing its statistics on
+     * standard error when it is.
+     *
+     * @param args the options described above
+     */
+    public static void main(final String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        for (String option : args) {
+            int value;
+            try {
+                value = Integer.parseInt(option.substring(option.indexOf('=') + 1));
+            } catch (NumberFormatException exception) {
+                value = -1;
+            }
+            if (option.startsWith("--port=") && value >= 0 && value <= 0xffff) {
+                port = value;
+            } else if (option.startsWith("--threads=") && value >= 1) {
+                threadCount = value;
+            } else if (option.startsWith("--cache-size=") && value >= 1) {
+                cacheSize = value;
+            } else {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+        }
+
+        CalculatorServer server = new CalculatorServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                                                       threadCount, new ParseCache(cacheSize));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(server.statistics())));
+        server.start();
+        System.err.println("listening on port " + server.getPort());
+        for (EventLoop eventLoop : server.eventLoops) {
+            try {
+                eventLoop.thread.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /* Accepts connections until the server is closed, handing them to the
+     * event loops in turn. */
+    private void acceptConnections() {
+        int nextLoop = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connectionCount.increment();
+                eventLoops[nextLoop].register(channel);
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+            } catch (ClosedChannelException exception) {
+                return;
+            } catch (IOException exception) {
+                if (!closed) {
+                    System.err.println("error accepting connection: " + exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /* Evaluates one request line, returning the response line without its
+     * terminator. Whatever goes wrong with the request is answered as an
+     * error, since an exception escaping here would end the event loop and
+     * every connection on it. */
+    private String respond(final String request) {
+        try {
+            if (request.equals(STATS_REQUEST)) {
+                return statistics();
+            }
+            return BatchCalculator.evaluateLine(request, parseCache);
+        } catch (RuntimeException exception) {
+            return BatchCalculator.errorLine(exception);
+        }
+    }
+
+    /* A thread running a Selector over a share of the server's connections. */
+    private final class EventLoop implements Runnable {
+
+        final Selector selector;
+        final Thread thread;
+
+        /* Connections accepted but not yet registered with the selector, which
+         * must be done on the loop's own thread. */
+        private final ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+
+        EventLoop(final int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "calculator-server-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        /* Hands a newly accepted connection to the loop. */
+        void register(final SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = newChannels.poll()) != null) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write(key);
+                            }
+                        } catch (IOException exception) {
+                            connection.close(key);
+                        } catch (RuntimeException exception) {
+                            /* Only this connection is dropped, not its
+                             * neighbours on the loop, and as quietly as one
+                             * that fails with an IOException. */
+                            connection.close(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException exception) {
+                if (!closed) {
+                    System.err.println("event loop failed: " + exception.getMessage());
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException exception) {
+                    /* Nothing more can be done with a selector that won't
+                     * close. */
+                }
+            }
+        }
+    }
+
+    /* The state of one client connection: the bytes read but not yet parsed
+     * into lines, the response bytes not yet written, and when each response
+     * still being written was requested. Only touched by its loop's thread. */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+
+        /* For each response not yet fully written, the total number of bytes
+         * the connection will have written once it has been, and the time its
+         * request was read; a ring buffer, oldest first. */
+        private long[] pendingResponseEnds = new long[16];
+        private long[] pendingRequestTimes = new long[16];
+        private int pendingHead;
+        private int pendingCount;
+
+        private long bytesQueued;
+        private long bytesWritten;
+        private boolean inputEnded;
+
+        Connection(final SocketChannel channelVal) {
+            channel = channelVal;
+        }
+
+        /* Reads what's available, answers every complete line, and tries to
+         * write the answers straight away. */
+        void read(final SelectionKey key) throws IOException {
+            int bytesRead = channel.read(readBuffer);
+            long readTime = System.nanoTime();
+            if (bytesRead < 0) {
+                inputEnded = true;
+            }
+            int lineStart = 0;
+            byte[] bytes = readBuffer.array();
+            for (int index = 0; index < readBuffer.position(); index++) {
+                if (bytes[index] == '\n') {
+                    int lineEnd = (index > lineStart && bytes[index - 1] == '\r') ? index - 1 : index;
+                    queueResponse(respond(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8)),
+                                  readTime);
+                    lineStart = index + 1;
+                }
+            }
+            readBuffer.flip().position(lineStart);
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining()) {
+                if (readBuffer.capacity() >= MAX_LINE_BYTES) {
+                    queueResponse("error: line longer than " + MAX_LINE_BYTES + " bytes", readTime);
+                    inputEnded = true;
+                } else {
+                    readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2).put(readBuffer.flip());
+                }
+            }
+            if (inputEnded && readBuffer.position() > 0 && bytesRead < 0) {
+                /* The client closed its end after a last line with no
+                 * terminator. */
+                queueResponse(respond(new String(readBuffer.array(), 0, readBuffer.position(), StandardCharsets.UTF_8)),
+                              readTime);
+                readBuffer.clear();
+            }
+            write(key);
+        }
+
+        /* Writes as much pending output as the socket will take, recording the
+         * latency of each response that's been completely written, and updates
+         * the key's interest set. */
+        void write(final SelectionKey key) throws IOException {
+            if (writeBuffer.position() > 0) {
+                writeBuffer.flip();
+                bytesWritten += channel.write(writeBuffer);
+                writeBuffer.compact();
+            }
+            long now = System.nanoTime();
+            while (pendingCount > 0 && pendingResponseEnds[pendingHead] <= bytesWritten) {
+                latencies.record(now - pendingRequestTimes[pendingHead]);
+                pendingHead = (pendingHead + 1) % pendingResponseEnds.length;
+                pendingCount--;
+            }
+            boolean outputPending = writeBuffer.position() > 0;
+            if (inputEnded && !outputPending) {
+                close(key);
+                return;
+            }
+            int interestOps = 0;
+            if (!inputEnded && writeBuffer.position() < MAX_PENDING_OUTPUT_BYTES) {
+                interestOps |= SelectionKey.OP_READ;
+            }
+            if (outputPending) {
+                interestOps |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interestOps);
+        }
+
+        void close(final SelectionKey key) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException exception) {
+                /* The connection is gone either way. */
+            }
+        }
+
+        /* Appends a response line to the pending output. */
+        private void queueResponse(final String response, final long requestTime) {
+            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+            if (writeBuffer.remaining() < responseBytes.length + 1) {
+                int capacity = writeBuffer.capacity();
+                while (capacity - writeBuffer.position() < responseBytes.length + 1) {
+                    capacity *= 2;
+                }
+                writeBuffer = ByteBuffer.allocate(capacity).put(writeBuffer.flip());
+            }
+            writeBuffer.put(responseBytes).put((byte) '\n');
+            bytesQueued += responseBytes.length + 1;
+
+            if (pendingCount == pendingResponseEnds.length) {
+                pendingResponseEnds = unwrap(pendingResponseEnds);
+                pendingRequestTimes = unwrap(pendingRequestTimes);
+                pendingHead = 0;
+            }
+            int tail = (pendingHead + pendingCount) % pendingResponseEnds.length;
+            pendingResponseEnds[tail] = bytesQueued;
+            pendingRequestTimes[tail] = requestTime;
+            pendingCount++;
+        }
+
+        /* Returns a ring buffer's full contents, oldest first, in an array
+         * twice its length. */
+        private long[] unwrap(final long[] ring) {
+            long[] unwrapped = Arrays.copyOfRange(ring, pendingHead, pendingHead + ring.length * 2);
+            System.arraycopy(ring, 0, unwrapped, ring.length - pendingHead, pendingHead);
+            return unwrapped;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.kmfahey.jcalculator;
+
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Implements a parse tree compiled to JVM bytecode. compile() translates a
+ * parse tree into the evaluate() method of a new hidden class, defined with
+ * MethodHandles.Lookup.defineHiddenClass(), which the JIT compiles like any
+ * other method; this suits expressions that are evaluated many times over.
+ * Each hidden class can be unloaded once its CompiledExpression is no longer
+ * reachable.
+ *
+ * The generated code performs the same float arithmetic as the switch in
+ * ParseTreeNode.evaluate(), including throwing IllegalStateException on a
+ * divide by zero. If the expression is too large to compile to a single
+ * JIT-compilable method, has variables, or the class can't be defined,
+ * compile() falls back to a CompiledExpression that runs the tree's
+ * PostfixProgram instead; and if it uses an operator defined in an
+ * OperatorRegistry, which has no PostfixProgram instruction, to one that
+ * evaluates the tree itself.
+ */
+public abstract class CompiledExpression {
+
+    /* Constructs a CompiledExpression; only the generated hidden classes and
+     * the interpreter fallbacks below extend this class. */
+    CompiledExpression() { }
+
+    /**
+     * Compiles a parse tree to bytecode, or to a PostfixProgram if it can't be
+     * compiled to bytecode, or leaves it a tree if it can't be compiled to a
+     * PostfixProgram either.
+     *
+     * @param  root the root of the parse tree to compile
+     * @return a CompiledExpression that evaluates the parse tree
+     */
+    public static CompiledExpression compile(final ParseTreeNode root) {
+        if (root == null) { throw new IllegalArgumentException("argument 'root' was null"); }
+        PostfixProgram program;
+        try {
+            program = PostfixProgram.compile(root);
+        } catch (IllegalArgumentException exception) {
+            return new InterpretedTree(root);
+        }
+        byte[] classBytes = ExpressionClassWriter.write(program);
+        if (classBytes == null) {
+            return new Interpreted(program);
+        }
+        try {
+            MethodHandles.Lookup hiddenClassLookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (CompiledExpression) hiddenClassLookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (LinkageError | ReflectiveOperationException | SecurityException exception) {
+            return new Interpreted(program);
+        }
+    }
+
+    /**
+     * Evaluates the compiled expression, returning a float value.
+     *
+     * @return the arithmetic result of executing the calculation the
+     *         expression was compiled from
+     */
+    public abstract float evaluate() throws IllegalStateException;
+
+    /**
+     * Returns true if this expression fell back to being interpreted, by a
+     * PostfixProgram or by its parse tree, rather than running as bytecode.
+     *
+     * @return whether the expression is interpreted
+     */
+    public boolean isInterpreted() {
+        return false;
+    }
+
+    /* The fallback used when a parse tree can't be compiled to bytecode. */
+    private static final class Interpreted extends CompiledExpression {
+
+        private final PostfixProgram program;
+
+        Interpreted(final PostfixProgram programVal) {
+            program = programVal;
+        }
+
+        @Override
+        public float evaluate() throws IllegalStateException {
+            return program.evaluate();
+        }
+
+        @Override
+        public boolean isInterpreted() {
+            return true;
+        }
+    }
+
+    /* The fallback used when a parse tree can't be compiled to a
+     * PostfixProgram, because it uses an operator that isn't built in. */
+    private static final class InterpretedTree extends CompiledExpression {
+
+        private final ParseTreeNode root;
+
+        InterpretedTree(final ParseTreeNode rootVal) {
+            root = rootVal;
+        }
+
+        @Override
+        public float evaluate() throws IllegalStateException {
+            return root.evaluate();
+        }
+
+        @Override
+        public boolean isInterpreted() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.kmfahey.jcalculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * The NumberBackend that evaluates in BigDecimal, rounding the result of every
+ * operation to a MathContext, so that 0.1+0.2 is 0.3 and a large product keeps
+ * every significant digit the context allows.
+ *
+ * Square roots are found by BigDecimal.sqrt(), which refines a double estimate
+ * by Newton iteration, doubling the digits that are correct each step. A power
+ * with an integer exponent is found by exponentiation by squaring, taking
+ * about log2 of the exponent multiplications, each rounded to GUARD_DIGITS
+ * more digits than the context.
+ *
+ * Any other power is found as e^(exponent × ln base), in binary fixed point:
+ * a BigInteger f stands for f / 2^bits, so rescaling a product is a shift
+ * rather than the decimal rounding BigDecimal does on every operation, which
+ * is most of its cost at this size. e^x is reduced to 2^k × e^r, with r
+ * below ln 2 and then halved a few more times, summed as a Taylor series and
+ * squared back up. ln x is split into ln m + e × ln 2 - scale × ln 10, for the
+ * mantissa m in [1, 2) of the unscaled value, and ln m found by Halley
+ * iteration on e^y = m from Math.log()'s estimate, which triples the bits
+ * that are correct each step. The bits are as many as the context's digits
+ * and GUARD_DIGITS need, plus as many as the exponent's and the result's
+ * magnitudes would otherwise cost, so the result is right to the context's
+ * precision.
+ *
+ * A terminal of a parse tree that was parsed from an expression is taken
+ * exactly from its text, as a lone number passed to parse() is. A terminal
+ * without its text is a double, so it's taken as the decimal number
+ * Double.toString() renders it as, which is the number it was parsed from
+ * wherever that had no more significant digits than a double holds.
+ *
+ * Where a float result would be infinite or NaN, this backend throws an
+ * IllegalStateException instead, since BigDecimal has neither.
+ */
+public final class DecimalBackend implements NumberBackend<BigDecimal> {
+
+    /** The digits beyond the context's precision that powers are worked out
+     *  to. */
+    private static final int GUARD_DIGITS = 10;
+
+    /** The largest magnitude of x whose e^x BigDecimal can hold, a little
+     *  under 2^31 × ln 10. */
+    private static final double EXP_LIMIT = 4.9e9;
+
+    /** The halvings of e^x's reduced argument before it's summed, each
+     *  saving about a term of the series for a bit of precision lost
+     *  squaring back up. */
+    private static final int EXP_HALVINGS = 8;
+
+    /** The most bits a power of two is shifted by when converting the result
+     *  of e^x; beyond that it's multiplied in as a BigDecimal power. */
+    private static final int MAX_EXACT_SHIFT = 1 << 12;
+
+    /** The bits beyond those a calculation is known to lose that it's
+     *  worked out to, for the truncation of each fixed-point step. */
+    private static final int SLACK_BITS = 16;
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private static final BigInteger FIVE = BigInteger.valueOf(5);
+
+    /** The precision and rounding mode of every result. */
+    private final MathContext mathContext;
+
+    /** The context powers are worked out in before being rounded to
+     *  mathContext. */
+    private final MathContext workingContext;
+
+    /* ln 2 and ln 10, to at least the bits fractional powers need, worked
+     * out the first time they're needed; a race only works them out twice. */
+    private volatile Logarithms logarithms;
+
+    /**
+     * Constructs a backend that rounds every result to a MathContext.
+     *
+     * @param mathContextVal the precision and rounding mode of every result;
+     *                       its precision must be positive, as a division can
+     *                       have no exact result
+     */
+    public DecimalBackend(final MathContext mathContextVal) {
+        if (mathContextVal == null) { throw new IllegalArgumentException("argument 'mathContextVal' was null"); }
+        if (mathContextVal.getPrecision() < 1) {
+            throw new IllegalArgumentException("argument 'mathContextVal' had a precision less than 1");
+        }
+        mathContext = mathContextVal;
+        workingContext = new MathContext(mathContextVal.getPrecision() + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Returns the MathContext every result is rounded to.
+     *
+     * @return the backend's MathContext
+     */
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * Returns a terminal double as the decimal number Double.toString()
+     * renders it as, rounded to the context. Throws an IllegalStateException
+     * if the terminal is infinite, as a number too long for a double is
+     * parsed to.
+     *
+     * @param  terminal a terminal value
+     * @return the terminal as a BigDecimal
+     */
+    public BigDecimal valueOf(final double terminal) throws IllegalStateException {
+        if (!Double.isFinite(terminal)) {
+            throw new IllegalStateException("number out of range");
+        }
+        return new BigDecimal(Double.toString(terminal), mathContext);
+    }
+
+    public BigDecimal parse(final String numberText) throws NumberFormatException {
+        return new BigDecimal(numberText, mathContext);
+    }
+
+    public BigDecimal negate(final BigDecimal operand) {
+        return operand.negate(mathContext);
+    }
+
+    public BigDecimal add(final BigDecimal left, final BigDecimal right) {
+        return left.add(right, mathContext);
+    }
+
+    public BigDecimal subtract(final BigDecimal left, final BigDecimal right) {
+        return left.subtract(right, mathContext);
+    }
+
+    public BigDecimal multiply(final BigDecimal left, final BigDecimal right) throws IllegalStateException {
+        try {
+            return left.multiply(right, mathContext);
+        } catch (ArithmeticException exception) {
+            throw new IllegalStateException("result out of range");
+        }
+    }
+
+    public BigDecimal divide(final BigDecimal left, final BigDecimal right) throws IllegalStateException {
+        if (right.signum() == 0) {
+            throw new IllegalStateException("divide by zero");
+        }
+        try {
+            return left.divide(right, mathContext);
+        } catch (ArithmeticException exception) {
+            throw new IllegalStateException("result out of range");
+        }
+    }
+
+    /**
+     * Returns a number raised to a power: by exponentiation by squaring if
+     * the exponent is an integer, or otherwise as e^(exponent × ln base).
+     * Throws an IllegalStateException if the base is negative and the
+     * exponent isn't an integer, if the base is zero and the exponent
+     * negative, or if the result is too large or small for a BigDecimal.
+     *
+     * @param  base     the base
+     * @param  exponent the exponent
+     * @return base ^ exponent, rounded to the context
+     */
+    public BigDecimal power(final BigDecimal base, final BigDecimal exponent) throws IllegalStateException {
+        try {
+            if (exponent.signum() == 0 || exponent.stripTrailingZeros().scale() <= 0) {
+                return integerPower(base, exponent.longValueExact(), mathContext);
+            }
+            if (base.signum() < 0) {
+                throw new IllegalStateException("fractional power of a negative number");
+            } else if (base.signum() == 0) {
+                if (exponent.signum() < 0) {
+                    throw new IllegalStateException("divide by zero");
+                }
+                return BigDecimal.ZERO;
+            } else if (base.compareTo(BigDecimal.ONE) == 0) {
+                return BigDecimal.ONE;
+            }
+            return fractionalPower(base, exponent);
+        } catch (ArithmeticException exception) {
+            /* Thrown by longValueExact() for an integer exponent too large to
+             * be a long, and for a result whose exponent is out of
+             * BigDecimal's range; either way the result is out of range. */
+            throw new IllegalStateException("result out of range");
+        }
+    }
+
+    /**
+     * Returns the square root of a number, throwing an IllegalStateException
+     * if it's negative.
+     *
+     * @param  operand the number
+     * @return √operand, rounded to the context
+     */
+    public BigDecimal squareRoot(final BigDecimal operand) throws IllegalStateException {
+        if (operand.signum() < 0) {
+            throw new IllegalStateException("square root of a negative number");
+        }
+        return operand.sqrt(mathContext);
+    }
+
+    public String format(final BigDecimal value) {
+        return ResultFormatter.format(value);
+    }
+
+    /* Raises a number to an integer power by exponentiation by squaring: the
+     * base is squared once for each bit of the exponent, and multiplied into
+     * the result for each bit that's set. Each multiplication is rounded, so
+     * the working precision has a digit more for each 3 bits of the
+     * exponent. The result is rounded to the given context. */
+    private BigDecimal integerPower(final BigDecimal base, final long exponent, final MathContext resultContext)
+            throws IllegalStateException {
+        if (exponent == 0) {
+            return BigDecimal.ONE;
+        } else if (base.signum() == 0) {
+            if (exponent < 0) {
+                throw new IllegalStateException("divide by zero");
+            }
+            return BigDecimal.ZERO;
+        }
+        long remainingBits = Math.abs(exponent);
+        int extraDigits = (64 - Long.numberOfLeadingZeros(remainingBits)) / 3 + 1;
+        MathContext powerContext = new MathContext(workingContext.getPrecision() + extraDigits, RoundingMode.HALF_EVEN);
+        BigDecimal result = BigDecimal.ONE;
+        BigDecimal square = base;
+        while (true) {
+            if ((remainingBits & 1) != 0) {
+                result = result.multiply(square, powerContext);
+            }
+            remainingBits >>>= 1;
+            if (remainingBits == 0) {
+                break;
+            }
+            square = square.multiply(square, powerContext);
+        }
+        return (exponent > 0) ? result.round(resultContext) : BigDecimal.ONE.divide(result, resultContext);
+    }
+
+    /* Raises a positive number other than 1 to a fractional power, as
+     * e^(exponent × ln base), in fixed point. The product's absolute error is
+     * the result's relative error, so it's worked out to as many more bits as
+     * its integer part has, which is also what reducing it by ln 2 loses, and
+     * as many as the exponent's integer part and the multiples of ln 2 and
+     * ln 10 in ln base have, as well as those the squarings after the series
+     * lose and SLACK_BITS for the truncation of each step. */
+    private BigDecimal fractionalPower(final BigDecimal base, final BigDecimal exponent) throws ArithmeticException {
+        double estimatedProduct = exponent.doubleValue() * estimateLn(base);
+        if (!(Math.abs(estimatedProduct) < EXP_LIMIT)) {
+            throw new ArithmeticException((estimatedProduct > 0) ? "Overflow" : "Underflow");
+        }
+        int bits = digitsToBits(workingContext.getPrecision()) + EXP_HALVINGS + SLACK_BITS
+                   + Math.max(0, Math.getExponent(estimatedProduct))
+                   + digitsToBits(Math.max(0, exponent.precision() - exponent.scale()))
+                   + 32 - Integer.numberOfLeadingZeros(base.unscaledValue().bitLength() + Math.abs(base.scale()));
+        Logarithms constants = logarithms(bits);
+        BigInteger product = toFixed(exponent, bits).multiply(lnFixed(base, bits, constants)).shiftRight(bits);
+        BigInteger ln2 = constants.ln2.shiftRight(constants.bits - bits);
+
+        /* e^product = 2^k × e^r, with |r| <= ln 2 / 2. */
+        BigInteger halfLn2 = ln2.shiftRight(1);
+        long binaryExponent = product.add((product.signum() < 0) ? halfLn2.negate() : halfLn2).divide(ln2)
+                                     .longValueExact();
+        BigInteger reduced = product.subtract(ln2.multiply(BigInteger.valueOf(binaryExponent)));
+        BigInteger mantissa = expFixed(reduced, bits);
+
+        /* The result is mantissa × 2^(binaryExponent - bits); a power of two
+         * is exactly a power of five over a power of ten. */
+        long shift = binaryExponent - bits;
+        if (shift >= 0 && shift <= MAX_EXACT_SHIFT) {
+            return new BigDecimal(mantissa.shiftLeft((int) shift)).round(mathContext);
+        } else if (shift < 0 && shift >= -MAX_EXACT_SHIFT) {
+            return new BigDecimal(mantissa.multiply(FIVE.pow((int) -shift)), (int) -shift).round(mathContext);
+        }
+        BigDecimal scaledMantissa = new BigDecimal(mantissa.multiply(FIVE.pow(bits)), bits);
+        return scaledMantissa.multiply(integerPower(TWO, binaryExponent, workingContext), mathContext);
+    }
+
+    /* Returns e^x for a fixed-point x with |x| < 1: x is halved
+     * EXP_HALVINGS times, the Taylor series summed until its terms vanish,
+     * and the sum squared as many times as x was halved. */
+    private static BigInteger expFixed(final BigInteger x, final int bits) {
+        BigInteger one = BigInteger.ONE.shiftLeft(bits);
+        BigInteger reduced = x.shiftRight(EXP_HALVINGS);
+        BigInteger sum = one;
+        BigInteger term = one;
+        for (int index = 1; term.signum() != 0; index++) {
+            term = term.multiply(reduced).shiftRight(bits).divide(BigInteger.valueOf(index));
+            sum = sum.add(term);
+        }
+        for (int index = 0; index < EXP_HALVINGS; index++) {
+            sum = sum.multiply(sum).shiftRight(bits);
+        }
+        return sum;
+    }
+
+    /* Returns ln x, for a positive x, in fixed point. x is its unscaled
+     * value u over 10^scale, and u is m × 2^e with m in [1, 2), so ln x is
+     * ln m + e × ln 2 - scale × ln 10. */
+    private static BigInteger lnFixed(final BigDecimal x, final int bits, final Logarithms constants) {
+        BigInteger unscaled = x.unscaledValue();
+        int binaryExponent = unscaled.bitLength() - 1;
+        BigInteger mantissa = (binaryExponent > bits) ? unscaled.shiftRight(binaryExponent - bits)
+                                                      : unscaled.shiftLeft(bits - binaryExponent);
+        int constantsShift = constants.bits - bits;
+        return lnMantissa(mantissa, bits)
+               .add(constants.ln2.shiftRight(constantsShift).multiply(BigInteger.valueOf(binaryExponent)))
+               .subtract(constants.ln10.shiftRight(constantsShift).multiply(BigInteger.valueOf(x.scale())));
+    }
+
+    /* Returns ln m, for a fixed-point m in [1, 2], by Halley iteration on
+     * e^y = m: y += 2 × (m - e^y) / (m + e^y). Math.log()'s estimate is
+     * right to about 50 bits, and each step triples that. */
+    private static BigInteger lnMantissa(final BigInteger mantissa, final int bits) {
+        double mantissaEstimate = mantissa.shiftRight(bits - 52).doubleValue() / (1L << 52);
+        BigInteger logarithm = toFixed(new BigDecimal(Math.log(mantissaEstimate)), bits);
+        for (int correctBits = 50; correctBits < bits + 2; correctBits *= 3) {
+            BigInteger power = expFixed(logarithm, bits);
+            logarithm = logarithm.add(mantissa.subtract(power).shiftLeft(bits + 1).divide(mantissa.add(power)));
+        }
+        return logarithm;
+    }
+
+    /* Returns the constants ln 2 and ln 10 to at least the given bits. ln 2
+     * is the sum of 1 / (i × 2^i), each term adding a bit, and ln 10 is
+     * ln 1.25 + 3 × ln 2; both are worked out to SLACK_BITS more bits, for
+     * the truncation of each term. */
+    private Logarithms logarithms(final int requestedBits) {
+        Logarithms constants = logarithms;
+        if (constants != null && constants.bits >= requestedBits) {
+            return constants;
+        }
+        int bits = requestedBits + SLACK_BITS;
+        BigInteger ln2 = BigInteger.ZERO;
+        for (int index = 1; index <= bits; index++) {
+            ln2 = ln2.add(BigInteger.ONE.shiftLeft(bits - index).divide(BigInteger.valueOf(index)));
+        }
+        BigInteger ln10 = lnMantissa(BigInteger.valueOf(5).shiftLeft(bits - 2), bits)
+                          .add(ln2.multiply(BigInteger.valueOf(3)));
+        constants = new Logarithms(bits, ln2, ln10);
+        logarithms = constants;
+        return constants;
+    }
+
+    /* Returns x in fixed point, truncated to the given bits. */
+    private static BigInteger toFixed(final BigDecimal x, final int bits) {
+        if (x.scale() <= 0) {
+            return x.unscaledValue().multiply(BigInteger.TEN.pow(-x.scale())).shiftLeft(bits);
+        }
+        return x.unscaledValue().shiftLeft(bits).divide(BigInteger.TEN.pow(x.scale()));
+    }
+
+    /* Estimates ln x, for a positive x, as a double, however large or small
+     * x is. */
+    private static double estimateLn(final BigDecimal x) {
+        BigInteger unscaled = x.unscaledValue();
+        int shift = Math.max(0, unscaled.bitLength() - 63);
+        return Math.log(unscaled.shiftRight(shift).doubleValue()) + shift * Math.log(2)
+               - x.scale() * Math.log(10);
+    }
+
+    /* Returns the bits a number of decimal digits takes. */
+    private static int digitsToBits(final int digits) {
+        return (int) Math.ceil(digits * 3.3219280948873626) + 1;
+    }
+
+    /* ln 2 and ln 10 in fixed point, to the given bits. */
+    private static record Logarithms(int bits, BigInteger ln2, BigInteger ln10) { }
+}
@@ -0,0 +1,66 @@
+package org.kmfahey.jcalculator;
+
+/**
+ * The NumberBackend that evaluates in double. Its evaluate() is
+ * ParseTreeNode.evaluateDouble(), which walks the tree over primitive doubles,
+ * using each terminal value as it was parsed and boxing only the result, and
+ * nothing is narrowed along the way, so a chain of operations keeps double's
+ * precision throughout.
+ */
+final class DoubleBackend implements NumberBackend<Double> {
+
+    /* Constructed once, as NumberBackend.DOUBLE. */
+    DoubleBackend() { }
+
+    public Double valueOf(final double terminal) {
+        return terminal;
+    }
+    public Double parse(final String numberText) throws NumberFormatException {
+        return Double.parseDouble(numberText);
+    }
+
+    public Double negate(final Double operand) {
+        return -operand;
+    }
+
+    public Double add(final Double left, final Double right) {
+        return left + right;
+    }
+
+    public Double subtract(final Double left, final Double right) {
+        return left - right;
+    }
+
+    public Double multiply(final Double left, final Double right) {
+        return left * right;
+    }
+
+    public Double divide(final Double left, final Double right) throws IllegalStateException {
+        if (right == 0) {
+            throw new IllegalStateException("divide by zero");
+        }
+        return left / right;
+    }
+
+    public Double power(final Double base, final Double exponent) {
+        return Math.pow(base, exponent);
+    }
+
+    public Double squareRoot(final Double operand) {
+        return Math.sqrt(operand);
+    }
+
+    public String format(final Double value) {
+        return ResultFormatter.format((double) value);
+    }
+
+    public Double evaluate(final ParseTreeNode parseTree) throws IllegalStateException {
+        if (parseTree == null) { throw new IllegalArgumentException("argument 'parseTree' was null"); }
+        return parseTree.evaluateDouble();
+    }
+
+    public String evaluateAndFormat(final ParseTreeNode parseTree) throws IllegalStateException {
+        if (parseTree == null) { throw new IllegalArgumentException("argument 'parseTree' was null"); }
+        return ResultFormatter.format(parseTree.evaluateDouble());
+    }
+}
@@ -0,0 +1,309 @@
+package org.kmfahey.jcalculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+
+/**
+ * Writes the class file for a CompiledExpression subclass whose evaluate()
+ * method runs a PostfixProgram as straight-line JVM bytecode. Each constant is
+ * pushed from the class's constant pool and each operator becomes the matching
+ * float instruction, or a call to the Opcodes helper that ParseTreeNode's
+ * semantics require. The program's temporaries become local variables. The
+ * method has no branches, so the class file needs no stack map frames.
+ */
+final class ExpressionClassWriter {
+
+    /** The largest evaluate() method this class will write. HotSpot doesn't
+     *  JIT-compile methods longer than 8000 bytes of bytecode, and such a
+     *  method would run slower than the PostfixProgram interpreter. */
+    static final int MAX_CODE_LENGTH = 8000;
+
+    /* The class file format's constant pool tags. */
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /* The JVM instructions written. */
+    private static final int FCONST_0 = 0x0b;
+    private static final int FCONST_1 = 0x0c;
+    private static final int FCONST_2 = 0x0d;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int FLOAD = 0x17;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int FSTORE = 0x38;
+    private static final int DUP = 0x59;
+    private static final int FADD = 0x62;
+    private static final int FSUB = 0x66;
+    private static final int FMUL = 0x6a;
+    private static final int FNEG = 0x76;
+    private static final int FRETURN = 0xae;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    /* The access flags written: ACC_PUBLIC, ACC_FINAL and ACC_SUPER. */
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    /* The class file version written, that of Java 17. */
+    private static final int CLASS_FILE_VERSION = 61;
+
+    private static final String SUPERCLASS_NAME = "org/kmfahey/jcalculator/CompiledExpression";
+    private static final String CLASS_NAME = SUPERCLASS_NAME + "$Bytecode";
+    private static final String OPCODES_NAME = "org/kmfahey/jcalculator/Opcodes";
+
+    /** The constant pool entries written so far, not counting the leading
+     *  count. */
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+
+    /** The index each constant pool entry was written at, keyed by a string
+     *  encoding the entry's tag and contents. */
+    private final HashMap<String, Integer> poolIndexes = new HashMap<>();
+
+    /** The index the next constant pool entry will be written at. */
+    private int nextPoolIndex = 1;
+
+    private ExpressionClassWriter() { }
+
+    /**
+     * Writes the class file for a CompiledExpression subclass that evaluates
+     * the given program. Returns null if the program is too long or has too
+     * many constants to be written as a single JIT-compilable method, or if
+     * it has variables, since evaluate() takes no slot values.
+     *
+     * @param  program the program to translate to bytecode
+     * @return the bytes of the class file, or null
+     */
+    static byte[] write(final PostfixProgram program) {
+        try {
+            return new ExpressionClassWriter().writeClass(program);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /* Writes the whole class file, returning null if it would be too big. */
+    private byte[] writeClass(final PostfixProgram program) throws IOException {
+        if (program.variableCount() > 0 || program.temporaryCount() > 0xff - 1) {
+            return null;
+        }
+        int thisClass = classEntry(CLASS_NAME);
+        int superClass = classEntry(SUPERCLASS_NAME);
+        int superConstructor = methodEntry(SUPERCLASS_NAME, "<init>", "()V");
+        int codeName = utf8Entry("Code");
+
+        byte[] evaluateCode = writeEvaluateCode(program);
+        if (evaluateCode == null || nextPoolIndex > 0xffff) {
+            return null;
+        }
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream(evaluateCode.length + poolBytes.size() + 128);
+        DataOutputStream classFile = new DataOutputStream(classBytes);
+        classFile.writeInt(0xcafebabe);
+        classFile.writeShort(0);
+        classFile.writeShort(CLASS_FILE_VERSION);
+        int constructorName = utf8Entry("<init>");
+        int constructorDescriptor = utf8Entry("()V");
+        int evaluateName = utf8Entry("evaluate");
+        int evaluateDescriptor = utf8Entry("()F");
+        classFile.writeShort(nextPoolIndex);
+        poolBytes.writeTo(classFile);
+        classFile.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        classFile.writeShort(thisClass);
+        classFile.writeShort(superClass);
+        classFile.writeShort(0);    // interfaces
+        classFile.writeShort(0);    // fields
+        classFile.writeShort(2);    // methods
+
+        /* The constructor, which just calls the superclass constructor. */
+        byte[] constructorCode = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superConstructor >> 8),
+                                  (byte) superConstructor, (byte) RETURN};
+        writeMethod(classFile, constructorName, constructorDescriptor, codeName, 1, 1, constructorCode);
+
+        /* The evaluate() method; every value on its operand stack is a float,
+         * which takes one stack slot, and a STORE briefly takes one more for
+         * the value it duplicates. Local 0 is "this" and each temporary takes
+         * one local after it. */
+        int maxStack = program.maxStackDepth() + (program.temporaryCount() > 0 ? 1 : 0);
+        writeMethod(classFile, evaluateName, evaluateDescriptor, codeName, maxStack, 1 + program.temporaryCount(),
+                    evaluateCode);
+
+        classFile.writeShort(0);    // attributes
+        return classBytes.toByteArray();
+    }
+
+    /* Translates the program's instructions into the bytecode of the evaluate()
+     * method, returning null if the method would be too long. */
+    private byte[] writeEvaluateCode(final PostfixProgram program) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream(program.length() * 2 + 1);
+        int divideMethod = methodEntry(OPCODES_NAME, "divide", "(FF)F");
+        int powerMethod = methodEntry(OPCODES_NAME, "power", "(FF)F");
+        int squareRootMethod = methodEntry(OPCODES_NAME, "squareRoot", "(F)F");
+
+        for (int index = 0; index < program.length(); index++) {
+            switch (program.opcodeAt(index)) {
+                case Opcodes.CONSTANT:
+                    writeFloatPush(code, program.floatConstantAt(index));
+                    break;
+                case Opcodes.ADD:
+                    code.write(FADD);
+                    break;
+                case Opcodes.SUBTRACT:
+                    code.write(FSUB);
+                    break;
+                case Opcodes.MULTIPLY:
+                    code.write(FMUL);
+                    break;
+                case Opcodes.NEGATE:
+                    code.write(FNEG);
+                    break;
+                case Opcodes.DIVIDE:
+                    writeInstruction(code, INVOKESTATIC, divideMethod);
+                    break;
+                case Opcodes.POWER:
+                    writeInstruction(code, INVOKESTATIC, powerMethod);
+                    break;
+                case Opcodes.SQUARE_ROOT:
+                    writeInstruction(code, INVOKESTATIC, squareRootMethod);
+                    break;
+                case Opcodes.STORE:
+                    code.write(DUP);
+                    code.write(FSTORE);
+                    code.write(1 + program.temporaryAt(index));
+                    break;
+                case Opcodes.LOAD:
+                    code.write(FLOAD);
+                    code.write(1 + program.temporaryAt(index));
+                    break;
+                default:
+                    throw new IllegalArgumentException("opcode " + program.opcodeAt(index) + " can't be compiled");
+            }
+            if (code.size() >= MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+        code.write(FRETURN);
+        return code.toByteArray();
+    }
+
+    /* Writes the shortest instruction that pushes the given float. */
+    private void writeFloatPush(final ByteArrayOutputStream code, final float value) throws IOException {
+        if (Float.floatToRawIntBits(value) == 0) {
+            code.write(FCONST_0);
+        } else if (value == 1F) {
+            code.write(FCONST_1);
+        } else if (value == 2F) {
+            code.write(FCONST_2);
+        } else {
+            int poolIndex = floatEntry(value);
+            if (poolIndex <= 0xff) {
+                code.write(LDC);
+                code.write(poolIndex);
+            } else {
+                writeInstruction(code, LDC_W, poolIndex);
+            }
+        }
+    }
+
+    /* Writes an instruction that takes a two-byte constant pool index. */
+    private static void writeInstruction(final ByteArrayOutputStream code, final int instruction,
+                                         final int poolIndex) {
+        code.write(instruction);
+        code.write(poolIndex >> 8);
+        code.write(poolIndex);
+    }
+
+    /* Writes a public method with a Code attribute. */
+    private static void writeMethod(final DataOutputStream classFile, final int name, final int descriptor,
+                                    final int codeName, final int maxStack, final int maxLocals,
+                                    final byte[] code) throws IOException {
+        classFile.writeShort(ACC_PUBLIC);
+        classFile.writeShort(name);
+        classFile.writeShort(descriptor);
+        classFile.writeShort(1);    // attributes
+        classFile.writeShort(codeName);
+        classFile.writeInt(12 + code.length);
+        classFile.writeShort(maxStack);
+        classFile.writeShort(maxLocals);
+        classFile.writeInt(code.length);
+        classFile.write(code);
+        classFile.writeShort(0);    // exception table
+        classFile.writeShort(0);    // attributes
+    }
+
+    /* Each of the following returns the index of a constant pool entry with
+     * the given contents, writing the entry first if it isn't already in the
+     * pool. */
+
+    private int utf8Entry(final String value) throws IOException {
+        Integer poolIndex = poolIndexes.get("U" + value);
+        if (poolIndex == null) {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+            poolIndex = addEntry("U" + value);
+        }
+        return poolIndex;
+    }
+
+    private int floatEntry(final float value) throws IOException {
+        String key = "F" + Float.floatToRawIntBits(value);
+        Integer poolIndex = poolIndexes.get(key);
+        if (poolIndex == null) {
+            pool.writeByte(CONSTANT_FLOAT);
+            pool.writeFloat(value);
+            poolIndex = addEntry(key);
+        }
+        return poolIndex;
+    }
+
+    private int classEntry(final String internalName) throws IOException {
+        Integer poolIndex = poolIndexes.get("C" + internalName);
+        if (poolIndex == null) {
+            int nameIndex = utf8Entry(internalName);
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(nameIndex);
+            poolIndex = addEntry("C" + internalName);
+        }
+        return poolIndex;
+    }
+
+    private int methodEntry(final String owner, final String name, final String descriptor) throws IOException {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer poolIndex = poolIndexes.get(key);
+        if (poolIndex == null) {
+            int classIndex = classEntry(owner);
+            int nameAndTypeIndex = nameAndTypeEntry(name, descriptor);
+            pool.writeByte(CONSTANT_METHODREF);
+            pool.writeShort(classIndex);
+            pool.writeShort(nameAndTypeIndex);
+            poolIndex = addEntry(key);
+        }
+        return poolIndex;
+    }
+
+    private int nameAndTypeEntry(final String name, final String descriptor) throws IOException {
+        Integer poolIndex = poolIndexes.get("N" + name + descriptor);
+        if (poolIndex == null) {
+            int nameIndex = utf8Entry(name);
+            int descriptorIndex = utf8Entry(descriptor);
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+            poolIndex = addEntry("N" + name + descriptor);
+        }
+        return poolIndex;
+    }
+
+    private int addEntry(final String key) {
+        poolIndexes.put(key, nextPoolIndex);
+        return nextPoolIndex++;
+    }
+}
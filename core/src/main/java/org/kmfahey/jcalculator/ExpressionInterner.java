@@ -0,0 +1,146 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Implements hash-consing of parse trees: interning a tree replaces every
+ * subtree with a canonical instance, so that structurally equal subtrees,
+ * whether within one tree or across every tree interned by the same
+ * ExpressionInterner, become one shared object. A tree such as the one for
+ * "(a+b)^2×(a+b)" becomes a directed acyclic graph in which the node for "a+b"
+ * has two parents.
+ *
+ * Sharing saves the memory the duplicate subtrees took, and PostfixProgram
+ * compiles a shared subtree so that it's evaluated only once per evaluation,
+ * with the result reused wherever else the subtree occurs.
+ * ParseTreeNode.evaluate() still evaluates a shared subtree once per
+ * occurrence.
+ *
+ * An ExpressionInterner isn't thread-safe, and holds on to every node it has
+ * interned until it's cleared.
+ */
+public final class ExpressionInterner {
+
+    /** Maps each node interned so far to itself, its canonical instance. */
+    private final HashMap<ParseTreeNode, ParseTreeNode> canonicalNodes = new HashMap<>();
+
+    /**
+     * Constructs an ExpressionInterner with no interned nodes.
+     */
+    public ExpressionInterner() { }
+
+    /**
+     * Returns the canonical instance of a parse tree, in which every subtree
+     * is the canonical instance of that subtree. The tree passed in isn't
+     * modified; where it already holds canonical instances, they're reused.
+     * The tree is walked with an explicit stack of pending nodes, so
+     * arbitrarily deep trees can be interned.
+     *
+     * @param  root the root of the parse tree to intern
+     * @return the canonical instance of the tree
+     */
+    public ParseTreeNode intern(final ParseTreeNode root) {
+        if (root == null) { throw new IllegalArgumentException("argument 'root' was null"); }
+        ParseTreeNode[] pendingNodes = new ParseTreeNode[16];
+        byte[] pendingStages = new byte[16];
+        int pendingCount = 1;
+        pendingNodes[0] = root;
+        ParseTreeNode[] internedNodes = new ParseTreeNode[16];
+        int internedCount = 0;
+
+        /* Each pending node passes through three stages, as in
+         * PostfixProgram.compile(): its left child node is interned, then its
+         * right child node, then the node itself, by which time its interned
+         * children are on top of internedNodes. Since a node's children are
+         * canonical before it's looked up, equals() compares them by identity
+         * and never descends more than one level. */
+        while (pendingCount > 0) {
+            ParseTreeNode node = pendingNodes[pendingCount - 1];
+            ParseTreeNode childNode = null;
+            int stage = node.isLeaf() ? 2 : pendingStages[pendingCount - 1]++;
+            switch (stage) {
+                case 0:
+                    childNode = node.getLeftChildNode();
+                    break;
+                case 1:
+                    childNode = node.getRightChildNode();
+                    break;
+                default:
+                    ParseTreeNode rightChild = (node.getRightChildNode() != null) ? internedNodes[--internedCount]
+                                                                                   : null;
+                    ParseTreeNode leftChild = (node.getLeftChildNode() != null) ? internedNodes[--internedCount]
+                                                                                 : null;
+                    ParseTreeNode canonicalNode = canonicalize(withChildren(node, leftChild, rightChild));
+                    if (internedCount == internedNodes.length) {
+                        internedNodes = Arrays.copyOf(internedNodes, internedCount * 2);
+                    }
+                    internedNodes[internedCount++] = canonicalNode;
+                    pendingCount--;
+                    break;
+            }
+            if (childNode != null) {
+                if (pendingCount == pendingNodes.length) {
+                    pendingNodes = Arrays.copyOf(pendingNodes, pendingCount * 2);
+                    pendingStages = Arrays.copyOf(pendingStages, pendingCount * 2);
+                }
+                pendingNodes[pendingCount] = childNode;
+                pendingStages[pendingCount] = 0;
+                pendingCount++;
+            }
+        }
+
+        return internedNodes[0];
+    }
+
+    /**
+     * Returns the number of distinct nodes interned so far.
+     *
+     * @return the number of canonical nodes
+     */
+    public int size() {
+        return canonicalNodes.size();
+    }
+
+    /**
+     * Forgets every interned node. Trees interned afterward share no nodes
+     * with trees interned before.
+     */
+    public void clear() {
+        canonicalNodes.clear();
+    }
+
+    /* Returns the canonical node equal to the given node, making the given
+     * node canonical if there isn't one yet. */
+    private ParseTreeNode canonicalize(final ParseTreeNode node) {
+        ParseTreeNode canonicalNode = canonicalNodes.putIfAbsent(node, node);
+        return (canonicalNode != null) ? canonicalNode : node;
+    }
+
+    /* Returns the node itself if its child nodes are already the given
+     * children, or otherwise a copy of it with the given children. A null
+     * child stands for a terminal value child or no child, which is kept. */
+    private static ParseTreeNode withChildren(final ParseTreeNode node, final ParseTreeNode leftChild,
+                                              final ParseTreeNode rightChild) {
+        if (node.getLeftChildNode() == leftChild && node.getRightChildNode() == rightChild) {
+            return node;
+        }
+        Operator operator = node.getCenterOperator();
+        if (leftChild != null) {
+            return (rightChild != null) ? new ParseTreeNode(leftChild, operator, rightChild)
+                                        : new ParseTreeNode(leftChild, operator, node.getRightChildValue(),
+                                                            node.getRightChildFloat(), node.getRightChildText());
+        } else if (node.hasLeftChildValue()) {
+            return (rightChild != null) ? new ParseTreeNode(node.getLeftChildValue(), node.getLeftChildFloat(),
+                                                            node.getLeftChildText(), operator, rightChild)
+                                        : new ParseTreeNode(node.getLeftChildValue(), node.getLeftChildFloat(),
+                                                            node.getLeftChildText(), operator,
+                                                            node.getRightChildValue(), node.getRightChildFloat(),
+                                                            node.getRightChildText());
+        } else {
+            return (rightChild != null) ? new ParseTreeNode(operator, rightChild)
+                                        : new ParseTreeNode(operator, node.getRightChildValue(),
+                                                            node.getRightChildFloat(), node.getRightChildText());
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package org.kmfahey.jcalculator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * Implements a cursor-based lexer over an arithmetic expression. The lexer
+ * walks the original CharSequence in a single pass and reports each token as a
+ * primitive token code; numeric tokens are reported as a span of offsets into
+ * the expression rather than as a new String, so no per-character objects are
+ * allocated while scanning.
+ *
+ * Each token is checked for a syntax error as it's scanned, by a state machine
+ * whose state is the class of the previous token. A table indexed by that
+ * class gives the set of token classes allowed to follow it, so a valid
+ * expression is validated without allocating anything.
+ *
+ * If the lexer is constructed with identifiers allowed, a run of letters,
+ * digits and underscores beginning with a letter or underscore is reported as
+ * an IDENTIFIER token, naming a variable; otherwise letters are unrecognized
+ * characters, as they always have been.
+ *
+ * If the lexer is constructed with an OperatorRegistry, it recognizes the
+ * operators defined there as well as the built-in ones, and reports each as
+ * an OPERATOR token. An operator whose symbol is a single character is
+ * recognized wherever the character occurs. One whose symbol is a word is
+ * recognized where a run of letters is the word in its entirety, so a
+ * function "sin" is found in "sin(x)" or "sin2" but not in "sinh" or "sinx";
+ * a run of letters that isn't a word operator is scanned as it would be
+ * without one. Every operator token, built-in or not, is resolved to the
+ * Operator it stands for, which tokenOperator() returns.
+ *
+ * A lexer can also scan a range of UTF-8 bytes in a ByteBuffer, such as a line
+ * of a memory-mapped file, decoding each character in place as it's reached;
+ * the multi-byte "×", "÷" and "√" are recognized as they are in a
+ * CharSequence. In this mode token start and end offsets are byte offsets into
+ * the buffer, but error offsets are still counted in chars, so a ParseException
+ * is the same whether an expression is scanned as bytes or as a String.
+ */
+public final class ExpressionLexer {
+
+    /** Token code returned once the whole expression has been scanned. */
+    public static final int END_OF_INPUT = 0;
+
+    /** Token code for a numeric operand, a run of the characters [0-9.]. */
+    public static final int NUMBER = 1;
+
+    /** Token code for a left parenthesis. */
+    public static final int LEFT_PAREN = 2;
+
+    /** Token code for a right parenthesis. */
+    public static final int RIGHT_PAREN = 3;
+
+    /** Token code for the addition operator. */
+    public static final int PLUS = 4;
+
+    /** Token code for a minus sign that negates the operand following it. */
+    public static final int UNARY_MINUS = 5;
+
+    /** Token code for a minus sign that subtracts one operand from another. */
+    public static final int BINARY_MINUS = 6;
+
+    /** Token code for the multiplication operator. */
+    public static final int TIMES = 7;
+
+    /** Token code for the division operator. */
+    public static final int DIVIDE = 8;
+
+    /** Token code for the exponentiation operator. */
+    public static final int CARET = 9;
+
+    /** Token code for the square root operator. */
+    public static final int SQUARE_ROOT = 10;
+
+    /** Token code for any single character the lexer doesn't recognize. */
+    public static final int UNRECOGNIZED = 11;
+
+    /** Token code for a variable name, only reported if identifiers are
+     *  allowed. */
+    public static final int IDENTIFIER = 12;
+
+    /** Token code for an operator defined in the lexer's OperatorRegistry. */
+    public static final int OPERATOR = 13;
+
+    /* The token classes the syntax-checking state machine is indexed by. A
+     * numeric token is an operand; "+", "×" and "÷" are binary operators;
+     * "√", "^" and "-" each have classes of their own. An unrecognized
+     * character is classed as OTHER if it falls in the range U+002B to U+00D7,
+     * which a right paren has always accepted after it, or as FOREIGN if it
+     * doesn't. An identifier has a class of its own, as does a prefix
+     * operator defined in an OperatorRegistry; a binary operator defined
+     * there is a BINARY_OP like "+". START is the state
+     * before the first token is scanned. The classes and the tables below are
+     * shared with IncrementalExpression, which runs the same state machine a
+     * character at a time. */
+    static final int CLASS_OPERAND = 0;
+    static final int CLASS_LEFT_PAREN = 1;
+    static final int CLASS_RIGHT_PAREN = 2;
+    static final int CLASS_BINARY_OP = 3;
+    static final int CLASS_SQUARE_ROOT = 4;
+    static final int CLASS_CARET = 5;
+    static final int CLASS_MINUS = 6;
+    static final int CLASS_OTHER = 7;
+    static final int CLASS_FOREIGN = 8;
+    static final int CLASS_IDENTIFIER = 9;
+    static final int CLASS_PREFIX_OP = 10;
+    static final int CLASS_START = 11;
+
+    /* Bitmasks over the token classes, used to build the tables below. */
+    static final int ANY_CLASS = (1 << CLASS_START) - 1;
+    static final int OPENING_CLASSES = 1 << CLASS_OPERAND | 1 << CLASS_LEFT_PAREN | 1 << CLASS_MINUS
+                                               | 1 << CLASS_IDENTIFIER | 1 << CLASS_PREFIX_OP;
+    static final int CLOSING_CLASSES = 1 << CLASS_RIGHT_PAREN | 1 << CLASS_BINARY_OP | 1 << CLASS_CARET
+                                               | 1 << CLASS_MINUS;
+
+    /* The state machine's transition table: the set of token classes which may
+     * follow a token of the class used as the index. An operand may be
+     * followed by one of [0-9.()+×÷^-]; a left paren or "^" by one of [0-9.(-];
+     * a right paren by one of [+-×÷^], read as a character range; one of
+     * [+-×÷√] by one of [0-9.(√-]; and an unrecognized character by anything.
+     * The first token of the expression must be one of [0-9.(-]. Wherever an
+     * operand may occur an identifier may too, except after a right paren or
+     * another operand; an identifier may be followed by one of [)+×÷^-]. A
+     * prefix operator may occur wherever an operand may, except after a right
+     * paren, an operand or an identifier, and is followed as "√" is. */
+    static final int[] ALLOWED_FOLLOWERS = {
+        /* CLASS_OPERAND */     CLOSING_CLASSES | 1 << CLASS_OPERAND | 1 << CLASS_LEFT_PAREN,
+        /* CLASS_LEFT_PAREN */  OPENING_CLASSES,
+        /* CLASS_RIGHT_PAREN */ 1 << CLASS_OPERAND | 1 << CLASS_BINARY_OP | 1 << CLASS_CARET | 1 << CLASS_MINUS
+                                | 1 << CLASS_OTHER,
+        /* CLASS_BINARY_OP */   OPENING_CLASSES | 1 << CLASS_SQUARE_ROOT,
+        /* CLASS_SQUARE_ROOT */ OPENING_CLASSES | 1 << CLASS_SQUARE_ROOT,
+        /* CLASS_CARET */       OPENING_CLASSES,
+        /* CLASS_MINUS */       OPENING_CLASSES | 1 << CLASS_SQUARE_ROOT,
+        /* CLASS_OTHER */       ANY_CLASS,
+        /* CLASS_FOREIGN */     ANY_CLASS,
+        /* CLASS_IDENTIFIER */  CLOSING_CLASSES,
+        /* CLASS_PREFIX_OP */   OPENING_CLASSES | 1 << CLASS_SQUARE_ROOT,
+        /* CLASS_START */       OPENING_CLASSES
+    };
+
+    /* The set of token classes which may end the expression: one of [0-9.)],
+     * or an identifier. */
+    static final int ALLOWED_AT_END = 1 << CLASS_OPERAND | 1 << CLASS_RIGHT_PAREN | 1 << CLASS_IDENTIFIER;
+
+    /** The expression being scanned, or null if bytes are being scanned. */
+    private final CharSequence expression;
+
+    /** The UTF-8 bytes being scanned, or null if a CharSequence is being
+     *  scanned. Only absolute gets are used, so several lexers can scan one
+     *  buffer at once. */
+    private final ByteBuffer bytes;
+
+    /** The offset one past the end of the expression: its length, or the end
+     *  of the range of bytes being scanned. Cached since it's consulted per
+     *  token. */
+    private final int expressionLength;
+
+    /** Whether identifiers are scanned as IDENTIFIER tokens. */
+    private final boolean identifiersAllowed;
+
+    /** The operators recognized besides the built-in ones. */
+    private final OperatorRegistry registry;
+
+    /** The offset of the next character to be scanned. */
+    private int position;
+
+    /** The number of chars scanned before the current token; the same as its
+     *  start offset unless bytes are being scanned. */
+    private int charsBeforeToken;
+
+    /** The number of chars scanned so far. */
+    private int charsScanned;
+
+    /** The offset one past the first character of the current token. */
+    private int firstCharEnd;
+
+    /** The low surrogate of a supplementary character decoded from four
+     *  bytes, which is scanned as a second char as it would be in a String;
+     *  zero if there's none pending. */
+    private char pendingLowSurrogate;
+
+    /** The code of the most recently scanned token. */
+    private int tokenCode = END_OF_INPUT;
+
+    /** The operator the most recently scanned token stands for, or null if
+     *  it isn't an operator. */
+    private Operator tokenOperator;
+
+    /** The offset of the first character of the most recently scanned token. */
+    private int tokenStart;
+
+    /** The offset one past the last character of the most recently scanned
+     *  token. */
+    private int tokenEnd;
+
+    /** The number of numeric tokens scanned before the current token. */
+    private int numbersScanned;
+
+    /** The ParseException offset associated with the current token. */
+    private int errorOffset;
+
+    /** The syntax-checking state machine's state: the class of the previous
+     *  token, or CLASS_START before the first token is scanned. */
+    private int previousClass = CLASS_START;
+
+    /** The first character of the previous token, and the operator it
+     *  resolved to if it's one defined in the registry, for use in error
+     *  messages. */
+    private char previousChar;
+    private Operator previousUserOperator;
+
+    /**
+     * Constructs a lexer positioned at the start of the given expression, which
+     * doesn't allow identifiers.
+     *
+     * @param expressionVal the arithmetic expression to scan
+     */
+    public ExpressionLexer(final CharSequence expressionVal) {
+        this(expressionVal, false);
+    }
+
+    /**
+     * Constructs a lexer positioned at the start of the given expression.
+     *
+     * @param expressionVal         the arithmetic expression to scan
+     * @param identifiersAllowedVal true if variable names should be scanned
+     *                              as IDENTIFIER tokens
+     */
+    public ExpressionLexer(final CharSequence expressionVal, final boolean identifiersAllowedVal) {
+        this(expressionVal, identifiersAllowedVal, OperatorRegistry.STANDARD);
+    }
+
+    /**
+     * Constructs a lexer positioned at the start of the given expression,
+     * which recognizes the operators defined in the given registry.
+     *
+     * @param expressionVal         the arithmetic expression to scan
+     * @param identifiersAllowedVal true if variable names should be scanned
+     *                              as IDENTIFIER tokens
+     * @param registryVal           the operators to recognize
+     */
+    public ExpressionLexer(final CharSequence expressionVal, final boolean identifiersAllowedVal,
+                           final OperatorRegistry registryVal) {
+        if (expressionVal == null) { throw new IllegalArgumentException("argument 'expressionVal' was null"); }
+        if (registryVal == null) { throw new IllegalArgumentException("argument 'registryVal' was null"); }
+        expression = expressionVal;
+        bytes = null;
+        expressionLength = expressionVal.length();
+        identifiersAllowed = identifiersAllowedVal;
+        registry = registryVal;
+    }
+
+    /**
+     * Constructs a lexer positioned at the start of a range of UTF-8 bytes,
+     * from bytesStartVal up to but not including bytesEndVal. The buffer's
+     * position and limit are ignored and left unchanged.
+     *
+     * @param bytesVal              the buffer holding the expression
+     * @param bytesStartVal         the offset of the expression's first byte
+     * @param bytesEndVal           the offset one past its last byte
+     * @param identifiersAllowedVal true if variable names should be scanned
+     *                              as IDENTIFIER tokens
+     */
+    public ExpressionLexer(final ByteBuffer bytesVal, final int bytesStartVal, final int bytesEndVal,
+                           final boolean identifiersAllowedVal) {
+        this(bytesVal, bytesStartVal, bytesEndVal, identifiersAllowedVal, OperatorRegistry.STANDARD);
+    }
+
+    /**
+     * Constructs a lexer positioned at the start of a range of UTF-8 bytes, as
+     * the constructor above does, which recognizes the operators defined in
+     * the given registry.
+     *
+     * @param bytesVal              the buffer holding the expression
+     * @param bytesStartVal         the offset of the expression's first byte
+     * @param bytesEndVal           the offset one past its last byte
+     * @param identifiersAllowedVal true if variable names should be scanned
+     *                              as IDENTIFIER tokens
+     * @param registryVal           the operators to recognize
+     */
+    public ExpressionLexer(final ByteBuffer bytesVal, final int bytesStartVal, final int bytesEndVal,
+                           final boolean identifiersAllowedVal, final OperatorRegistry registryVal) {
+        if (bytesVal == null) { throw new IllegalArgumentException("argument 'bytesVal' was null"); }
+        if (bytesStartVal < 0 || bytesStartVal > bytesEndVal || bytesEndVal > bytesVal.capacity()) {
+            throw new IllegalArgumentException("byte range " + bytesStartVal + " to " + bytesEndVal
+                                               + " is out of bounds");
+        }
+        if (registryVal == null) { throw new IllegalArgumentException("argument 'registryVal' was null"); }
+        expression = null;
+        bytes = bytesVal;
+        position = bytesStartVal;
+        expressionLength = bytesEndVal;
+        identifiersAllowed = identifiersAllowedVal;
+        registry = registryVal;
+    }
+
+    /**
+     * Scans the next token from the expression and returns its token code.
+     * Once the expression is exhausted END_OF_INPUT is returned, and is
+     * returned again on every subsequent call.
+     *
+     * A minus sign is reported as UNARY_MINUS if it begins the expression or
+     * follows a left paren or another operator, and as BINARY_MINUS otherwise.
+     * An operator defined in the registry is reported as OPERATOR.
+     *
+     * Throws a ParseException if the token can't follow the previous one, or
+     * can't occur at the beginning or end of the expression.
+     *
+     * @return the token code of the token just scanned
+     */
+    public int nextToken() throws ParseException {
+        if (position >= expressionLength) {
+            tokenStart = tokenEnd = position;
+            tokenCode = END_OF_INPUT;
+            return tokenCode;
+        }
+        int previousCode = tokenCode;
+        tokenStart = position;
+        charsBeforeToken = charsScanned;
+        errorOffset = charsBeforeToken + numbersScanned;
+        char thisChar = readChar();
+        firstCharEnd = position;
+
+        /* An operator defined in the registry is resolved first, since a word
+         * operator is made of letters an identifier could begin with; the
+         * cursor is advanced past a word operator before the syntax check,
+         * so that the check sees where it ends. */
+        Operator userOperator = resolveUserOperator(thisChar);
+        int thisClass = (userOperator == null) ? classify(thisChar, identifiersAllowed)
+                        : userOperator.isUnary() ? CLASS_PREFIX_OP : CLASS_BINARY_OP;
+
+        /* Checking for syntax errors in the expression being scanned, based
+         * on the class of the previous token, the class of the current token,
+         * and whether there are characters remaining to scan. */
+        checkForSyntaxError(thisChar, thisClass, userOperator);
+        previousClass = thisClass;
+        previousChar = thisChar;
+        previousUserOperator = userOperator;
+        tokenOperator = userOperator;
+
+        /* Found a numeric character, so keep advancing the cursor until a
+         * non-numeric character is encountered; the token is the span of
+         * characters passed over. */
+        if (userOperator != null) {
+            tokenCode = OPERATOR;
+        } else if (thisClass == CLASS_OPERAND) {
+            while (position < expressionLength && isNumeric(peekAscii())) {
+                position++;
+                charsScanned++;
+            }
+            numbersScanned++;
+            tokenCode = NUMBER;
+        /* Likewise, found the start of an identifier, so advance the cursor
+         * past the rest of it. */
+        } else if (thisClass == CLASS_IDENTIFIER) {
+            while (position < expressionLength && isIdentifierPart(peekAscii())) {
+                position++;
+                charsScanned++;
+            }
+            tokenCode = IDENTIFIER;
+        } else {
+            switch (thisChar) {
+                case '(': tokenCode = LEFT_PAREN; break;
+                case ')': tokenCode = RIGHT_PAREN; break;
+                case '+': tokenCode = PLUS; tokenOperator = Operator.ADD; break;
+                case '×': tokenCode = TIMES; tokenOperator = Operator.MULTIPLY; break;
+                case '÷': tokenCode = DIVIDE; tokenOperator = Operator.DIVIDE; break;
+                case '^': tokenCode = CARET; tokenOperator = Operator.POWER; break;
+                case '√': tokenCode = SQUARE_ROOT; tokenOperator = Operator.SQUARE_ROOT; break;
+                case '-':
+                    if (followsOperand(previousCode)) {
+                        tokenCode = BINARY_MINUS;
+                        tokenOperator = Operator.SUBTRACT;
+                    } else {
+                        tokenCode = UNARY_MINUS;
+                        tokenOperator = Operator.NEGATE;
+                    }
+                    break;
+                default: tokenCode = UNRECOGNIZED; break;
+            }
+        }
+        tokenEnd = position;
+        return tokenCode;
+    }
+
+    /**
+     * Returns the code of the most recently scanned token.
+     *
+     * @return the current token code
+     */
+    public int tokenCode() {
+        return tokenCode;
+    }
+
+    /**
+     * Returns the operator the most recently scanned token stands for: a
+     * built-in operator for one of the built-in operator tokens, with a minus
+     * sign resolved to NEGATE or SUBTRACT, or the registry's operator for an
+     * OPERATOR token.
+     *
+     * @return the current token's operator, or null if it isn't an operator
+     */
+    public Operator tokenOperator() {
+        return tokenOperator;
+    }
+
+    /**
+     * Returns the text of the most recently scanned token, decoded from bytes
+     * if bytes are being scanned.
+     *
+     * @return the current token's text
+     */
+    public String tokenText() {
+        if (tokenCode == OPERATOR) {
+            return tokenOperator.symbol();
+        } else if (bytes == null) {
+            return expression.subSequence(tokenStart, tokenEnd).toString();
+        } else if (tokenCode == NUMBER || tokenCode == IDENTIFIER) {
+            /* Numbers and identifiers are ASCII, so each byte is a char. */
+            byte[] tokenBytes = new byte[tokenEnd - tokenStart];
+            for (int index = 0; index < tokenBytes.length; index++) {
+                tokenBytes[index] = bytes.get(tokenStart + index);
+            }
+            return new String(tokenBytes, StandardCharsets.ISO_8859_1);
+        } else {
+            return String.valueOf(previousChar);
+        }
+    }
+
+    /**
+     * Returns the offset of the first character of the most recently scanned
+     * token.
+     *
+     * @return the current token's start offset
+     */
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns the offset one past the last character of the most recently
+     * scanned token.
+     *
+     * @return the current token's end offset
+     */
+    public int tokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Returns the offset to report in a ParseException raised at the current
+     * token. ArithmeticParser has always counted one extra character after
+     * every numeric token, so this is the token's start offset plus the number
+     * of numeric tokens that precede it.
+     *
+     * @return the error offset of the current token
+     */
+    public int errorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * Returns true if characters remain in the expression after the first
+     * character of the current token.
+     *
+     * @return whether the current token's first character is not the last
+     *         character of the expression
+     */
+    public boolean charactersRemain() {
+        return firstCharEnd < expressionLength;
+    }
+
+    /**
+     * Returns the expression this lexer was instanced around.
+     *
+     * @return the expression being scanned, or null if bytes are being
+     *         scanned
+     */
+    public CharSequence expression() {
+        return expression;
+    }
+
+    /* Checks the token whose first character is thisChar against the state
+     * machine, throwing a ParseException if it can't follow the previous token
+     * or can't occur at the beginning or end of the expression.
+     *
+     * @param thisChar     the first character of the token just scanned
+     * @param thisClass    the token class of the token just scanned
+     * @param userOperator the registry's operator the token resolved to, or
+     *                     null if it isn't one
+     */
+    private void checkForSyntaxError(final char thisChar, final int thisClass, final Operator userOperator)
+            throws ParseException {
+        if (previousClass == CLASS_START) {
+            if ((OPENING_CLASSES & 1 << thisClass) == 0) {
+                throw new ParseException("math expression cannot begin with token '"
+                                         + describeToken(thisChar, userOperator) + "'", errorOffset);
+            }
+        } else if (position >= expressionLength && (ALLOWED_AT_END & 1 << thisClass) == 0) {
+            throw new ParseException("math expression cannot end with token '"
+                                     + describeToken(thisChar, userOperator) + "'", errorOffset);
+        } else if ((ALLOWED_FOLLOWERS[previousClass] & 1 << thisClass) == 0) {
+            throw new ParseException("in math expression, token '" + describeToken(thisChar, userOperator)
+                                     + "' cannot follow token '" + describeToken(previousChar, previousUserOperator)
+                                     + "'", errorOffset);
+        }
+    }
+
+    /* Returns the text an error message shows for a token: the symbol of the
+     * registry's operator it resolved to, or else its first character. */
+    private static String describeToken(final char firstChar, final Operator userOperator) {
+        return (userOperator != null) ? userOperator.symbol() : String.valueOf(firstChar);
+    }
+
+    /* Returns the operator defined in the registry that the token beginning
+     * with the given character stands for, or null if there's none. For a
+     * letter, the run of letters it begins is compared with each word
+     * operator a char at a time, without building a String; on a match the
+     * cursor is advanced to the end of the run. */
+    private Operator resolveUserOperator(final char thisChar) {
+        if (!OperatorRegistry.isLetter(thisChar)) {
+            return registry.charOperator(thisChar);
+        }
+        Operator[] wordOperators = registry.wordOperators();
+        if (wordOperators.length == 0) {
+            return null;
+        }
+        int runEnd = position;
+        while (runEnd < expressionLength && OperatorRegistry.isLetter(asciiAt(runEnd))) {
+            runEnd++;
+        }
+        int runLength = runEnd - tokenStart;
+        for (Operator operator : wordOperators) {
+            String symbol = operator.symbol();
+            if (symbol.length() != runLength) {
+                continue;
+            }
+            int index = 1;
+            while (index < runLength && symbol.charAt(index) == asciiAt(tokenStart + index)) {
+                index++;
+            }
+            if (index == runLength && symbol.charAt(0) == thisChar) {
+                charsScanned += runEnd - position;
+                position = runEnd;
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /* Returns the next char of the expression and advances past it, decoding
+     * it from UTF-8 if bytes are being scanned. A malformed byte sequence is
+     * decoded as U+FFFD one byte at a time. */
+    private char readChar() {
+        charsScanned++;
+        if (bytes == null) {
+            return expression.charAt(position++);
+        } else if (pendingLowSurrogate != 0) {
+            char lowSurrogate = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            position++;
+            return lowSurrogate;
+        }
+        int firstByte = bytes.get(position++);
+        if (firstByte >= 0) {
+            return (char) firstByte;
+        }
+        int sequenceLength = ((firstByte & 0xe0) == 0xc0) ? 2 : ((firstByte & 0xf0) == 0xe0) ? 3
+                             : ((firstByte & 0xf8) == 0xf0) ? 4 : 0;
+        if (sequenceLength == 0 || position + sequenceLength - 1 > expressionLength) {
+            return '\ufffd';
+        }
+        int codePoint = firstByte & (0x7f >> sequenceLength);
+        for (int index = 0; index < sequenceLength - 1; index++) {
+            int continuationByte = bytes.get(position + index);
+            if ((continuationByte & 0xc0) != 0x80) {
+                return '\ufffd';
+            }
+            codePoint = (codePoint << 6) | (continuationByte & 0x3f);
+        }
+        position += sequenceLength - 1;
+        if (Character.isBmpCodePoint(codePoint)) {
+            return (char) codePoint;
+        }
+        /* The low surrogate is scanned as a token of its own, as it would be
+         * in a String; the last byte of the sequence is left unscanned until
+         * then, so the expression doesn't end before it. */
+        pendingLowSurrogate = Character.lowSurrogate(codePoint);
+        position--;
+        return Character.highSurrogate(codePoint);
+    }
+
+    /* Returns the char at the current position without advancing past it, if
+     * it's ASCII, or zero otherwise. Only used to extend numbers and
+     * identifiers, which are ASCII. */
+    private char peekAscii() {
+        return asciiAt(position);
+    }
+
+    /* Returns the char at the given offset if it's ASCII, or zero otherwise.
+     * An ASCII char is one byte, so the offset is the same in either mode. */
+    private char asciiAt(final int offset) {
+        if (bytes == null) {
+            return expression.charAt(offset);
+        }
+        int thisByte = bytes.get(offset);
+        return (thisByte >= 0) ? (char) thisByte : 0;
+    }
+
+    /* Returns the token class of a token beginning with the given character. */
+    static int classify(final char thisChar, final boolean identifiersAllowed) {
+        if (isNumeric(thisChar)) {
+            return CLASS_OPERAND;
+        } else if (identifiersAllowed && isIdentifierStart(thisChar)) {
+            return CLASS_IDENTIFIER;
+        }
+        switch (thisChar) {
+            case '(': return CLASS_LEFT_PAREN;
+            case ')': return CLASS_RIGHT_PAREN;
+            case '+': case '×': case '÷': return CLASS_BINARY_OP;
+            case '√': return CLASS_SQUARE_ROOT;
+            case '^': return CLASS_CARET;
+            case '-': return CLASS_MINUS;
+            default: return (thisChar >= '+' && thisChar <= '×') ? CLASS_OTHER : CLASS_FOREIGN;
+        }
+    }
+
+    /* Returns true if the character can be part of a numeric token. */
+    static boolean isNumeric(final char thisChar) {
+        return (thisChar >= '0' && thisChar <= '9') || thisChar == '.';
+    }
+
+    /* Returns true if the character can begin an identifier. */
+    private static boolean isIdentifierStart(final char thisChar) {
+        return (thisChar >= 'a' && thisChar <= 'z') || (thisChar >= 'A' && thisChar <= 'Z') || thisChar == '_';
+    }
+
+    /* Returns true if the character can continue an identifier. */
+    private static boolean isIdentifierPart(final char thisChar) {
+        return isIdentifierStart(thisChar) || (thisChar >= '0' && thisChar <= '9');
+    }
+
+    /* Returns true if a minus sign after a token with the given code is a
+     * binary minus: that is, if the previous token was an operand, a right
+     * paren, an unrecognized character or an identifier. At the start of the
+     * expression, or after a left paren or any operator, including one
+     * defined in the registry, a minus sign is unary. */
+    private static boolean followsOperand(final int previousCode) {
+        return previousCode == NUMBER || previousCode == RIGHT_PAREN || previousCode == UNRECOGNIZED
+               || previousCode == IDENTIFIER;
+    }
+}
@@ -0,0 +1,244 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Arrays;
+
+/**
+ * Implements an optimizing pass over parse trees, meant to run once between
+ * parsing an expression and evaluating it many times. The pass folds every
+ * constant subtree into a single terminal value, and removes operations that
+ * are identities for every float operand:
+ *
+ *     x×1, 1×x, x÷1, x^1, x-0  become  x
+ *     x+(-0), (-0)+x          become  x
+ *     -(-x)                   becomes x
+ *
+ * A constant subtree is folded by evaluating it with the same float arithmetic
+ * ParseTreeNode.evaluate() uses, in the same order, so the folded value is
+ * exactly the value evaluating the subtree would produce. A subtree that
+ * divides by zero is left as it is, so that evaluating the optimized tree still
+ * throws an IllegalStateException. Rewrites that hold for real numbers but not
+ * for floats, such as x×0 becoming 0 (which is false for NaN and infinity) or
+ * x+0 becoming x (which is false for -0), aren't made; the one exception is
+ * x+0 where x is known not to be -0. An operator defined in an
+ * OperatorRegistry is folded like a built-in one, so its function is taken to
+ * return the same value every time it's given the same operands.
+ *
+ * Terminal values are compared as the floats evaluate() reads, and a folded
+ * value is a float, so an optimized tree is meant to be evaluated with
+ * evaluate() rather than evaluateDouble().
+ */
+public final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() { }
+
+    /**
+     * Returns an optimized copy of a parse tree. The original tree isn't
+     * modified, and subtrees that can't be optimized are shared between the
+     * two. The tree is walked with an explicit stack of pending nodes, so
+     * arbitrarily deep trees can be optimized.
+     *
+     * @param  root the root of the parse tree to optimize
+     * @return the root of a parse tree that evaluates to the same value for
+     *         every binding of its variables; a leaf if the whole tree is
+     *         constant
+     */
+    public static ParseTreeNode optimize(final ParseTreeNode root) {
+        if (root == null) { throw new IllegalArgumentException("argument 'root' was null"); }
+        ParseTreeNode[] pendingNodes = new ParseTreeNode[16];
+        byte[] pendingStages = new byte[16];
+        int pendingCount = 1;
+        pendingNodes[0] = root;
+        ParseTreeNode[] optimizedNodes = new ParseTreeNode[16];
+        int optimizedCount = 0;
+
+        /* Each pending node passes through three stages, as in
+         * PostfixProgram.compile(): its left child node is optimized, then its
+         * right child node, then the node itself is rebuilt from its optimized
+         * children, which are on top of optimizedNodes. */
+        while (pendingCount > 0) {
+            ParseTreeNode node = pendingNodes[pendingCount - 1];
+            ParseTreeNode childNode = null;
+            if (node.isLeaf()) {
+                pendingCount--;
+                if (optimizedCount == optimizedNodes.length) {
+                    optimizedNodes = Arrays.copyOf(optimizedNodes, optimizedCount * 2);
+                }
+                optimizedNodes[optimizedCount++] = node;
+                continue;
+            }
+            switch (pendingStages[pendingCount - 1]++) {
+                case 0:
+                    childNode = node.getLeftChildNode();
+                    break;
+                case 1:
+                    childNode = node.getRightChildNode();
+                    break;
+                default:
+                    ParseTreeNode rightOperand = (node.getRightChildNode() != null)
+                                                 ? optimizedNodes[--optimizedCount]
+                                                 : new ParseTreeNode(node.getRightChildValue(),
+                                                                     node.getRightChildFloat(),
+                                                                     node.getRightChildText());
+                    ParseTreeNode leftOperand = (node.getLeftChildNode() != null)
+                                                ? optimizedNodes[--optimizedCount]
+                                                : node.hasLeftChildValue()
+                                                  ? new ParseTreeNode(node.getLeftChildValue(),
+                                                                      node.getLeftChildFloat(),
+                                                                      node.getLeftChildText())
+                                                  : null;
+                    pendingCount--;
+                    optimizedNodes[optimizedCount++] = rebuild(node, leftOperand, rightOperand);
+                    break;
+            }
+            if (childNode != null) {
+                if (pendingCount == pendingNodes.length) {
+                    pendingNodes = Arrays.copyOf(pendingNodes, pendingCount * 2);
+                    pendingStages = Arrays.copyOf(pendingStages, pendingCount * 2);
+                }
+                pendingNodes[pendingCount] = childNode;
+                pendingStages[pendingCount] = 0;
+                pendingCount++;
+            }
+        }
+
+        return optimizedNodes[0];
+    }
+
+    /* Returns the optimized replacement for an operator node, given its
+     * already-optimized operands as nodes; leftOperand is null if the node is
+     * unary. */
+    private static ParseTreeNode rebuild(final ParseTreeNode node, final ParseTreeNode leftOperand,
+                                         final ParseTreeNode rightOperand) {
+        boolean unary = leftOperand == null;
+        Operator operator = node.getCenterOperator();
+        if (operator.isUnary() != unary) {
+            throw new IllegalArgumentException("operator '" + operator + "' given "
+                                               + (unary ? "one operand" : "two operands"));
+        }
+
+        /* Fold the node if its operands are constant, unless it divides by
+         * zero. An operator defined in an OperatorRegistry is folded as
+         * ParseTreeNode.evaluate() applies it, narrowing its result, unless
+         * its function throws. */
+        if ((unary || isConstant(leftOperand)) && isConstant(rightOperand)) {
+            try {
+                float leftValue = unary ? 0F : leftOperand.getRightChildFloat();
+                float rightValue = rightOperand.getRightChildFloat();
+                return new ParseTreeNode(operator.isBuiltIn()
+                                         ? Opcodes.apply((byte) operator.opcode(), leftValue, rightValue)
+                                         : (float) operator.apply(leftValue, rightValue));
+            } catch (RuntimeException exception) {
+                return join(node, leftOperand, rightOperand);
+            }
+        }
+
+        switch (operator.opcode()) {
+            case Opcodes.MULTIPLY:
+                if (isConstant(rightOperand, 1F)) {
+                    return leftOperand;
+                } else if (isConstant(leftOperand, 1F)) {
+                    return rightOperand;
+                }
+                break;
+            case Opcodes.DIVIDE:
+            case Opcodes.POWER:
+                if (isConstant(rightOperand, 1F)) {
+                    return leftOperand;
+                }
+                break;
+            case Opcodes.SUBTRACT:
+                if (isConstant(rightOperand, 0F)) {
+                    return leftOperand;
+                }
+                break;
+            case Opcodes.ADD:
+                /* -0 is the additive identity for floats; +0 is only an
+                 * identity for values other than -0. */
+                if (isConstant(rightOperand, -0F)
+                        || (isConstant(rightOperand, 0F) && cannotBeNegativeZero(leftOperand))) {
+                    return leftOperand;
+                } else if (isConstant(leftOperand, -0F)
+                           || (isConstant(leftOperand, 0F) && cannotBeNegativeZero(rightOperand))) {
+                    return rightOperand;
+                }
+                break;
+            case Opcodes.NEGATE:
+                if (!rightOperand.isLeaf() && rightOperand.getCenterOperator() == Operator.NEGATE) {
+                    return (rightOperand.getRightChildNode() != null) ? rightOperand.getRightChildNode()
+                                                                       : new ParseTreeNode(
+                                                                             rightOperand.getRightChildValue(),
+                                                                             rightOperand.getRightChildFloat(),
+                                                                             rightOperand.getRightChildText());
+                }
+                break;
+            default:
+                break;
+        }
+        return join(node, leftOperand, rightOperand);
+    }
+
+    /* Returns a node with the original node's operator and the given operands,
+     * storing constant operands as terminal value children; the original node
+     * is returned if its operands are unchanged. */
+    private static ParseTreeNode join(final ParseTreeNode node, final ParseTreeNode leftOperand,
+                                      final ParseTreeNode rightOperand) {
+        boolean rightConstant = isConstant(rightOperand);
+        boolean leftConstant = leftOperand != null && isConstant(leftOperand);
+        if ((rightConstant ? node.getRightChildNode() == null : node.getRightChildNode() == rightOperand)
+                && (leftOperand == null || (leftConstant ? node.getLeftChildNode() == null
+                                                         : node.getLeftChildNode() == leftOperand))) {
+            return node;
+        }
+        Operator operator = node.getCenterOperator();
+        if (leftOperand == null) {
+            return rightConstant ? new ParseTreeNode(operator, rightOperand.getRightChildValue(),
+                                                     rightOperand.getRightChildFloat(),
+                                                     rightOperand.getRightChildText())
+                                 : new ParseTreeNode(operator, rightOperand);
+        } else if (leftConstant) {
+            return rightConstant ? new ParseTreeNode(leftOperand.getRightChildValue(),
+                                                     leftOperand.getRightChildFloat(),
+                                                     leftOperand.getRightChildText(), operator,
+                                                     rightOperand.getRightChildValue(),
+                                                     rightOperand.getRightChildFloat(),
+                                                     rightOperand.getRightChildText())
+                                 : new ParseTreeNode(leftOperand.getRightChildValue(),
+                                                     leftOperand.getRightChildFloat(),
+                                                     leftOperand.getRightChildText(), operator, rightOperand);
+        } else {
+            return rightConstant ? new ParseTreeNode(leftOperand, operator, rightOperand.getRightChildValue(),
+                                                     rightOperand.getRightChildFloat(),
+                                                     rightOperand.getRightChildText())
+                                 : new ParseTreeNode(leftOperand, operator, rightOperand);
+        }
+    }
+
+    /* Returns true if the node is a leaf standing for a terminal value. */
+    private static boolean isConstant(final ParseTreeNode node) {
+        return node != null && node.isLeaf() && node.getVariableName() == null;
+    }
+
+    /* Returns true if the node is a leaf standing for a terminal value whose
+     * float is the given float; 0 and -0 are told apart. */
+    private static boolean isConstant(final ParseTreeNode node, final float value) {
+        return isConstant(node)
+               && Float.floatToRawIntBits(node.getRightChildFloat()) == Float.floatToRawIntBits(value);
+    }
+
+    /* Returns true if the node can be shown, without evaluating any variables,
+     * never to evaluate to -0: a constant other than -0, or a sum one of whose
+     * operands is such a constant, since a float sum is only -0 if both of its
+     * operands are. */
+    private static boolean cannotBeNegativeZero(final ParseTreeNode node) {
+        if (node.isLeaf()) {
+            return isConstant(node) && !isConstant(node, -0F);
+        }
+        if (node.getCenterOperator() != Operator.ADD) {
+            return false;
+        }
+        return (node.hasLeftChildValue()
+                && Float.floatToRawIntBits(node.getLeftChildFloat()) != Float.floatToRawIntBits(-0F))
+               || (node.hasRightChildValue()
+                   && Float.floatToRawIntBits(node.getRightChildFloat()) != Float.floatToRawIntBits(-0F));
+    }
+}
@@ -0,0 +1,69 @@
+package org.kmfahey.jcalculator;
+
+/**
+ * The NumberBackend that evaluates in float. Its evaluate() is
+ * ParseTreeNode.evaluate(), so a result is the same float the calculator has
+ * always shown, and only the result is boxed. Each terminal value is the
+ * float evaluate() reads, the float nearest its number. The arithmetic
+ * methods follow
+ * ParseTreeNode.evaluate() too, narrowing the result of Math.pow() and
+ * Math.sqrt() to a float.
+ */
+final class FloatBackend implements NumberBackend<Float> {
+
+    /* Constructed once, as NumberBackend.FLOAT. */
+    FloatBackend() { }
+
+    public Float valueOf(final double terminal) {
+        return (float) terminal;
+    }
+
+    public Float parse(final String numberText) throws NumberFormatException {
+        return Float.parseFloat(numberText);
+    }
+
+    public Float negate(final Float operand) {
+        return -operand;
+    }
+
+    public Float add(final Float left, final Float right) {
+        return left + right;
+    }
+
+    public Float subtract(final Float left, final Float right) {
+        return left - right;
+    }
+
+    public Float multiply(final Float left, final Float right) {
+        return left * right;
+    }
+
+    public Float divide(final Float left, final Float right) throws IllegalStateException {
+        if (right == 0) {
+            throw new IllegalStateException("divide by zero");
+        }
+        return left / right;
+    }
+
+    public Float power(final Float base, final Float exponent) {
+        return (float) Math.pow(base, exponent);
+    }
+
+    public Float squareRoot(final Float operand) {
+        return (float) Math.sqrt(operand);
+    }
+
+    public String format(final Float value) {
+        return ResultFormatter.format(value);
+    }
+
+    public Float evaluate(final ParseTreeNode parseTree) throws IllegalStateException {
+        if (parseTree == null) { throw new IllegalArgumentException("argument 'parseTree' was null"); }
+        return parseTree.evaluate();
+    }
+
+    public String evaluateAndFormat(final ParseTreeNode parseTree) throws IllegalStateException {
+        if (parseTree == null) { throw new IllegalArgumentException("argument 'parseTree' was null"); }
+        return ResultFormatter.format(parseTree.evaluate());
+    }
+}
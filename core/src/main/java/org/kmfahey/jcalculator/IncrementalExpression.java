@@ -0,0 +1,424 @@
+package org.kmfahey.jcalculator;
+
+import java.text.ParseException;
+
+/**
+ * Implements an arithmetic expression that's built up a character at a time,
+ * as it's typed, and keeps the state of parsing it up to date as it grows, so
+ * that parsing the finished expression only has to finish off the reduction.
+ *
+ * An IncrementalExpression is immutable: appending a character returns a new
+ * expression one character longer, which links back to the expression it was
+ * appended to and shares everything with it. Removing the last character just
+ * returns that expression again. Both cost the same however long the
+ * expression is, as do the queries about its end: its last character, its
+ * paren depth and the number it ends with.
+ *
+ * Each expression carries the lexer's syntax-checking state and the operator
+ * and operand stacks of ArithmeticParser's shunting-yard algorithm, as they
+ * stand after its last complete token, with every reduction possible so far
+ * already made. parse() returns the same tree ArithmeticParser does, or
+ * throws the same exception; where the expression isn't a valid one the
+ * stacks are dropped, and parse() hands its text to ArithmeticParser to
+ * report the error as it always has.
+ */
+public final class IncrementalExpression {
+
+    /** The expression with no characters. */
+    public static final IncrementalExpression EMPTY = new IncrementalExpression();
+
+    /** The number of characters from the start of the expression kept for
+     *  startsWith(). */
+    private static final int HEAD_LENGTH = 4;
+
+    /** The expression this one is one character longer than, or null for
+     *  the empty expression. */
+    private final IncrementalExpression previous;
+
+    /** The expression's last character, or zero if it's empty. */
+    private final char lastChar;
+
+    private final int length;
+
+    /** The first HEAD_LENGTH characters of the expression, or all of them if
+     *  there are fewer. */
+    private final String head;
+
+    /** The number of left parens in the expression less the number of right
+     *  parens. */
+    private final int parenDepth;
+
+    /** The length of the run of [0-9.] characters the expression ends with,
+     *  and whether it includes a "."; the run is the text of the number being
+     *  typed, if there is one. */
+    private final int numberLength;
+    private final boolean numberHasPoint;
+
+    /** The class of the expression's last token, as ExpressionLexer classes
+     *  them, or CLASS_START if it's empty. */
+    private final int lastTokenClass;
+
+    /** Whether every token so far may follow the one before it, and the
+     *  parser's stacks are being kept. Once false it stays false. */
+    private final boolean wellFormed;
+
+    /** The operator stack and operand stack, with the tokens before the
+     *  number the expression ends with, if it ends with one, applied to them;
+     *  null if the expression isn't well-formed. A left paren is a null on
+     *  the operator stack, as it is in ArithmeticParser. */
+    private final Link<Operator> operators;
+    private final Link<ArithmeticParser.StackElement> operands;
+
+    /* A node of an immutable stack; a stack is its top node, or null if
+     * it's empty. */
+    private static record Link<T>(T top, Link<T> rest) { }
+
+    /* Constructs the empty expression. */
+    private IncrementalExpression() {
+        previous = null;
+        lastChar = 0;
+        length = 0;
+        head = "";
+        parenDepth = 0;
+        numberLength = 0;
+        numberHasPoint = false;
+        lastTokenClass = ExpressionLexer.CLASS_START;
+        wellFormed = true;
+        operators = null;
+        operands = null;
+    }
+
+    /* Constructs the expression made of the given expression followed by the
+     * given character, with the given parser state. */
+    private IncrementalExpression(final IncrementalExpression previousVal, final char lastCharVal,
+                                  final int lastTokenClassVal, final boolean wellFormedVal,
+                                  final Link<Operator> operatorsVal,
+                                  final Link<ArithmeticParser.StackElement> operandsVal) {
+        previous = previousVal;
+        lastChar = lastCharVal;
+        length = previousVal.length + 1;
+        head = (previousVal.length < HEAD_LENGTH) ? previousVal.head + lastCharVal : previousVal.head;
+        parenDepth = previousVal.parenDepth + ((lastCharVal == '(') ? 1 : (lastCharVal == ')') ? -1 : 0);
+        if (ExpressionLexer.isNumeric(lastCharVal)) {
+            numberLength = previousVal.numberLength + 1;
+            numberHasPoint = previousVal.numberHasPoint || lastCharVal == '.';
+        } else {
+            numberLength = 0;
+            numberHasPoint = false;
+        }
+        lastTokenClass = lastTokenClassVal;
+        wellFormed = wellFormedVal;
+        operators = operatorsVal;
+        operands = operandsVal;
+    }
+
+    /**
+     * Returns the expression with the given text, built up a character at a
+     * time from the empty expression.
+     *
+     * @param  text the text of the expression
+     * @return the expression
+     */
+    public static IncrementalExpression of(final CharSequence text) {
+        if (text == null) { throw new IllegalArgumentException("argument 'text' was null"); }
+        IncrementalExpression expression = EMPTY;
+        for (int index = 0; index < text.length(); index++) {
+            expression = expression.append(text.charAt(index));
+        }
+        return expression;
+    }
+
+    /**
+     * Returns this expression with a character appended to it. If the
+     * character ends an operator or paren token, the token is applied to the
+     * parser's stacks, reducing what it allows to be reduced.
+     *
+     * @param  nextChar the character to append
+     * @return the longer expression
+     */
+    public IncrementalExpression append(final char nextChar) {
+        int nextClass = ExpressionLexer.classify(nextChar, false);
+        if (nextClass == ExpressionLexer.CLASS_OPERAND && lastTokenClass == ExpressionLexer.CLASS_OPERAND) {
+            /* The character continues the number the expression ends with;
+             * the number isn't a token until it's ended. */
+            return new IncrementalExpression(this, nextChar, nextClass, wellFormed, operators, operands);
+        }
+
+        int allowedClasses = (lastTokenClass == ExpressionLexer.CLASS_START) ? ExpressionLexer.OPENING_CLASSES
+                             : ExpressionLexer.ALLOWED_FOLLOWERS[lastTokenClass];
+        if (!wellFormed || (allowedClasses & 1 << nextClass) == 0 || nextClass == ExpressionLexer.CLASS_OTHER
+                || nextClass == ExpressionLexer.CLASS_FOREIGN) {
+            return new IncrementalExpression(this, nextChar, nextClass, false, null, null);
+        }
+
+        ParserState state = new ParserState(operators, operands);
+        if (lastTokenClass == ExpressionLexer.CLASS_OPERAND) {
+            state.operands = new Link<>(new ArithmeticParser.StackElement(numberText(), null), state.operands);
+        }
+        boolean applied;
+        switch (nextClass) {
+            case ExpressionLexer.CLASS_OPERAND:
+                applied = true;
+                break;
+            case ExpressionLexer.CLASS_LEFT_PAREN:
+                applied = state.pushOperator(null);
+                break;
+            case ExpressionLexer.CLASS_SQUARE_ROOT:
+                applied = state.pushOperator(Operator.SQUARE_ROOT);
+                break;
+            case ExpressionLexer.CLASS_MINUS:
+                /* As in ExpressionLexer, a minus sign after an operand or a
+                 * right paren is binary, and otherwise unary. */
+                applied = (lastTokenClass == ExpressionLexer.CLASS_OPERAND
+                           || lastTokenClass == ExpressionLexer.CLASS_RIGHT_PAREN)
+                          ? state.applyBinaryOperator(Operator.SUBTRACT) : state.pushOperator(Operator.NEGATE);
+                break;
+            case ExpressionLexer.CLASS_RIGHT_PAREN:
+                applied = state.applyRightParen();
+                break;
+            default:
+                applied = state.applyBinaryOperator(Operator.builtIn(nextChar, false));
+                break;
+        }
+        return applied ? new IncrementalExpression(this, nextChar, nextClass, true, state.operators, state.operands)
+                       : new IncrementalExpression(this, nextChar, nextClass, false, null, null);
+    }
+
+    /**
+     * Returns this expression without its last character: the expression it
+     * was appended to.
+     *
+     * @return the shorter expression
+     */
+    public IncrementalExpression removeLast() {
+        if (previous == null) {
+            throw new IllegalStateException("expression is empty");
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the number of characters in the expression.
+     *
+     * @return the expression's length
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the expression's last character.
+     *
+     * @return the last character, or zero if the expression is empty
+     */
+    public char lastChar() {
+        return lastChar;
+    }
+
+    /**
+     * Returns the number of left parens in the expression less the number of
+     * right parens.
+     *
+     * @return the paren depth at the end of the expression
+     */
+    public int parenDepth() {
+        return parenDepth;
+    }
+
+    /**
+     * Returns the length of the run of digits and decimal points the
+     * expression ends with.
+     *
+     * @return the length of the number being typed, or 0 if there isn't one
+     */
+    public int numberLength() {
+        return numberLength;
+    }
+
+    /**
+     * Returns true if the run of digits and decimal points the expression ends
+     * with includes a decimal point.
+     *
+     * @return whether the number being typed has a decimal point
+     */
+    public boolean numberHasPoint() {
+        return numberHasPoint;
+    }
+
+    /**
+     * Returns true if the expression begins with the given prefix, which may
+     * be at most four characters long.
+     *
+     * @param  prefix the characters to look for
+     * @return whether the expression begins with them
+     */
+    public boolean startsWith(final String prefix) {
+        if (prefix.length() > HEAD_LENGTH) {
+            throw new IllegalArgumentException("argument 'prefix' was longer than " + HEAD_LENGTH + " characters");
+        }
+        return head.startsWith(prefix);
+    }
+
+    /**
+     * Returns true if the expression's text is the given text. Takes time
+     * proportional to the length of the text, not of the expression.
+     *
+     * @param  text the text to compare with
+     * @return whether the expression's text equals it
+     */
+    public boolean contentEquals(final CharSequence text) {
+        if (text.length() != length) {
+            return false;
+        }
+        IncrementalExpression expression = this;
+        for (int index = length - 1; index >= 0; index--) {
+            if (expression.lastChar != text.charAt(index)) {
+                return false;
+            }
+            expression = expression.previous;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the expression, returning the same parse tree as
+     * ArithmeticParser.parseExpression() would, or throwing the same
+     * exception. Where the expression is well-formed, that's done by pushing
+     * the number it ends with and reducing what's left on the stacks.
+     *
+     * @return the root of the parse tree, or null if the expression is a lone
+     *         number
+     */
+    public ParseTreeNode parse() throws ParseException {
+        if (wellFormed && (ExpressionLexer.ALLOWED_AT_END & 1 << lastTokenClass) != 0) {
+            ParserState state = new ParserState(operators, operands);
+            if (lastTokenClass == ExpressionLexer.CLASS_OPERAND) {
+                state.operands = new Link<>(new ArithmeticParser.StackElement(numberText(), null), state.operands);
+            }
+            if (state.reduceAll()) {
+                return state.operands.top().node();
+            }
+        }
+        return ArithmeticParser.parseExpression(toString());
+    }
+
+    /**
+     * Returns the expression's text.
+     *
+     * @return the text
+     */
+    public String toString() {
+        char[] text = new char[length];
+        IncrementalExpression expression = this;
+        for (int index = length - 1; index >= 0; index--) {
+            text[index] = expression.lastChar;
+            expression = expression.previous;
+        }
+        return new String(text);
+    }
+
+    /* Returns the text of the number the expression ends with. */
+    private String numberText() {
+        char[] text = new char[numberLength];
+        IncrementalExpression expression = this;
+        for (int index = numberLength - 1; index >= 0; index--) {
+            text[index] = expression.lastChar;
+            expression = expression.previous;
+        }
+        return new String(text);
+    }
+
+    /* The operator and operand stacks while a token is applied to them; the
+     * shunting-yard steps are those of ArithmeticParser.parseTokens(). Each
+     * step returns false, leaving the stacks in an undefined state, where
+     * ArithmeticParser would throw an exception, so that parse() can leave
+     * reporting it to ArithmeticParser. */
+    private static final class ParserState {
+
+        Link<Operator> operators;
+        Link<ArithmeticParser.StackElement> operands;
+
+        ParserState(final Link<Operator> operatorsVal, final Link<ArithmeticParser.StackElement> operandsVal) {
+            operators = operatorsVal;
+            operands = operandsVal;
+        }
+
+        /* Pushes a left paren, as a null, or a unary operator. */
+        boolean pushOperator(final Operator operator) {
+            operators = new Link<>(operator, operators);
+            return true;
+        }
+
+        /* Reduces every operator on the stack that binds more tightly than a
+         * binary operator, then pushes it. */
+        boolean applyBinaryOperator(final Operator operator) {
+            boolean leftAssoc = operator.isLeftAssociative();
+            int precedence = operator.precedence();
+            while (operators != null && operators.top() != null) {
+                int stackedPrecedence = operators.top().precedence();
+                if (leftAssoc ? !(precedence <= stackedPrecedence) : !(precedence < stackedPrecedence)) {
+                    break;
+                }
+                if (!reduce()) {
+                    return false;
+                }
+            }
+            return pushOperator(operator);
+        }
+
+        /* Reduces every operator back to the matching left paren, then
+         * discards the paren. */
+        boolean applyRightParen() {
+            while (operators != null && operators.top() != null) {
+                if (!reduce()) {
+                    return false;
+                }
+            }
+            if (operators == null) {
+                return false;
+            }
+            operators = operators.rest();
+            return true;
+        }
+
+        /* Reduces every operator left on the stack, leaving the root of the
+         * parse tree on top of the operand stack; and alone on it, since an
+         * operand under it had no operator to join it to the rest. */
+        boolean reduceAll() {
+            while (operators != null) {
+                if (operators.top() == null || !reduce()) {
+                    return false;
+                }
+            }
+            return operands != null && operands.rest() == null;
+        }
+
+        /* Pops an operator and its operands, and pushes the node built from
+         * them, as ArithmeticParser.TreeBuilder.applyOperator() does. */
+        private boolean reduce() {
+            Operator operator = operators.top();
+            operators = operators.rest();
+            try {
+                if (!operator.isUnary()) {
+                    if (operands == null || operands.rest() == null) {
+                        return false;
+                    }
+                    ArithmeticParser.StackElement rightOperand = operands.top();
+                    ArithmeticParser.StackElement leftOperand = operands.rest().top();
+                    operands = new Link<>(ArithmeticParser.instanceNodeInStackElem(leftOperand, operator,
+                                                                                   rightOperand),
+                                          operands.rest().rest());
+                } else {
+                    if (operands == null) {
+                        return false;
+                    }
+                    operands = new Link<>(ArithmeticParser.instanceNodeInStackElem(operator, operands.top()),
+                                          operands.rest());
+                }
+            } catch (NumberFormatException exception) {
+                return false;
+            }
+            return true;
+        }
+    }
+}
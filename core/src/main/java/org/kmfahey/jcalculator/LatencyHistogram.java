@@ -0,0 +1,145 @@
+package org.kmfahey.jcalculator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implements a concurrent histogram of latencies with a fixed memory footprint.
+ * Latencies are recorded in microseconds into log-linear buckets: each power of
+ * two is split into SUB_BUCKETS equal buckets, so a percentile read from the
+ * histogram is within 1/SUB_BUCKETS of the true value however large it is.
+ * Recording is a few atomic increments and never blocks, so any number of
+ * threads can record at once.
+ */
+public final class LatencyHistogram {
+
+    /** The number of buckets each power of two is split into, as a power of
+     *  two. */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets, enough for any non-negative long. */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /** The count of latencies recorded in each bucket. */
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() { }
+
+    /**
+     * Records a latency.
+     *
+     * @param latencyNanos the latency, in nanoseconds; a negative latency is
+     *                     recorded as zero
+     */
+    public void record(final long latencyNanos) {
+        long micros = Math.max(latencyNanos, 0) / 1000;
+        bucketCounts.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return the count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the latencies recorded, in microseconds.
+     *
+     * @return the mean latency, or 0 if none have been recorded
+     */
+    public double meanMicros() {
+        long recordedCount = count.sum();
+        return (recordedCount > 0) ? (double) totalMicros.sum() / recordedCount : 0;
+    }
+
+    /**
+     * Returns the greatest latency recorded, in microseconds.
+     *
+     * @return the maximum latency, or 0 if none have been recorded
+     */
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns an upper bound on the latency below which the given fraction of
+     * recorded latencies fall, in microseconds. The bound is the upper edge of
+     * the bucket the percentile falls in.
+     *
+     * @param  fraction the percentile, as a fraction between 0 and 1
+     * @return the latency at that percentile, or 0 if none have been recorded
+     */
+    public long percentileMicros(final double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("argument 'fraction' was not between 0 and 1");
+        }
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts[index] = bucketCounts.get(index);
+            total += counts[index];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = Math.max((long) Math.ceil(fraction * total), 1);
+        long cumulative = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            cumulative += counts[index];
+            if (cumulative >= threshold) {
+                return Math.min(bucketUpperBound(index), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    /**
+     * Renders the count, mean, median, tail percentiles and maximum in a
+     * one-line summary.
+     *
+     * @return a summary of the histogram
+     */
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus", count(),
+                             meanMicros(), percentileMicros(0.5), percentileMicros(0.9), percentileMicros(0.99),
+                             percentileMicros(0.999), maxMicros());
+    }
+
+    /* Returns the bucket a latency falls in. Latencies below SUB_BUCKETS have a
+     * bucket each; above that, the bucket is found from the latency's highest
+     * set bit and the SUB_BUCKET_BITS bits below it. */
+    private static int bucketIndex(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /* Returns the greatest latency that falls in a bucket. */
+    private static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
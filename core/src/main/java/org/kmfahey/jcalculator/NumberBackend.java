@@ -0,0 +1,226 @@
+package org.kmfahey.jcalculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * The arithmetic a parse tree is evaluated in. A parse tree is built from the
+ * expression's text alone; a NumberBackend decides what kind of number its
+ * terminals become and how each operator combines them, so the same tree can
+ * be evaluated in float, as the calculator always has, in double, or in
+ * BigDecimal to a chosen precision.
+ *
+ * The default evaluate() walks the tree with the backend's arithmetic methods.
+ * The float and double backends replace it with ParseTreeNode.evaluate() and
+ * evaluateDouble(), which walk the tree over primitive values and box only
+ * the result.
+ *
+ * Every backend reports a division by zero, and any other result it can't
+ * represent, by throwing an IllegalStateException, as ParseTreeNode.evaluate()
+ * does for a division by zero.
+ *
+ * @param <N> the type of number the backend computes with
+ */
+public interface NumberBackend<N> {
+
+    /** Evaluates in float, exactly as ParseTreeNode.evaluate() does. */
+    NumberBackend<Float> FLOAT = new FloatBackend();
+
+    /** Evaluates in double. */
+    NumberBackend<Double> DOUBLE = new DoubleBackend();
+
+    /**
+     * Returns a backend that evaluates in BigDecimal, rounding every result
+     * to the given MathContext.
+     *
+     * @param  mathContext the precision and rounding mode of every result; its
+     *                     precision must be positive
+     * @return the backend
+     */
+    static NumberBackend<BigDecimal> decimal(final MathContext mathContext) {
+        return new DecimalBackend(mathContext);
+    }
+
+    /**
+     * Returns the backend with the given name: "float", "double", "decimal",
+     * which evaluates to the 34 significant digits of MathContext.DECIMAL128,
+     * or "decimal:N", which evaluates to N significant digits.
+     *
+     * @param  name the backend's name
+     * @return the backend
+     */
+    static NumberBackend<?> forName(final String name) {
+        if (name == null) { throw new IllegalArgumentException("argument 'name' was null"); }
+        if (name.equals("float")) {
+            return FLOAT;
+        } else if (name.equals("double")) {
+            return DOUBLE;
+        } else if (name.equals("decimal")) {
+            return decimal(MathContext.DECIMAL128);
+        } else if (name.startsWith("decimal:")) {
+            try {
+                return decimal(new MathContext(Integer.parseInt(name.substring("decimal:".length()))));
+            } catch (IllegalArgumentException exception) {
+                /* NumberFormatException is an IllegalArgumentException, as is
+                 * the exception thrown for a precision less than 1. */
+                throw new IllegalArgumentException("invalid precision in number backend '" + name + "'");
+            }
+        }
+        throw new IllegalArgumentException("unknown number backend '" + name + "'");
+    }
+
+    /**
+     * Returns the backend's number for a terminal value of a parse tree that
+     * has no text, as one rebuilt from a PostfixProgram hasn't.
+     *
+     * @param  terminal a terminal value, the double nearest the number it was
+     *                  parsed from
+     * @return the terminal as the backend's number
+     */
+    N valueOf(double terminal);
+
+    /**
+     * Returns the backend's number for the text of a number, as the lexer
+     * takes it from an expression: digits with at most one decimal point.
+     * Throws a NumberFormatException if the text isn't a number.
+     *
+     * @param  numberText the number's text
+     * @return the number
+     */
+    N parse(String numberText) throws NumberFormatException;
+
+    /**
+     * Returns the negation of a number.
+     *
+     * @param  operand the number
+     * @return -operand
+     */
+    N negate(N operand);
+
+    /**
+     * Returns the sum of two numbers.
+     *
+     * @param  left  the left operand
+     * @param  right the right operand
+     * @return left + right
+     */
+    N add(N left, N right);
+
+    /**
+     * Returns the difference of two numbers.
+     *
+     * @param  left  the left operand
+     * @param  right the right operand
+     * @return left - right
+     */
+    N subtract(N left, N right);
+
+    /**
+     * Returns the product of two numbers.
+     *
+     * @param  left  the left operand
+     * @param  right the right operand
+     * @return left × right
+     */
+    N multiply(N left, N right);
+
+    /**
+     * Returns the quotient of two numbers, throwing an IllegalStateException
+     * if the divisor is zero.
+     *
+     * @param  left  the dividend
+     * @param  right the divisor
+     * @return left ÷ right
+     */
+    N divide(N left, N right) throws IllegalStateException;
+
+    /**
+     * Returns a number raised to a power.
+     *
+     * @param  base     the base
+     * @param  exponent the exponent
+     * @return base ^ exponent
+     */
+    N power(N base, N exponent) throws IllegalStateException;
+
+    /**
+     * Returns the square root of a number.
+     *
+     * @param  operand the number
+     * @return √operand
+     */
+    N squareRoot(N operand) throws IllegalStateException;
+
+    /**
+     * Formats a number for display.
+     *
+     * @param  value the number
+     * @return the number, formatted as ResultFormatter formats it
+     */
+    String format(N value);
+
+    /**
+     * Recursively evaluates a parse tree in the backend's arithmetic. Each
+     * terminal parsed from an expression is taken from its text with parse(),
+     * so it's exactly the number written, and any other terminal with
+     * valueOf(). Throws an IllegalStateException if the tree holds an unbound
+     * variable, or its result can't be represented. The backend's arithmetic
+     * only covers the built-in operators, so this also throws one if the tree
+     * uses an operator defined in an OperatorRegistry, unless the backend
+     * overrides it.
+     *
+     * @param  parseTree the root of the tree
+     * @return the tree's value
+     */
+    default N evaluate(final ParseTreeNode parseTree) throws IllegalStateException {
+        if (parseTree == null) { throw new IllegalArgumentException("argument 'parseTree' was null"); }
+        if (parseTree.isLeaf()) {
+            if (parseTree.getVariableName() != null) {
+                throw new IllegalStateException("variable '" + parseTree.getVariableName() + "' is unbound");
+            }
+            return terminalValue(parseTree.getRightChildValue(), parseTree.getRightChildText());
+        }
+        // There's no left child when the operator is unary, such as √
+        N leftValue = parseTree.hasLeftChildValue()
+                      ? terminalValue(parseTree.getLeftChildValue(), parseTree.getLeftChildText())
+                      : (parseTree.getLeftChildNode() != null) ? evaluate(parseTree.getLeftChildNode()) : null;
+        N rightValue = parseTree.hasRightChildValue()
+                       ? terminalValue(parseTree.getRightChildValue(), parseTree.getRightChildText())
+                       : evaluate(parseTree.getRightChildNode());
+        switch (parseTree.getCenterOperator().opcode()) {
+            case Opcodes.ADD:
+                return add(leftValue, rightValue);
+            case Opcodes.SUBTRACT:
+                return subtract(leftValue, rightValue);
+            case Opcodes.NEGATE:
+                return negate(rightValue);
+            case Opcodes.MULTIPLY:
+                return multiply(leftValue, rightValue);
+            case Opcodes.DIVIDE:
+                return divide(leftValue, rightValue);
+            case Opcodes.POWER:
+                return power(leftValue, rightValue);
+            case Opcodes.SQUARE_ROOT:
+                return squareRoot(rightValue);
+            default:
+                throw new IllegalStateException("unknown operator '" + parseTree.getCenterOperator() + "'");
+        }
+    }
+
+    /* Returns the backend's number for a terminal, from its text if it has
+     * any. */
+    private N terminalValue(final double terminal, final String terminalText) {
+        return (terminalText != null) ? parse(terminalText) : valueOf(terminal);
+    }
+
+    /**
+     * Evaluates a parse tree in the backend's arithmetic and formats the
+     * result for display.
+     *
+     * @param  parseTree the root of the tree
+     * @return the tree's value, formatted as format() formats it
+     */
+    default String evaluateAndFormat(final ParseTreeNode parseTree) throws IllegalStateException {
+        return format(evaluate(parseTree));
+    }
+}
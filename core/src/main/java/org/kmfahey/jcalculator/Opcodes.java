@@ -0,0 +1,149 @@
+package org.kmfahey.jcalculator;
+
+/**
+ * Defines the primitive opcodes that the compact expression representations
+ * use in place of ParseTreeNode's Operator objects, along with the float
+ * arithmetic each opcode performs. The arithmetic matches the switch in
+ * ParseTreeNode.evaluate() exactly, so any representation that evaluates
+ * through this class yields the same results as the parse tree it came from.
+ */
+public final class Opcodes {
+
+    /** A terminal numeric value. */
+    public static final byte CONSTANT = 0;
+
+    /** The binary "+" operator. */
+    public static final byte ADD = 1;
+
+    /** The binary "-" operator. */
+    public static final byte SUBTRACT = 2;
+
+    /** The "×" operator. */
+    public static final byte MULTIPLY = 3;
+
+    /** The "÷" operator. */
+    public static final byte DIVIDE = 4;
+
+    /** The "^" operator. */
+    public static final byte POWER = 5;
+
+    /** The unary "-" operator. */
+    public static final byte NEGATE = 6;
+
+    /** The "√" operator. */
+    public static final byte SQUARE_ROOT = 7;
+
+    /** A variable, read from a slot bound when the expression is evaluated. */
+    public static final byte VARIABLE = 8;
+
+    /** Copies the value on top of the operand stack into a temporary, without
+     *  popping it, so that a shared subexpression's value can be reused. */
+    public static final byte STORE = 9;
+
+    /** Pushes the value of a temporary set by an earlier STORE. */
+    public static final byte LOAD = 10;
+
+    /** The opcode of the first operator defined in an OperatorRegistry; the
+     *  ones after it are numbered upward from here. The arithmetic in this
+     *  class only covers the built-in operators. */
+    public static final byte FIRST_USER_OPERATOR = 11;
+
+    /* The operator character each opcode stands for, indexed by opcode. */
+    private static final char[] SYMBOLS = {'\0', '+', '-', '×', '÷', '^', '-', '√'};
+
+    private Opcodes() { }
+
+    /**
+     * Returns true if the opcode is an operator that takes one operand.
+     *
+     * @param  opcode an opcode
+     * @return true if the opcode is NEGATE or SQUARE_ROOT
+     */
+    public static boolean isUnary(final byte opcode) {
+        return opcode == NEGATE || opcode == SQUARE_ROOT;
+    }
+
+    /**
+     * Returns the operator character a built-in operator's opcode stands for,
+     * as it's written in an expression.
+     *
+     * @param  opcode an operator opcode
+     * @return the opcode's operator character
+     */
+    public static char symbol(final byte opcode) {
+        if (opcode <= CONSTANT || opcode >= SYMBOLS.length) {
+            throw new IllegalArgumentException("opcode " + opcode + " is not an operator");
+        }
+        return SYMBOLS[opcode];
+    }
+
+    /**
+     * Applies an operator opcode to its operands using float arithmetic. For a
+     * unary opcode the leftValue is ignored.
+     *
+     * @param  opcode     an operator opcode
+     * @param  leftValue  the left operand
+     * @param  rightValue the right operand, or the sole operand of a unary
+     *                    operator
+     * @return the result of the operation
+     */
+    public static float apply(final byte opcode, final float leftValue, final float rightValue)
+            throws IllegalStateException {
+        switch (opcode) {
+            case ADD:
+                return leftValue + rightValue;
+            case SUBTRACT:
+                return leftValue - rightValue;
+            case NEGATE:
+                return -rightValue;
+            case MULTIPLY:
+                return leftValue * rightValue;
+            case DIVIDE:
+                return divide(leftValue, rightValue);
+            case POWER:
+                return power(leftValue, rightValue);
+            case SQUARE_ROOT:
+                return squareRoot(rightValue);
+            default:
+                throw new IllegalArgumentException("opcode " + opcode + " is not an operator");
+        }
+    }
+
+    /**
+     * Divides one float by another, throwing an IllegalStateException if the
+     * divisor is zero as ParseTreeNode.evaluate() does.
+     *
+     * @param  leftValue  the dividend
+     * @param  rightValue the divisor
+     * @return the quotient
+     */
+    public static float divide(final float leftValue, final float rightValue) throws IllegalStateException {
+        if (rightValue == 0) {
+            throw new IllegalStateException("divide by zero");
+        }
+        return leftValue / rightValue;
+    }
+
+    /**
+     * Raises one float to the power of another, computing in double precision
+     * and narrowing the result to float as ParseTreeNode.evaluate() does.
+     *
+     * @param  leftValue  the base
+     * @param  rightValue the exponent
+     * @return the power
+     */
+    public static float power(final float leftValue, final float rightValue) {
+        return (float) Math.pow(leftValue, rightValue);
+    }
+
+    /**
+     * Takes the square root of a float, computing in double precision and
+     * narrowing the result to float as ParseTreeNode.evaluate() does.
+     *
+     * @param  rightValue the operand
+     * @return the square root
+     */
+    public static float squareRoot(final float rightValue) {
+        return (float) Math.sqrt(rightValue);
+    }
+}
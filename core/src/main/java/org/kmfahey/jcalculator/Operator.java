@@ -0,0 +1,206 @@
+package org.kmfahey.jcalculator;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Implements an arithmetic operator: its symbol, the opcode it resolves to,
+ * whether it's a unary prefix operator or a binary infix one, and the
+ * precedence and associativity the shunting-yard algorithm parses it with.
+ * The calculator's own operators are the constants below; others are defined
+ * in an OperatorRegistry, which gives each the next free opcode.
+ *
+ * An expression's operators are resolved to Operator objects as it's
+ * tokenized, so parsing reads precedence and associativity from fields, and
+ * evaluating a parse tree switches on the opcode, without looking anything up
+ * by its symbol. The built-in operators are evaluated by that switch;
+ * any other operator by the function it was defined with.
+ *
+ * Operators are compared by identity: the built-in ones are shared by every
+ * registry, and a user-defined one belongs to the registry that defined it.
+ */
+public final class Operator {
+
+    /** The binary "+" operator. */
+    public static final Operator ADD = new Operator("+", Opcodes.ADD, 2, 0, true, null);
+
+    /** The binary "-" operator. */
+    public static final Operator SUBTRACT = new Operator("-", Opcodes.SUBTRACT, 2, 0, true, null);
+
+    /** The "×" operator. */
+    public static final Operator MULTIPLY = new Operator("×", Opcodes.MULTIPLY, 2, 1, true, null);
+
+    /** The "÷" operator. */
+    public static final Operator DIVIDE = new Operator("÷", Opcodes.DIVIDE, 2, 1, true, null);
+
+    /** The "^" operator, which is right-associative. */
+    public static final Operator POWER = new Operator("^", Opcodes.POWER, 2, 3, false, null);
+
+    /** The unary "-" operator. */
+    public static final Operator NEGATE = new Operator("-", Opcodes.NEGATE, 1, 2, true, null);
+
+    /** The "√" operator. */
+    public static final Operator SQUARE_ROOT = new Operator("√", Opcodes.SQUARE_ROOT, 1, 3, false, null);
+
+    /** The operator's symbol, as it's written in an expression. */
+    private final String symbol;
+
+    /** The operator's opcode: one of the operator opcodes in Opcodes for a
+     *  built-in operator, or one OperatorRegistry assigned. */
+    private final int opcode;
+
+    /** The number of operands the operator takes: 1 for a prefix operator,
+     *  2 for an infix one. */
+    private final int arity;
+
+    /** The operator's precedence; the higher it is, the more tightly the
+     *  operator binds. */
+    private final int precedence;
+
+    /** True if the operator is left-associative. */
+    private final boolean leftAssociative;
+
+    /** The function a user-defined operator computes, or null for a
+     *  built-in one. */
+    private final DoubleBinaryOperator function;
+
+    /* Constructs an operator; OperatorRegistry validates the arguments of a
+     * user-defined one. */
+    Operator(final String symbolVal, final int opcodeVal, final int arityVal, final int precedenceVal,
+             final boolean leftAssociativeVal, final DoubleBinaryOperator functionVal) {
+        symbol = symbolVal;
+        opcode = opcodeVal;
+        arity = arityVal;
+        precedence = precedenceVal;
+        leftAssociative = leftAssociativeVal;
+        function = functionVal;
+    }
+
+    /**
+     * Returns the built-in operator a character stands for. A "-" is NEGATE
+     * if it's unary and SUBTRACT if it's binary.
+     *
+     * @param  symbolChar the operator's character
+     * @param  unary      true if the operator takes only a right operand
+     * @return the built-in operator
+     */
+    public static Operator builtIn(final char symbolChar, final boolean unary) {
+        switch (symbolChar) {
+            case '+': return ADD;
+            case '-': return unary ? NEGATE : SUBTRACT;
+            case '×': return MULTIPLY;
+            case '÷': return DIVIDE;
+            case '^': return POWER;
+            case '√': return SQUARE_ROOT;
+            default: throw new IllegalArgumentException("operator '" + symbolChar + "' isn't built in");
+        }
+    }
+
+    /**
+     * Returns the operator's symbol.
+     *
+     * @return the symbol, as it's written in an expression
+     */
+    public String symbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the operator's opcode.
+     *
+     * @return the opcode
+     */
+    public int opcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns true if the operator is a unary prefix operator.
+     *
+     * @return whether the operator takes only a right operand
+     */
+    public boolean isUnary() {
+        return arity == 1;
+    }
+
+    /**
+     * Returns the operator's precedence.
+     *
+     * @return the precedence; the higher it is, the more tightly the operator
+     *         binds
+     */
+    public int precedence() {
+        return precedence;
+    }
+
+    /**
+     * Returns true if the operator is left-associative.
+     *
+     * @return whether a chain of the operator groups from the left
+     */
+    public boolean isLeftAssociative() {
+        return leftAssociative;
+    }
+
+    /**
+     * Returns true if the operator is one of the calculator's own, which the
+     * evaluators implement themselves.
+     *
+     * @return whether the operator is built in
+     */
+    public boolean isBuiltIn() {
+        return function == null;
+    }
+
+    /**
+     * Applies the operator to its operands in double precision. For a unary
+     * operator the leftValue is ignored. Throws an IllegalStateException on a
+     * division by zero, as ParseTreeNode.evaluate() does.
+     *
+     * @param  leftValue  the left operand
+     * @param  rightValue the right operand, or the sole operand of a unary
+     *                    operator
+     * @return the result of the operation
+     */
+    public double apply(final double leftValue, final double rightValue) throws IllegalStateException {
+        switch (opcode) {
+            case Opcodes.ADD:
+                return leftValue + rightValue;
+            case Opcodes.SUBTRACT:
+                return leftValue - rightValue;
+            case Opcodes.NEGATE:
+                return -rightValue;
+            case Opcodes.MULTIPLY:
+                return leftValue * rightValue;
+            case Opcodes.DIVIDE:
+                if (rightValue == 0) {
+                    throw new IllegalStateException("divide by zero");
+                }
+                return leftValue / rightValue;
+            case Opcodes.POWER:
+                return Math.pow(leftValue, rightValue);
+            case Opcodes.SQUARE_ROOT:
+                return Math.sqrt(rightValue);
+            default:
+                return function.applyAsDouble(leftValue, rightValue);
+        }
+    }
+
+    /**
+     * Returns a hash code derived from the operator's symbol and opcode, so
+     * that a parse tree's hash code is the same from one run to the next.
+     *
+     * @return the operator's hash code
+     */
+    public int hashCode() {
+        return 31 * symbol.hashCode() + opcode;
+    }
+
+    /**
+     * Returns the operator's symbol.
+     *
+     * @return the symbol
+     */
+    public String toString() {
+        return symbol;
+    }
+}
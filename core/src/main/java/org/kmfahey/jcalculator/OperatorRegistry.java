@@ -0,0 +1,205 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Implements the set of operators an expression is parsed with: the
+ * calculator's own, and any defined on top of them. A user-defined operator
+ * is either a binary infix operator, such as "%" or "mod", or a unary prefix
+ * operator, such as a function "sin" or "ln", and has a precedence and
+ * associativity of its own. Its symbol is either a single character that
+ * isn't otherwise meaningful in an expression, or a word of ASCII letters.
+ *
+ * Each operator has an opcode, and the registry holds its operators in an
+ * array indexed by opcode. The built-in operators have the opcodes Opcodes
+ * gives them; user-defined ones are numbered densely from
+ * Opcodes.FIRST_USER_OPERATOR in the order they were defined, so every
+ * opcode fits in a byte.
+ *
+ * A registry is immutable: defining an operator returns a new registry with
+ * it, so one can be shared between threads and parsers freely. The built-in
+ * precedences are 0 for "+" and binary "-", 1 for "×" and "÷", 2 for unary
+ * "-" and 3 for "^" and "√"; "^" is right-associative and the others left.
+ */
+public final class OperatorRegistry {
+
+    /** The registry of the calculator's own operators. */
+    public static final OperatorRegistry STANDARD = new OperatorRegistry();
+
+    /** The precedence of a function defined with withFunction(), which binds
+     *  as tightly as "√". */
+    public static final int FUNCTION_PRECEDENCE = 3;
+
+    /** Each operator, indexed by opcode; null at the opcodes that aren't
+     *  operators. */
+    private final Operator[] operators;
+
+    /** The user-defined operators whose symbol is a single character other
+     *  than a letter, and those whose symbol is a word, in the order they
+     *  were defined. The lexer scans them linearly, since there are few. */
+    private final Operator[] charOperators;
+    private final Operator[] wordOperators;
+
+    /* Constructs the standard registry. */
+    private OperatorRegistry() {
+        operators = new Operator[Opcodes.FIRST_USER_OPERATOR];
+        for (Operator operator : new Operator[] {Operator.ADD, Operator.SUBTRACT, Operator.MULTIPLY, Operator.DIVIDE,
+                                                 Operator.POWER, Operator.NEGATE, Operator.SQUARE_ROOT}) {
+            operators[operator.opcode()] = operator;
+        }
+        charOperators = new Operator[0];
+        wordOperators = new Operator[0];
+    }
+
+    /* Constructs a registry from already-populated arrays. */
+    private OperatorRegistry(final Operator[] operatorsVal, final Operator[] charOperatorsVal,
+                             final Operator[] wordOperatorsVal) {
+        operators = operatorsVal;
+        charOperators = charOperatorsVal;
+        wordOperators = wordOperatorsVal;
+    }
+
+    /**
+     * Returns a registry with this one's operators and a new binary infix
+     * operator.
+     *
+     * @param  symbol          the operator's symbol: a character not
+     *                         otherwise used in expressions, or a word of
+     *                         ASCII letters
+     * @param  precedence      the operator's precedence, compared with the
+     *                         built-in ones above
+     * @param  leftAssociative true if a chain of the operator groups from the
+     *                         left
+     * @param  function        computes the operator's value from its left and
+     *                         right operands
+     * @return the new registry
+     */
+    public OperatorRegistry withBinaryOperator(final String symbol, final int precedence,
+                                               final boolean leftAssociative, final DoubleBinaryOperator function) {
+        if (function == null) { throw new IllegalArgumentException("argument 'function' was null"); }
+        return with(symbol, 2, precedence, leftAssociative, function);
+    }
+
+    /**
+     * Returns a registry with this one's operators and a new unary prefix
+     * operator.
+     *
+     * @param  symbol     the operator's symbol: a character not otherwise used
+     *                    in expressions, or a word of ASCII letters
+     * @param  precedence the operator's precedence, compared with the
+     *                    built-in ones above
+     * @param  function   computes the operator's value from its operand
+     * @return the new registry
+     */
+    public OperatorRegistry withPrefixOperator(final String symbol, final int precedence,
+                                               final DoubleUnaryOperator function) {
+        if (function == null) { throw new IllegalArgumentException("argument 'function' was null"); }
+        return with(symbol, 1, precedence, false, (leftValue, rightValue) -> function.applyAsDouble(rightValue));
+    }
+
+    /**
+     * Returns a registry with this one's operators and a new function: a
+     * prefix operator named by a word, at FUNCTION_PRECEDENCE, so "sin(x)" or
+     * "sinx" is the sine of x and "sin2^2" is the sine of 4.
+     *
+     * @param  name     the function's name, a word of ASCII letters
+     * @param  function computes the function's value from its argument
+     * @return the new registry
+     */
+    public OperatorRegistry withFunction(final String name, final DoubleUnaryOperator function) {
+        if (name == null) { throw new IllegalArgumentException("argument 'name' was null"); }
+        if (!isWord(name)) {
+            throw new IllegalArgumentException("function name '" + name + "' isn't a word");
+        }
+        return withPrefixOperator(name, FUNCTION_PRECEDENCE, function);
+    }
+
+    /**
+     * Returns the operator with the given opcode.
+     *
+     * @param  opcode an operator's opcode
+     * @return the operator, or null if no operator in the registry has the
+     *         opcode
+     */
+    public Operator operator(final int opcode) {
+        return (opcode >= 0 && opcode < operators.length) ? operators[opcode] : null;
+    }
+
+    /* Returns the user-defined operator whose symbol is the given character,
+     * or null if there's none. */
+    Operator charOperator(final char symbolChar) {
+        for (Operator operator : charOperators) {
+            if (operator.symbol().charAt(0) == symbolChar) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /* Returns the user-defined operators whose symbols are words. */
+    Operator[] wordOperators() {
+        return wordOperators;
+    }
+
+    /* Returns a registry with a new operator added, after checking that its
+     * symbol is valid and isn't already taken. */
+    private OperatorRegistry with(final String symbol, final int arity, final int precedence,
+                                  final boolean leftAssociative, final DoubleBinaryOperator function) {
+        if (symbol == null) { throw new IllegalArgumentException("argument 'symbol' was null"); }
+        boolean word = isWord(symbol);
+        if (!word && (symbol.length() != 1 || !isFreeChar(symbol.charAt(0)))) {
+            throw new IllegalArgumentException("operator symbol '" + symbol + "' isn't a free character or a word");
+        }
+        for (Operator operator : word ? wordOperators : charOperators) {
+            if (operator.symbol().equals(symbol)) {
+                throw new IllegalArgumentException("operator '" + symbol + "' is already defined");
+            }
+        }
+        int opcode = operators.length;
+        if (opcode > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("no opcode is left for operator '" + symbol + "'");
+        }
+        Operator operator = new Operator(symbol, opcode, arity, precedence, leftAssociative, function);
+        Operator[] newOperators = Arrays.copyOf(operators, opcode + 1);
+        newOperators[opcode] = operator;
+        return word ? new OperatorRegistry(newOperators, charOperators, append(wordOperators, operator))
+                    : new OperatorRegistry(newOperators, append(charOperators, operator), wordOperators);
+    }
+
+    /* Returns a copy of an array of operators with one more on the end. */
+    private static Operator[] append(final Operator[] operatorArray, final Operator operator) {
+        Operator[] newArray = Arrays.copyOf(operatorArray, operatorArray.length + 1);
+        newArray[operatorArray.length] = operator;
+        return newArray;
+    }
+
+    /* Returns true if the symbol is a nonempty run of ASCII letters. */
+    private static boolean isWord(final String symbol) {
+        if (symbol.isEmpty()) {
+            return false;
+        }
+        for (int index = 0; index < symbol.length(); index++) {
+            if (!isLetter(symbol.charAt(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns true if the character is an ASCII letter, as a word operator's
+     * symbol is made of. */
+    static boolean isLetter(final char thisChar) {
+        return (thisChar >= 'a' && thisChar <= 'z') || (thisChar >= 'A' && thisChar <= 'Z');
+    }
+
+    /* Returns true if the character has no meaning of its own in an
+     * expression, so it can be an operator's symbol: it isn't part of a
+     * number or identifier, a paren, a built-in operator, or whitespace. */
+    private static boolean isFreeChar(final char thisChar) {
+        return ExpressionLexer.classify(thisChar, true) >= ExpressionLexer.CLASS_OTHER
+               && ExpressionLexer.classify(thisChar, true) != ExpressionLexer.CLASS_IDENTIFIER
+               && !Character.isWhitespace(thisChar) && !Character.isSurrogate(thisChar);
+    }
+}
@@ -0,0 +1,223 @@
+package org.kmfahey.jcalculator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Implements a compact, immutable representation of a parse tree. Rather than
+ * one object per node, the nodes of the tree live in parallel primitive arrays:
+ * an opcode per node, a pair of child indexes per node, and a pool of constant
+ * values. Nodes are stored in postorder, so every node's children precede it
+ * and the root is the last node.
+ *
+ * A PackedParseTree is built from a ParseTreeNode tree, and its toString() and
+ * evaluate() methods return exactly what the ParseTreeNode tree's do.
+ */
+public final class PackedParseTree {
+
+    /** The child index used where a node has no left child. */
+    private static final int NO_CHILD = -1;
+
+    /** The opcode of each node, from the constants in Opcodes. */
+    private final byte[] opcodes;
+
+    /** The child indexes of each node: the left child of node i is at index
+     *  2i and the right child at index 2i+1. A CONSTANT node instead stores
+     *  the index of its value in the constants array at index 2i. */
+    private final int[] children;
+
+    /** The pool of constant values the CONSTANT nodes refer to, as the floats
+     *  ParseTreeNode.evaluate() reads. */
+    private final float[] constants;
+
+    /* Constructs a PackedParseTree from already-populated arrays. */
+    private PackedParseTree(final byte[] opcodesVal, final int[] childrenVal, final float[] constantsVal) {
+        opcodes = opcodesVal;
+        children = childrenVal;
+        constants = constantsVal;
+    }
+
+    /**
+     * Packs a parse tree into a PackedParseTree. The tree is walked with an
+     * explicit stack, so arbitrarily deep trees can be packed. Only the
+     * built-in operators can be packed, not ones defined in an
+     * OperatorRegistry.
+     *
+     * @param  root the root of the parse tree to pack
+     * @return a PackedParseTree equivalent to the parse tree
+     */
+    public static PackedParseTree fromParseTree(final ParseTreeNode root) {
+        if (root == null) { throw new IllegalArgumentException("argument 'root' was null"); }
+        Builder builder = new Builder();
+        ArrayDeque<ParseTreeNode> pendingNodes = new ArrayDeque<>();
+        ArrayDeque<Boolean> childrenPacked = new ArrayDeque<>();
+        int[] packedIndexes = new int[16];
+        int packedCount = 0;
+
+        pendingNodes.push(root);
+        childrenPacked.push(Boolean.FALSE);
+        while (!pendingNodes.isEmpty()) {
+            ParseTreeNode node = pendingNodes.pop();
+            /* A leaf has no children, so it's packed on first visiting it. */
+            if (node.isLeaf()) {
+                childrenPacked.pop();
+                if (node.getVariableName() != null) {
+                    throw new IllegalArgumentException("variable '" + node.getVariableName() + "' can't be packed");
+                }
+                if (packedCount == packedIndexes.length) {
+                    packedIndexes = Arrays.copyOf(packedIndexes, packedCount * 2);
+                }
+                packedIndexes[packedCount++] = builder.addConstant(node.getRightChildFloat());
+                continue;
+            }
+            /* On first visiting a node, revisit it once its child nodes have
+             * been packed; the right child is pushed first so the left child's
+             * subtree is packed before the right child's. */
+            if (!childrenPacked.pop()) {
+                pendingNodes.push(node);
+                childrenPacked.push(Boolean.TRUE);
+                if (node.getRightChildNode() != null) {
+                    pendingNodes.push(node.getRightChildNode());
+                    childrenPacked.push(Boolean.FALSE);
+                }
+                if (node.getLeftChildNode() != null) {
+                    pendingNodes.push(node.getLeftChildNode());
+                    childrenPacked.push(Boolean.FALSE);
+                }
+                continue;
+            }
+            /* The packed child nodes' indexes are on top of packedIndexes, the
+             * right child's above the left child's; terminal value children
+             * are packed as CONSTANT nodes now. */
+            int rightIndex = (node.getRightChildNode() != null) ? packedIndexes[--packedCount]
+                                                                 : builder.addConstant(node.getRightChildFloat());
+            int leftIndex = (node.getLeftChildNode() != null) ? packedIndexes[--packedCount]
+                          : node.hasLeftChildValue() ? builder.addConstant(node.getLeftChildFloat())
+                          : NO_CHILD;
+            Operator operator = node.getCenterOperator();
+            if (!operator.isBuiltIn()) {
+                throw new IllegalArgumentException("operator '" + operator + "' isn't built in");
+            } else if (operator.isUnary() != (leftIndex == NO_CHILD)) {
+                throw new IllegalArgumentException("operator '" + operator + "' given "
+                                                   + (leftIndex == NO_CHILD ? "one operand" : "two operands"));
+            }
+            byte opcode = (byte) operator.opcode();
+            if (packedCount == packedIndexes.length) {
+                packedIndexes = Arrays.copyOf(packedIndexes, packedCount * 2);
+            }
+            packedIndexes[packedCount++] = builder.addOperator(opcode, leftIndex, rightIndex);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of nodes in the tree, counting each constant as a
+     * node.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Evaluates the tree, returning a float value. Since children precede
+     * their parents, the nodes are evaluated in a single loop over the arrays
+     * without recursion.
+     *
+     * @return the arithmetic result of executing the calculation the tree
+     *         represents
+     */
+    public float evaluate() throws IllegalStateException {
+        float[] values = new float[opcodes.length];
+        for (int index = 0; index < opcodes.length; index++) {
+            byte opcode = opcodes[index];
+            if (opcode == Opcodes.CONSTANT) {
+                values[index] = constants[children[2 * index]];
+            } else {
+                int leftIndex = children[2 * index];
+                float leftValue = (leftIndex == NO_CHILD) ? 0F : values[leftIndex];
+                values[index] = Opcodes.apply(opcode, leftValue, values[children[2 * index + 1]]);
+            }
+        }
+        return values[opcodes.length - 1];
+    }
+
+    /**
+     * Renders the tree into the same one-line representation that
+     * ParseTreeNode.toString() produces.
+     *
+     * @return a representation of the parse tree in a string
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendNode(builder, opcodes.length - 1);
+        return builder.toString();
+    }
+
+    /* Recursively renders the node at the given index, and its children, onto
+     * the end of the StringBuilder. */
+    private void appendNode(final StringBuilder builder, final int index) {
+        if (opcodes[index] == Opcodes.CONSTANT) {
+            float value = constants[children[2 * index]];
+            builder.append("{ ");
+            if (Math.floor(value) == value) {
+                builder.append((int) value);
+            } else {
+                builder.append(value);
+            }
+            builder.append(" }");
+            return;
+        }
+        builder.append("{ ");
+        if (children[2 * index] != NO_CHILD) {
+            appendNode(builder, children[2 * index]);
+            builder.append(", ");
+        }
+        builder.append('\'').append(Opcodes.symbol(opcodes[index])).append("', ");
+        appendNode(builder, children[2 * index + 1]);
+        builder.append(" }");
+    }
+
+    /* Accumulates nodes into growable arrays while a tree is being packed. */
+    private static final class Builder {
+
+        private byte[] opcodes = new byte[16];
+        private int[] children = new int[32];
+        private float[] constants = new float[8];
+        private int nodeCount;
+        private int constantCount;
+
+        /* Appends a CONSTANT node and returns its index. */
+        int addConstant(final float value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            return addNode(Opcodes.CONSTANT, constantCount++, NO_CHILD);
+        }
+
+        /* Appends an operator node and returns its index. */
+        int addOperator(final byte opcode, final int leftIndex, final int rightIndex) {
+            return addNode(opcode, leftIndex, rightIndex);
+        }
+
+        private int addNode(final byte opcode, final int firstSlot, final int secondSlot) {
+            if (nodeCount == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, nodeCount * 2);
+                children = Arrays.copyOf(children, nodeCount * 4);
+            }
+            opcodes[nodeCount] = opcode;
+            children[2 * nodeCount] = firstSlot;
+            children[2 * nodeCount + 1] = secondSlot;
+            return nodeCount++;
+        }
+
+        /* Trims the arrays to size and returns the finished tree. */
+        PackedParseTree build() {
+            return new PackedParseTree(Arrays.copyOf(opcodes, nodeCount), Arrays.copyOf(children, 2 * nodeCount),
+                                       Arrays.copyOf(constants, constantCount));
+        }
+    }
+}
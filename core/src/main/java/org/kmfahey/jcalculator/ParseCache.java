@@ -0,0 +1,245 @@
+package org.kmfahey.jcalculator;
+
+import java.text.ParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements an opt-in, bounded cache in front of ArithmeticParser, mapping
+ * expression text to the parse tree it parses to. Parse trees are immutable, so
+ * a cached tree can be shared by any number of threads.
+ *
+ * Lookups are lock-free: a hit is a single ConcurrentHashMap read plus setting
+ * the entry's recently-used flag. Only a miss takes the cache's lock, to insert
+ * the new entry and evict as needed. Eviction follows a segmented LRU policy:
+ * new entries join a probationary segment, and an entry that's been used again
+ * by the time it reaches the probationary segment's eldest end is promoted to
+ * a protected segment instead of being evicted. Since hits don't take the lock,
+ * promotion is deferred until then rather than done on every hit.
+ *
+ * Entries are keyed by the exact text of the expression, which is parsed just
+ * as it was passed, so the cache returns what ArithmeticParser would for any
+ * text; "1 + 2" and "1+2" have separate entries. Expressions that fail to
+ * parse aren't cached.
+ */
+public final class ParseCache {
+
+    /** The share of the cache's capacity given to the protected segment. */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /** The entries, keyed by expression text. */
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    /** Guards the segment lists and their sizes. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The most entries the cache holds at once. */
+    private final int maximumSize;
+
+    /** The most entries the protected segment holds at once. */
+    private final int maximumProtectedSize;
+
+    /** The probationary segment, eldest entry first. */
+    private final Segment probationSegment = new Segment();
+
+    /** The protected segment, eldest entry first. */
+    private final Segment protectedSegment = new Segment();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Constructs an empty cache that holds at most maximumSizeVal entries.
+     *
+     * @param maximumSizeVal the cache's capacity; must be positive
+     */
+    public ParseCache(final int maximumSizeVal) {
+        if (maximumSizeVal < 1) { throw new IllegalArgumentException("argument 'maximumSizeVal' was less than 1"); }
+        maximumSize = maximumSizeVal;
+        maximumProtectedSize = (int) (maximumSizeVal * PROTECTED_SHARE);
+        entries = new ConcurrentHashMap<>(Math.min(maximumSizeVal, 1 << 16));
+    }
+
+    /**
+     * Returns the parse tree for an expression, parsing it with
+     * ArithmeticParser.parseExpression() only if it isn't already cached.
+     *
+     * @param  expression the arithmetic expression to parse
+     * @return a ParseTreeNode object which is the root of the expression's
+     *         parse tree, as ArithmeticParser.parseExpression() returns it
+     */
+    public ParseTreeNode parseExpression(final String expression) throws ParseException {
+        if (expression == null) { throw new IllegalArgumentException("argument 'expression' was null"); }
+        Entry entry = entries.get(expression);
+        if (entry != null) {
+            entry.recentlyUsed = true;
+            hitCount.increment();
+            return entry.parseTree;
+        }
+
+        missCount.increment();
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+        evictionLock.lock();
+        try {
+            /* Another thread may have cached the same expression while this
+             * one was parsing it; if so, that entry wins. */
+            Entry existingEntry = entries.get(expression);
+            if (existingEntry != null) {
+                return existingEntry.parseTree;
+            }
+            entry = new Entry(expression, parseTree);
+            entries.put(expression, entry);
+            probationSegment.addLast(entry);
+            evictIfNeeded();
+        } finally {
+            evictionLock.unlock();
+        }
+        return parseTree;
+    }
+
+    /**
+     * Returns the number of lookups that found the expression cached.
+     *
+     * @return the hit count
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to parse the expression.
+     *
+     * @return the miss count
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the cache within its
+     * capacity.
+     *
+     * @return the eviction count
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of entries currently cached.
+     *
+     * @return the cache's size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the most entries the cache holds at once.
+     *
+     * @return the cache's capacity
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Renders the cache's counters in a one-line summary.
+     *
+     * @return a summary of the cache's size and counters
+     */
+    public String toString() {
+        return "ParseCache{size=" + size() + "/" + maximumSize + ", hits=" + hitCount() + ", misses=" + missCount()
+               + ", evictions=" + evictionCount() + "}";
+    }
+
+    /* Evicts entries until the cache is within its capacity. Called with the
+     * lock held. An entry at the eldest end of the probationary segment that's
+     * been used since it was inserted is promoted rather than evicted; if that
+     * overfills the protected segment, the protected segment's eldest entry is
+     * given a second chance if it's been used again since its promotion, and
+     * otherwise demoted to the probationary segment. */
+    private void evictIfNeeded() {
+        while (entries.size() > maximumSize) {
+            Entry candidate = probationSegment.removeFirst();
+            if (candidate == null) {
+                candidate = protectedSegment.removeFirst();
+            } else if (candidate.recentlyUsed && maximumProtectedSize > 0) {
+                candidate.recentlyUsed = false;
+                protectedSegment.addLast(candidate);
+                while (protectedSegment.size > maximumProtectedSize) {
+                    Entry eldestProtected = protectedSegment.removeFirst();
+                    if (eldestProtected.recentlyUsed) {
+                        eldestProtected.recentlyUsed = false;
+                        protectedSegment.addLast(eldestProtected);
+                    } else {
+                        probationSegment.addLast(eldestProtected);
+                    }
+                }
+                continue;
+            }
+            entries.remove(candidate.expression, candidate);
+            evictionCount.increment();
+        }
+    }
+
+    /* A cached parse tree, linked into one of the two segments. */
+    private static final class Entry {
+
+        final String expression;
+        final ParseTreeNode parseTree;
+
+        /* Set by every hit and cleared when the entry is promoted or given a
+         * second chance. Races between hits are harmless, since every racing
+         * write stores the same value. */
+        volatile boolean recentlyUsed;
+
+        /* The neighbouring entries in the entry's segment, guarded by the
+         * cache's lock. */
+        Entry previous;
+        Entry next;
+
+        Entry(final String expressionVal, final ParseTreeNode parseTreeVal) {
+            expression = expressionVal;
+            parseTree = parseTreeVal;
+        }
+    }
+
+    /* A doubly-linked list of entries, eldest first, guarded by the cache's
+     * lock. */
+    private static final class Segment {
+
+        Entry first;
+        Entry last;
+        int size;
+
+        void addLast(final Entry entry) {
+            entry.previous = last;
+            entry.next = null;
+            if (last == null) {
+                first = entry;
+            } else {
+                last.next = entry;
+            }
+            last = entry;
+            size++;
+        }
+
+        Entry removeFirst() {
+            Entry entry = first;
+            if (entry != null) {
+                first = entry.next;
+                if (first == null) {
+                    last = null;
+                } else {
+                    first.previous = null;
+                }
+                entry.next = null;
+                size--;
+            }
+            return entry;
+        }
+    }
+}
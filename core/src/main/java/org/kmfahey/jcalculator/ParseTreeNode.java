@@ -0,0 +1,666 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Implements a node in a parse tree, such that a parse tree can be composed
+ * entirely of members of this class. It stores both a left and a right
+ * child, and can store a child as either a terminal double value or another
+ * ParseTreeNode. It also stores the operator of the expression the node
+ * represents; the operator can be either binary, in which case both children
+ * are defined, or unary, in which case only the right child is defined.
+ *
+ * A node can also be a leaf with no operator, standing for either a lone
+ * terminal value or a named variable. Variables only occur in trees parsed
+ * with variables allowed, and are bound to values by PreparedExpression.
+ *
+ * Each terminal value is held twice, as primitive values: as the double
+ * nearest the number's text, which evaluateDouble() reads, and as the float
+ * nearest it, which evaluate() reads. The two are parsed separately, since
+ * narrowing the nearest double to a float rounds twice, and that isn't always
+ * the nearest float; so evaluate() is the calculator's float arithmetic as it
+ * has always been, with every terminal and intermediate result a float, and
+ * evaluateDouble() the same arithmetic in double precision. A tree built
+ * from doubles alone narrows each to its float. A terminal parsed from an
+ * expression also keeps its text, from which NumberBackend.evaluate() takes
+ * the number exactly, as the BigDecimal backend needs to.
+ */
+public class ParseTreeNode {
+
+    /** The left child of the node, if it's a terminal value. */
+    private final double leftChildValue;
+
+    /** The left child of the node as a float, if it's a terminal value. */
+    private final float leftChildFloat;
+
+    /** The text the left child was parsed from, if it's a terminal value
+     *  parsed from an expression. */
+    private final String leftChildText;
+
+    /** True if the left child of the node is a terminal value. */
+    private final boolean hasLeftChildValue;
+
+    /** The left child of the node, if it's another ParseTreeNode. */
+    private final ParseTreeNode leftChildNode;
+
+    /** The node's arithmetical operator. */
+    private final Operator centerOperator;
+
+    /** The right child of the node, if it's another ParseTreeNode. */
+    private final ParseTreeNode rightChildNode;
+
+    /** The right child of the node, if it's a terminal value; or the node's
+     *  value, if it's a leaf standing for a terminal value. */
+    private final double rightChildValue;
+
+    /** The right child of the node, or the leaf's value, as a float, if it's
+     *  a terminal value. */
+    private final float rightChildFloat;
+
+    /** The text the right child, or the leaf's value, was parsed from, if
+     *  it's a terminal value parsed from an expression. */
+    private final String rightChildText;
+
+    /** True if the right child of the node is a terminal value, or the node
+     *  is a leaf standing for one. */
+    private final boolean hasRightChildValue;
+
+    /** The name of the variable the node stands for, if it's a variable
+     *  leaf. */
+    private final String variableName;
+
+    /** The node's hash code, computed once on construction from its
+     *  children's, so hashing a tree takes constant time. */
+    private final int hash;
+
+    /**
+     * Constructs a leaf ParseTreeNode object standing for a terminal value,
+     * with the rightChildValue instance var set and no children or operator.
+     * The value evaluate() reads is the terminal narrowed to a float, as it is
+     * for every constructor given a terminal value.
+     *
+     * @param terminalVal the node's value, as a terminal value
+     */
+    public ParseTreeNode(final double terminalVal) {
+        this(terminalVal, (float) terminalVal, null);
+    }
+
+    /* Constructs a leaf standing for a terminal value, given both as a double
+     * and as a float, and the text it was parsed from, or null. */
+    ParseTreeNode(final double terminalVal, final float terminalFloatVal, final String terminalTextVal) {
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = null;
+        centerOperator = null;
+        rightChildNode = null;
+        rightChildValue = terminalVal;
+        rightChildFloat = terminalFloatVal;
+        rightChildText = terminalTextVal;
+        hasRightChildValue = true;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a leaf ParseTreeNode object standing for a named variable,
+     * with the variableName instance var set and no children or operator.
+     *
+     * @param variableNameVal the name of the variable
+     */
+    public ParseTreeNode(final String variableNameVal) {
+        if (variableNameVal == null) { throw new IllegalArgumentException("argument 'variableNameVal' was null"); }
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = null;
+        centerOperator = null;
+        rightChildNode = null;
+        rightChildValue = 0;
+        rightChildFloat = 0;
+        rightChildText = null;
+        hasRightChildValue = false;
+        variableName = variableNameVal;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the centerOperator, and
+     * rightChildNode instance vars set, and no left child.
+     *
+     * @param centerOperatorVal the value for the node's operator
+     * @param rightChildNodeVal the value for the node's right child, as a
+     *                          ParseTreeNode
+     */
+    public ParseTreeNode(final Operator centerOperatorVal, final ParseTreeNode rightChildNodeVal) {
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        if (rightChildNodeVal == null)  { throw new IllegalArgumentException("argument 'rightChildNodeVal' was null"); }
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = null;
+        centerOperator = centerOperatorVal;
+        rightChildNode = rightChildNodeVal;
+        rightChildValue = 0;
+        rightChildFloat = 0;
+        rightChildText = null;
+        hasRightChildValue = false;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the centerOperator and
+     * rightChildValue instance vars set, and no left child.
+     *
+     * @param centerOperatorVal  the value for the node's operator
+     * @param rightChildValueVal the value for the node's right child, as a
+     *                           terminal value
+     */
+    public ParseTreeNode(final Operator centerOperatorVal, final double rightChildValueVal) {
+        this(centerOperatorVal, rightChildValueVal, (float) rightChildValueVal, null);
+    }
+
+    /* Constructs a unary node with a terminal value child, given both as a
+     * double and as a float, and the text it was parsed from, or null. */
+    ParseTreeNode(final Operator centerOperatorVal, final double rightChildValueVal, final float rightChildFloatVal,
+                  final String rightChildTextVal) {
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = null;
+        centerOperator = centerOperatorVal;
+        rightChildNode = null;
+        rightChildValue = rightChildValueVal;
+        rightChildFloat = rightChildFloatVal;
+        rightChildText = rightChildTextVal;
+        hasRightChildValue = true;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the leftChildValue,
+     * centerOperator, and rightChildNode instance vars set.
+     *
+     * @param leftChildValueVal the value for the node's left child, as a
+     *                          terminal value
+     * @param centerOperatorVal the value for the node's operator
+     * @param rightChildNodeVal the value for the node's right child, as a
+     *                          ParseTreeNode
+     */
+    public ParseTreeNode(final double leftChildValueVal, final Operator centerOperatorVal,
+                         final ParseTreeNode rightChildNodeVal) {
+        this(leftChildValueVal, (float) leftChildValueVal, null, centerOperatorVal, rightChildNodeVal);
+    }
+
+    /* Constructs a binary node with a terminal value left child, given both
+     * as a double and as a float, and the text it was parsed from, or null. */
+    ParseTreeNode(final double leftChildValueVal, final float leftChildFloatVal, final String leftChildTextVal,
+                  final Operator centerOperatorVal, final ParseTreeNode rightChildNodeVal) {
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        if (rightChildNodeVal == null) { throw new IllegalArgumentException("argument 'rightChildNodeVal' was null"); }
+        leftChildValue = leftChildValueVal;
+        leftChildFloat = leftChildFloatVal;
+        leftChildText = leftChildTextVal;
+        hasLeftChildValue = true;
+        leftChildNode = null;
+        centerOperator = centerOperatorVal;
+        rightChildNode = rightChildNodeVal;
+        rightChildValue = 0;
+        rightChildFloat = 0;
+        rightChildText = null;
+        hasRightChildValue = false;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the leftChildNode, centerOperator,
+     * and rightChildNode instance vars set.
+     *
+     * @param leftChildNodeVal  the value for the node's left child, as a
+     *                          ParseTreeNode
+     * @param centerOperatorVal the value for the node's operator
+     * @param rightChildNodeVal the value for the node's right child, as a
+     *                          ParseTreeNode
+     */
+    public ParseTreeNode(final ParseTreeNode leftChildNodeVal, final Operator centerOperatorVal,
+                         final ParseTreeNode rightChildNodeVal) {
+        if (leftChildNodeVal == null)  { throw new IllegalArgumentException("argument 'leftChildNodeVal' was null"); }
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        if (rightChildNodeVal == null) { throw new IllegalArgumentException("argument 'rightChildNodeVal' was null"); }
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = leftChildNodeVal;
+        centerOperator = centerOperatorVal;
+        rightChildNode = rightChildNodeVal;
+        rightChildValue = 0;
+        rightChildFloat = 0;
+        rightChildText = null;
+        hasRightChildValue = false;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the leftChildValue,
+     * centerOperator, and rightChildValue instance vars set.
+     *
+     * @param leftChildValueVal  the value for the node's left child, as a
+     *                           terminal value
+     * @param centerOperatorVal  the value for the node's operator
+     * @param rightChildValueVal the value for the node's right child, as a
+     *                           terminal value
+     */
+    public ParseTreeNode(final double leftChildValueVal, final Operator centerOperatorVal,
+                         final double rightChildValueVal) {
+        this(leftChildValueVal, (float) leftChildValueVal, null, centerOperatorVal, rightChildValueVal,
+             (float) rightChildValueVal, null);
+    }
+
+    /* Constructs a binary node with two terminal value children, each given
+     * both as a double and as a float, and the text it was parsed from, or
+     * null. */
+    ParseTreeNode(final double leftChildValueVal, final float leftChildFloatVal, final String leftChildTextVal,
+                  final Operator centerOperatorVal, final double rightChildValueVal, final float rightChildFloatVal,
+                  final String rightChildTextVal) {
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        leftChildValue = leftChildValueVal;
+        leftChildFloat = leftChildFloatVal;
+        leftChildText = leftChildTextVal;
+        hasLeftChildValue = true;
+        leftChildNode = null;
+        centerOperator = centerOperatorVal;
+        rightChildNode = null;
+        rightChildValue = rightChildValueVal;
+        rightChildFloat = rightChildFloatVal;
+        rightChildText = rightChildTextVal;
+        hasRightChildValue = true;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Constructs a ParseTreeNode object with the leftChildNode, centerOperator,
+     * and rightChildValue instance vars set.
+     *
+     * @param leftChildNodeVal   the value for the node's left child, as a
+     *                           ParseTreeNode
+     * @param centerOperatorVal  the value for the node's operator
+     * @param rightChildValueVal the value for the node's right child, as a
+     *                           terminal value
+     */
+    public ParseTreeNode(final ParseTreeNode leftChildNodeVal, final Operator centerOperatorVal,
+                         final double rightChildValueVal) {
+        this(leftChildNodeVal, centerOperatorVal, rightChildValueVal, (float) rightChildValueVal, null);
+    }
+
+    /* Constructs a binary node with a terminal value right child, given both
+     * as a double and as a float, and the text it was parsed from, or null. */
+    ParseTreeNode(final ParseTreeNode leftChildNodeVal, final Operator centerOperatorVal,
+                  final double rightChildValueVal, final float rightChildFloatVal, final String rightChildTextVal) {
+        if (leftChildNodeVal == null)  { throw new IllegalArgumentException("argument 'leftChildNodeVal' was null"); }
+        if (centerOperatorVal == null) { throw new IllegalArgumentException("argument 'centerOperatorVal' was null"); }
+        leftChildValue = 0;
+        leftChildFloat = 0;
+        leftChildText = null;
+        hasLeftChildValue = false;
+        leftChildNode = leftChildNodeVal;
+        centerOperator = centerOperatorVal;
+        rightChildNode = null;
+        rightChildValue = rightChildValueVal;
+        rightChildFloat = rightChildFloatVal;
+        rightChildText = rightChildTextVal;
+        hasRightChildValue = true;
+        variableName = null;
+        hash = computeHash();
+    }
+
+    /**
+     * Returns true if the node's left child is a terminal value.
+     *
+     * @return whether getLeftChildValue() is the left child
+     */
+    public boolean hasLeftChildValue() {
+        return hasLeftChildValue;
+    }
+
+    /**
+     * Returns the node's left child if it's a terminal value.
+     *
+     * @return the left child as a double, or 0 if the left child is a
+     *         ParseTreeNode or the node is unary
+     */
+    public double getLeftChildValue() {
+        return leftChildValue;
+    }
+
+    /**
+     * Returns the node's left child if it's a terminal value, as the float
+     * evaluate() reads.
+     *
+     * @return the left child as a float, or 0 if the left child is a
+     *         ParseTreeNode or the node is unary
+     */
+    public float getLeftChildFloat() {
+        return leftChildFloat;
+    }
+
+    /**
+     * Returns the text the node's left child was parsed from, if it's a
+     * terminal value parsed from an expression, so that a NumberBackend can
+     * take the number exactly as it was written.
+     *
+     * @return the left child's text, or null if it isn't a terminal value
+     *         or wasn't parsed from text
+     */
+    public String getLeftChildText() {
+        return leftChildText;
+    }
+
+    /**
+     * Returns the node's left child if it's another ParseTreeNode.
+     *
+     * @return the left child as a ParseTreeNode, or null if the left child is
+     *         a terminal value or the node is unary
+     */
+    public ParseTreeNode getLeftChildNode() {
+        return leftChildNode;
+    }
+
+    /**
+     * Returns the node's arithmetical operator.
+     *
+     * @return the operator, or null if the node is a leaf
+     */
+    public Operator getCenterOperator() {
+        return centerOperator;
+    }
+
+    /**
+     * Returns the node's right child if it's another ParseTreeNode.
+     *
+     * @return the right child as a ParseTreeNode, or null if the right child
+     *         is a terminal value
+     */
+    public ParseTreeNode getRightChildNode() {
+        return rightChildNode;
+    }
+
+    /**
+     * Returns true if the node's right child is a terminal value, or the node
+     * is a leaf standing for one.
+     *
+     * @return whether getRightChildValue() is the right child or the leaf's
+     *         value
+     */
+    public boolean hasRightChildValue() {
+        return hasRightChildValue;
+    }
+
+    /**
+     * Returns the node's right child if it's a terminal value, or the node's
+     * value if it's a leaf standing for a terminal value.
+     *
+     * @return the right child as a double, or 0 if the right child is a
+     *         ParseTreeNode or the node is a variable leaf
+     */
+    public double getRightChildValue() {
+        return rightChildValue;
+    }
+
+    /**
+     * Returns the node's right child if it's a terminal value, or the node's
+     * value if it's a leaf standing for a terminal value, as the float
+     * evaluate() reads.
+     *
+     * @return the right child as a float, or 0 if the right child is a
+     *         ParseTreeNode or the node is a variable leaf
+     */
+    public float getRightChildFloat() {
+        return rightChildFloat;
+    }
+
+    /**
+     * Returns the text the node's right child, or the leaf's value, was
+     * parsed from, if it's a terminal value parsed from an expression, so
+     * that a NumberBackend can take the number exactly as it was written.
+     *
+     * @return the right child's text, or null if it isn't a terminal value
+     *         or wasn't parsed from text
+     */
+    public String getRightChildText() {
+        return rightChildText;
+    }
+
+    /**
+     * Returns the name of the variable the node stands for, if it's a
+     * variable leaf.
+     *
+     * @return the variable name, or null if the node isn't a variable leaf
+     */
+    public String getVariableName() {
+        return variableName;
+    }
+
+    /**
+     * Returns true if the node is a leaf, standing for a terminal value or a
+     * variable rather than an operation.
+     *
+     * @return whether the node has no operator
+     */
+    public boolean isLeaf() {
+        return centerOperator == null;
+    }
+
+    /**
+     * Returns true if the node's operator is unary, so it has a right child
+     * and no left child.
+     *
+     * @return whether the node is an operator node with no left child
+     */
+    public boolean isUnary() {
+        return centerOperator != null && !hasLeftChildValue && leftChildNode == null;
+    }
+
+    /**
+     * Returns true if the other object is a ParseTreeNode that's structurally
+     * equal to this one: it has the same operator, and its children are equal
+     * terminal values or structurally equal ParseTreeNodes. Terminal values
+     * are compared both as doubles and as floats, as Double.equals() and
+     * Float.equals() compare them, so 0 and -0 differ; the text they were
+     * parsed from isn't compared, so a tree equals the one its PostfixProgram
+     * rebuilds.
+     * Child nodes that are the same object are equal without being compared,
+     * so comparing two trees whose shared subtrees have been interned by
+     * ExpressionInterner only descends one level.
+     *
+     * @param  other the object to compare to
+     * @return whether the two trees are structurally equal
+     */
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof ParseTreeNode)) {
+            return false;
+        }
+        ParseTreeNode otherNode = (ParseTreeNode) other;
+        return hash == otherNode.hash
+               && Objects.equals(centerOperator, otherNode.centerOperator)
+               && Objects.equals(variableName, otherNode.variableName)
+               && hasLeftChildValue == otherNode.hasLeftChildValue
+               && hasRightChildValue == otherNode.hasRightChildValue
+               && Double.doubleToLongBits(leftChildValue) == Double.doubleToLongBits(otherNode.leftChildValue)
+               && Double.doubleToLongBits(rightChildValue) == Double.doubleToLongBits(otherNode.rightChildValue)
+               && Float.floatToIntBits(leftChildFloat) == Float.floatToIntBits(otherNode.leftChildFloat)
+               && Float.floatToIntBits(rightChildFloat) == Float.floatToIntBits(otherNode.rightChildFloat)
+               && Objects.equals(leftChildNode, otherNode.leftChildNode)
+               && Objects.equals(rightChildNode, otherNode.rightChildNode);
+    }
+
+    /**
+     * Returns a hash code consistent with equals(). It's computed when the
+     * node is constructed, so this takes constant time.
+     *
+     * @return the node's hash code
+     */
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Recursively evaluates the parse tree, returning a float value. Each child
+     * node has evaluate() called on it in turn and its return value is used in
+     * the calculation of this node's value. This is the calculator's float
+     * arithmetic: each terminal value is read as the float nearest its
+     * number, and the results of Math.pow() and Math.sqrt() are narrowed to
+     * floats.
+     *
+     * @return the arithmetic result of executing the calculation of this parse
+     *         tree node and all child nodes
+     */
+    public float evaluate() throws IllegalStateException {
+        // A leaf has no operator; a variable leaf has no value until it's bound by a PreparedExpression
+        if (centerOperator == null) {
+            if (variableName != null) {
+                throw new IllegalStateException("variable '" + variableName + "' is unbound");
+            }
+            return rightChildFloat;
+        }
+        // The left child is neither a value nor a node when the centerOperator is unary, such as √
+        float leftChildResult = hasLeftChildValue ? leftChildFloat
+                                : (leftChildNode != null) ? leftChildNode.evaluate() : 0F;
+        float rightChildResult = hasRightChildValue ? rightChildFloat : rightChildNode.evaluate();
+        switch (centerOperator.opcode()) {
+            case Opcodes.ADD:
+                return leftChildResult + rightChildResult;
+            case Opcodes.SUBTRACT:
+                return leftChildResult - rightChildResult;
+            case Opcodes.NEGATE:
+                return -rightChildResult;
+            case Opcodes.MULTIPLY:
+                return leftChildResult * rightChildResult;
+            case Opcodes.DIVIDE:
+                if (rightChildResult == 0) {
+                    throw new IllegalStateException("divide by zero");
+                } else {
+                    return leftChildResult / rightChildResult;
+                }
+            case Opcodes.POWER:
+                return (float) Math.pow(leftChildResult, rightChildResult);
+            case Opcodes.SQUARE_ROOT:
+                return (float) Math.sqrt(rightChildResult);
+            default:
+                // An operator defined in an OperatorRegistry computes in double; its result is narrowed
+                return (float) centerOperator.apply(leftChildResult, rightChildResult);
+        }
+    }
+
+    /**
+     * Recursively evaluates the parse tree as evaluate() does, but in double
+     * precision throughout: terminal values are used as they were parsed and
+     * no result is narrowed, so a chain of operations keeps double's
+     * precision.
+     *
+     * @return the arithmetic result of executing the calculation of this parse
+     *         tree node and all child nodes
+     */
+    public double evaluateDouble() throws IllegalStateException {
+        if (centerOperator == null) {
+            if (variableName != null) {
+                throw new IllegalStateException("variable '" + variableName + "' is unbound");
+            }
+            return rightChildValue;
+        }
+        double leftChildResult = hasLeftChildValue ? leftChildValue
+                                 : (leftChildNode != null) ? leftChildNode.evaluateDouble() : 0;
+        double rightChildResult = hasRightChildValue ? rightChildValue : rightChildNode.evaluateDouble();
+        switch (centerOperator.opcode()) {
+            case Opcodes.ADD:
+                return leftChildResult + rightChildResult;
+            case Opcodes.SUBTRACT:
+                return leftChildResult - rightChildResult;
+            case Opcodes.NEGATE:
+                return -rightChildResult;
+            case Opcodes.MULTIPLY:
+                return leftChildResult * rightChildResult;
+            case Opcodes.DIVIDE:
+                if (rightChildResult == 0) {
+                    throw new IllegalStateException("divide by zero");
+                } else {
+                    return leftChildResult / rightChildResult;
+                }
+            case Opcodes.POWER:
+                return Math.pow(leftChildResult, rightChildResult);
+            case Opcodes.SQUARE_ROOT:
+                return Math.sqrt(rightChildResult);
+            default:
+                return centerOperator.apply(leftChildResult, rightChildResult);
+        }
+    }
+
+    /**
+     * Recursively renders this ParseTreeNode and all child nodes into a
+     * one-line representation of the parse tree. Each child node (if any)
+     * has toString() called on it in turn and the return value is integrated
+     * in-line with the string representation of this node.
+     *
+     * @return a representation of the parse tree in a string
+     */
+    public String toString() {
+        if (variableName != null) {
+            return "{ " + variableName + " }";
+        } else if (centerOperator == null) {
+            return terminalToString(rightChildFloat);
+        }
+        StringJoiner strJoin = new StringJoiner(", ", "{ ", " }");
+        if (hasLeftChildValue) {
+            strJoin.add(terminalToString(leftChildFloat));
+        }
+        if (leftChildNode != null) {
+            strJoin.add(leftChildNode.toString());
+        }
+        if (centerOperator != null) {
+            strJoin.add("'" + centerOperator + "'");
+        }
+        if (rightChildNode != null) {
+            strJoin.add(rightChildNode.toString());
+        }
+        if (hasRightChildValue) {
+            strJoin.add(terminalToString(rightChildFloat));
+        }
+        return strJoin.toString();
+    }
+
+    /* Combines the hash codes of the node's fields; child nodes' hash codes
+     * are already computed, so this doesn't recurse. A terminal's float is
+     * left out, since it almost always follows from its double. */
+    private int computeHash() {
+        int result = Objects.hashCode(centerOperator);
+        result = 31 * result + Objects.hashCode(variableName);
+        result = 31 * result + (hasLeftChildValue ? Double.hashCode(leftChildValue) : 0);
+        result = 31 * result + Objects.hashCode(leftChildNode);
+        result = 31 * result + Objects.hashCode(rightChildNode);
+        result = 31 * result + (hasRightChildValue ? Double.hashCode(rightChildValue) : 0);
+        return result;
+    }
+
+    /* Renders a terminal value as the float evaluate() reads, omitting the
+     * fractional part if it's an integer. */
+    private static String terminalToString(final float terminalValue) {
+        if (Math.floor(terminalValue) == terminalValue) {
+            return "{ " + String.valueOf((int) terminalValue) + " }";
+        } else {
+            return "{ " + String.valueOf(terminalValue) + " }";
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package org.kmfahey.jcalculator;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Implements an iterative stack machine for evaluating parse trees. A parse
+ * tree is compiled into a flat program of postfix instructions, which is then
+ * run against a primitive double operand stack. Neither compiling nor
+ * evaluating recurses, so the depth of the Java call stack is the same however
+ * deeply the expression nests, and no intermediate results are boxed.
+ *
+ * Every operation narrows its result to float, so a PostfixProgram evaluates
+ * to exactly what ParseTreeNode.evaluate() returns for the tree it was
+ * compiled from, including throwing IllegalStateException on a divide by zero.
+ *
+ * Each distinct variable in the tree is assigned a slot when the program is
+ * compiled, in order of first appearance, and a VARIABLE instruction reads its
+ * slot's value from the array passed to evaluate(float[]).
+ *
+ * If the tree is a directed acyclic graph in which a node has more than one
+ * parent, as ExpressionInterner makes it, that node's subexpression is
+ * compiled only once. A STORE instruction saves its value in a temporary the
+ * first time it's computed, and each later occurrence is a LOAD instruction
+ * that pushes the saved value.
+ */
+public final class PostfixProgram {
+
+    /** The program's instructions, in postfix order, as opcodes from
+     *  Opcodes. */
+    private final byte[] code;
+
+    /** Each instruction's operand; for a CONSTANT instruction, the index of
+     *  its value in the constants array, for a VARIABLE instruction, its slot,
+     *  and for a STORE or LOAD instruction, its temporary. */
+    private final int[] operands;
+
+    /** The pool of constant values the CONSTANT instructions push, as
+     *  doubles, from which toParseTree() rebuilds the tree's terminals. */
+    private final double[] constants;
+
+    /** The same constant values as floats, which evaluate() pushes. */
+    private final float[] floatConstants;
+
+    /** The greatest number of values the program holds on the operand stack
+     *  at once. */
+    private final int maxStackDepth;
+
+    /** The name of the variable bound to each slot, indexed by slot. */
+    private final String[] variableNames;
+
+    /** The number of temporaries the STORE and LOAD instructions use. */
+    private final int temporaryCount;
+
+    /* Constructs a PostfixProgram from already-populated arrays, which
+     * SerializedExpression decodes one from as well. */
+    PostfixProgram(final byte[] codeVal, final int[] operandsVal, final double[] constantsVal,
+                   final float[] floatConstantsVal, final int maxStackDepthVal, final String[] variableNamesVal,
+                   final int temporaryCountVal) {
+        code = codeVal;
+        operands = operandsVal;
+        constants = constantsVal;
+        floatConstants = floatConstantsVal;
+        maxStackDepth = maxStackDepthVal;
+        variableNames = variableNamesVal;
+        temporaryCount = temporaryCountVal;
+    }
+
+    /**
+     * Compiles a parse tree into a PostfixProgram. The tree is walked with an
+     * explicit stack of pending nodes, so arbitrarily deep trees can be
+     * compiled. An operator node reached a second time is compiled as a LOAD
+     * of the value computed the first time. Only the built-in operators have
+     * instructions, so a tree using an operator defined in an OperatorRegistry
+     * can't be compiled.
+     *
+     * @param  root the root of the parse tree to compile
+     * @return a PostfixProgram that evaluates the parse tree
+     */
+    public static PostfixProgram compile(final ParseTreeNode root) {
+        if (root == null) { throw new IllegalArgumentException("argument 'root' was null"); }
+        Emitter emitter = new Emitter();
+        ParseTreeNode[] pendingNodes = new ParseTreeNode[16];
+        byte[] pendingStages = new byte[16];
+        int pendingCount = 1;
+        pendingNodes[0] = root;
+
+        /* Each pending node passes through three stages: its left child is
+         * emitted, then its right child, then its operator. A child that's a
+         * ParseTreeNode is pushed as a new pending node, and the parent picks
+         * up at its next stage once the child has been fully emitted. A leaf
+         * node is emitted whole in a single stage. */
+        while (pendingCount > 0) {
+            ParseTreeNode node = pendingNodes[pendingCount - 1];
+            ParseTreeNode childNode = null;
+            if (node.isLeaf()) {
+                if (node.getVariableName() != null) {
+                    emitter.emitVariable(node.getVariableName());
+                } else {
+                    emitter.emitConstant(node.getRightChildValue(), node.getRightChildFloat());
+                }
+                pendingCount--;
+                continue;
+            }
+            switch (pendingStages[pendingCount - 1]++) {
+                case 0:
+                    if (emitter.emitLoadIfEmitted(node)) {
+                        pendingCount--;
+                        continue;
+                    }
+                    if (node.hasLeftChildValue()) {
+                        emitter.emitConstant(node.getLeftChildValue(), node.getLeftChildFloat());
+                    } else {
+                        childNode = node.getLeftChildNode();
+                    }
+                    break;
+                case 1:
+                    if (node.hasRightChildValue()) {
+                        emitter.emitConstant(node.getRightChildValue(), node.getRightChildFloat());
+                    } else {
+                        childNode = node.getRightChildNode();
+                    }
+                    break;
+                default:
+                    boolean unary = node.isUnary();
+                    Operator operator = node.getCenterOperator();
+                    if (!operator.isBuiltIn()) {
+                        throw new IllegalArgumentException("operator '" + operator + "' isn't built in");
+                    } else if (operator.isUnary() != unary) {
+                        throw new IllegalArgumentException("operator '" + operator + "' given "
+                                                           + (unary ? "one operand" : "two operands"));
+                    }
+                    emitter.emitOperator((byte) operator.opcode(), node);
+                    pendingCount--;
+                    break;
+            }
+            if (childNode != null) {
+                if (pendingCount == pendingNodes.length) {
+                    pendingNodes = Arrays.copyOf(pendingNodes, pendingCount * 2);
+                    pendingStages = Arrays.copyOf(pendingStages, pendingCount * 2);
+                }
+                pendingNodes[pendingCount] = childNode;
+                pendingStages[pendingCount] = 0;
+                pendingCount++;
+            }
+        }
+
+        return emitter.build();
+    }
+
+    /**
+     * Returns the number of instructions in the program.
+     *
+     * @return the program length
+     */
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * Returns the greatest depth the operand stack reaches while the program
+     * runs.
+     *
+     * @return the maximum operand stack depth
+     */
+    public int maxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Returns the number of distinct variables in the program, each of which
+     * is bound to a slot.
+     *
+     * @return the number of variable slots
+     */
+    public int variableCount() {
+        return variableNames.length;
+    }
+
+    /**
+     * Returns the name of the variable bound to a slot.
+     *
+     * @param  slot a slot index, less than variableCount()
+     * @return the variable's name
+     */
+    public String variableName(final int slot) {
+        return variableNames[slot];
+    }
+
+    /**
+     * Returns the slot a variable is bound to.
+     *
+     * @param  name a variable name
+     * @return the variable's slot, or -1 if the program has no such variable
+     */
+    public int slotOf(final String name) {
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            if (variableNames[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /* Returns the opcode of the instruction at the given index. */
+    byte opcodeAt(final int index) {
+        return code[index];
+    }
+
+    /* Returns the value a CONSTANT instruction at the given index pushes, as
+     * a double. */
+    double constantAt(final int index) {
+        return constants[operands[index]];
+    }
+
+    /* Returns the value a CONSTANT instruction at the given index pushes, as
+     * the float evaluate() pushes. */
+    float floatConstantAt(final int index) {
+        return floatConstants[operands[index]];
+    }
+
+    /* Returns the slot a VARIABLE instruction at the given index reads. */
+    int slotAt(final int index) {
+        return operands[index];
+    }
+
+    /* Returns the temporary a STORE or LOAD instruction at the given index
+     * uses. */
+    int temporaryAt(final int index) {
+        return operands[index];
+    }
+
+    /* Returns the number of temporaries the program uses. */
+    int temporaryCount() {
+        return temporaryCount;
+    }
+
+    /**
+     * Runs the program, returning a float value. Throws an
+     * IllegalStateException if the program has variables, since they have no
+     * values to read.
+     *
+     * @return the arithmetic result of executing the calculation the program
+     *         was compiled from
+     */
+    public float evaluate() throws IllegalStateException {
+        if (variableNames.length > 0) {
+            throw new IllegalStateException("variable '" + variableNames[0] + "' is unbound");
+        }
+        return evaluate(new float[0]);
+    }
+
+    /**
+     * Runs the program with each variable bound to the value in its slot,
+     * returning a float value.
+     *
+     * @param  slotValues the value of each variable, indexed by slot
+     * @return the arithmetic result of executing the calculation the program
+     *         was compiled from
+     */
+    public float evaluate(final float[] slotValues) throws IllegalStateException {
+        if (slotValues.length < variableNames.length) {
+            throw new IllegalArgumentException("expected " + variableNames.length + " slot values, got "
+                                               + slotValues.length);
+        }
+        double[] stack = new double[maxStackDepth];
+        double[] temporaries = (temporaryCount > 0) ? new double[temporaryCount] : null;
+        int stackDepth = 0;
+        for (int index = 0; index < code.length; index++) {
+            byte opcode = code[index];
+            if (opcode == Opcodes.CONSTANT) {
+                stack[stackDepth++] = floatConstants[operands[index]];
+            } else if (opcode == Opcodes.VARIABLE) {
+                stack[stackDepth++] = slotValues[operands[index]];
+            } else if (opcode == Opcodes.STORE) {
+                temporaries[operands[index]] = stack[stackDepth - 1];
+            } else if (opcode == Opcodes.LOAD) {
+                stack[stackDepth++] = temporaries[operands[index]];
+            } else if (Opcodes.isUnary(opcode)) {
+                stack[stackDepth - 1] = Opcodes.apply(opcode, 0F, (float) stack[stackDepth - 1]);
+            } else {
+                stackDepth--;
+                stack[stackDepth - 1] = Opcodes.apply(opcode, (float) stack[stackDepth - 1], (float) stack[stackDepth]);
+            }
+        }
+        return (float) stack[0];
+    }
+
+    /**
+     * Rebuilds the parse tree the program evaluates, as the inverse of
+     * compile(). The program is run symbolically on a stack of operands, each
+     * either a terminal value or a node, and each operator instruction builds
+     * a node from its operands just as the parser does, so the tree is equal
+     * to the one the expression parses to. A LOAD pushes the node its STORE
+     * saved, so a shared subexpression is shared in the tree as well. A
+     * program that's a lone CONSTANT is rebuilt as a leaf node. A program
+     * keeps no number's text, so the tree's terminals have none.
+     *
+     * @return the root of the program's parse tree
+     */
+    public ParseTreeNode toParseTree() {
+        double[] values = new double[maxStackDepth];
+        float[] floatValues = new float[maxStackDepth];
+        ParseTreeNode[] nodes = new ParseTreeNode[maxStackDepth];
+        double[] temporaryValues = new double[temporaryCount];
+        float[] temporaryFloatValues = new float[temporaryCount];
+        ParseTreeNode[] temporaryNodes = new ParseTreeNode[temporaryCount];
+        int stackDepth = 0;
+        for (int index = 0; index < code.length; index++) {
+            byte opcode = code[index];
+            if (opcode == Opcodes.CONSTANT) {
+                values[stackDepth] = constants[operands[index]];
+                floatValues[stackDepth] = floatConstants[operands[index]];
+                nodes[stackDepth++] = null;
+            } else if (opcode == Opcodes.VARIABLE) {
+                nodes[stackDepth++] = new ParseTreeNode(variableNames[operands[index]]);
+            } else if (opcode == Opcodes.STORE) {
+                temporaryValues[operands[index]] = values[stackDepth - 1];
+                temporaryFloatValues[operands[index]] = floatValues[stackDepth - 1];
+                temporaryNodes[operands[index]] = nodes[stackDepth - 1];
+            } else if (opcode == Opcodes.LOAD) {
+                values[stackDepth] = temporaryValues[operands[index]];
+                floatValues[stackDepth] = temporaryFloatValues[operands[index]];
+                nodes[stackDepth++] = temporaryNodes[operands[index]];
+            } else if (Opcodes.isUnary(opcode)) {
+                Operator operator = OperatorRegistry.STANDARD.operator(opcode);
+                int sole = stackDepth - 1;
+                nodes[sole] = (nodes[sole] == null) ? new ParseTreeNode(operator, values[sole], floatValues[sole], null)
+                                                    : new ParseTreeNode(operator, nodes[sole]);
+            } else {
+                Operator operator = OperatorRegistry.STANDARD.operator(opcode);
+                int right = --stackDepth;
+                int left = stackDepth - 1;
+                if (nodes[left] == null && nodes[right] == null) {
+                    nodes[left] = new ParseTreeNode(values[left], floatValues[left], null, operator, values[right],
+                                                    floatValues[right], null);
+                } else if (nodes[left] != null && nodes[right] == null) {
+                    nodes[left] = new ParseTreeNode(nodes[left], operator, values[right], floatValues[right], null);
+                } else if (nodes[left] == null) {
+                    nodes[left] = new ParseTreeNode(values[left], floatValues[left], null, operator, nodes[right]);
+                } else {
+                    nodes[left] = new ParseTreeNode(nodes[left], operator, nodes[right]);
+                }
+            }
+        }
+        return (nodes[0] == null) ? new ParseTreeNode(values[0], floatValues[0], null) : nodes[0];
+    }
+
+    /* Accumulates instructions into growable arrays while a tree is being
+     * compiled, or while ArithmeticParser compiles an expression directly,
+     * tracking the operand stack depth as it goes. */
+    static final class Emitter {
+
+        private byte[] code = new byte[16];
+        private int[] operands = new int[16];
+        private double[] constants = new double[8];
+        private float[] floatConstants = new float[8];
+        private int codeLength;
+        private int constantCount;
+        private int stackDepth;
+        private int maxStackDepth;
+        private final LinkedHashMap<String, Integer> variableSlots = new LinkedHashMap<>();
+
+        /* The index of the last instruction of each operator node emitted so
+         * far, where its value is on top of the stack. */
+        private final IdentityHashMap<ParseTreeNode, Integer> emittedNodes = new IdentityHashMap<>();
+
+        /* The temporary each shared node's value is stored in, keyed by the
+         * index of the node's last instruction; the STORE instructions are
+         * inserted after those instructions when the program is built. */
+        private final IdentityHashMap<ParseTreeNode, Integer> nodeTemporaries = new IdentityHashMap<>();
+        private int[] storeAfterIndexes = new int[4];
+        private int temporaryCount;
+
+        /* Appends an instruction pushing the given constant, given both as a
+         * double and as a float. */
+        void emitConstant(final double value, final float floatValue) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+                floatConstants = Arrays.copyOf(floatConstants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            floatConstants[constantCount] = floatValue;
+            emit(Opcodes.CONSTANT, constantCount++);
+            stackDepth++;
+            maxStackDepth = Math.max(maxStackDepth, stackDepth);
+        }
+
+        /* Appends an instruction pushing the given variable's value, assigning
+         * the variable a slot if it hasn't got one yet. */
+        void emitVariable(final String name) {
+            Integer slot = variableSlots.get(name);
+            if (slot == null) {
+                slot = variableSlots.size();
+                variableSlots.put(name, slot);
+            }
+            emit(Opcodes.VARIABLE, slot);
+            stackDepth++;
+            maxStackDepth = Math.max(maxStackDepth, stackDepth);
+        }
+
+        /* Appends an instruction applying the given operator node's
+         * operator. The node is null if there's no tree, in which case
+         * nothing can be shared. */
+        void emitOperator(final byte opcode, final ParseTreeNode node) {
+            emit(opcode, 0);
+            if (!Opcodes.isUnary(opcode)) {
+                stackDepth--;
+            }
+            if (node != null) {
+                emittedNodes.put(node, codeLength - 1);
+            }
+        }
+
+        /* Appends a LOAD of the given operator node's value and returns true
+         * if the node has been emitted already, assigning it a temporary if
+         * it hasn't got one yet; otherwise returns false. */
+        boolean emitLoadIfEmitted(final ParseTreeNode node) {
+            Integer lastIndex = emittedNodes.get(node);
+            if (lastIndex == null) {
+                return false;
+            }
+            Integer temporary = nodeTemporaries.get(node);
+            if (temporary == null) {
+                temporary = temporaryCount;
+                nodeTemporaries.put(node, temporary);
+                if (temporaryCount == storeAfterIndexes.length) {
+                    storeAfterIndexes = Arrays.copyOf(storeAfterIndexes, temporaryCount * 2);
+                }
+                storeAfterIndexes[temporaryCount++] = lastIndex;
+            }
+            emit(Opcodes.LOAD, temporary);
+            stackDepth++;
+            maxStackDepth = Math.max(maxStackDepth, stackDepth);
+            return true;
+        }
+
+        private void emit(final byte opcode, final int operand) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+                operands = Arrays.copyOf(operands, codeLength * 2);
+            }
+            code[codeLength] = opcode;
+            operands[codeLength] = operand;
+            codeLength++;
+        }
+
+        /* Inserts the STORE instructions, trims the arrays to size and returns
+         * the finished program. A STORE leaves the stack as it was, so it
+         * doesn't change the maximum stack depth. */
+        PostfixProgram build() {
+            byte[] finalCode = new byte[codeLength + temporaryCount];
+            int[] finalOperands = new int[codeLength + temporaryCount];
+            /* Each node ends at a distinct index, so sorting the temporaries
+             * by the index their STORE follows orders them unambiguously. */
+            long[] sortKeys = new long[temporaryCount];
+            for (int temporary = 0; temporary < temporaryCount; temporary++) {
+                sortKeys[temporary] = ((long) storeAfterIndexes[temporary] << 32) | temporary;
+            }
+            Arrays.sort(sortKeys);
+            int storeIndex = 0;
+            int finalLength = 0;
+            for (int index = 0; index < codeLength; index++) {
+                finalCode[finalLength] = code[index];
+                finalOperands[finalLength++] = operands[index];
+                if (storeIndex < temporaryCount && (int) (sortKeys[storeIndex] >>> 32) == index) {
+                    finalCode[finalLength] = Opcodes.STORE;
+                    finalOperands[finalLength++] = (int) sortKeys[storeIndex++];
+                }
+            }
+            return new PostfixProgram(finalCode, finalOperands, Arrays.copyOf(constants, constantCount),
+                                      Arrays.copyOf(floatConstants, constantCount), maxStackDepth,
+                                      variableSlots.keySet().toArray(new String[0]), temporaryCount);
+        }
+    }
+}
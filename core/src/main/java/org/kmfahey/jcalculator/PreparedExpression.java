@@ -0,0 +1,107 @@
+package org.kmfahey.jcalculator;
+
+import java.text.ParseException;
+
+/**
+ * Implements an arithmetic expression with variables that's parsed and
+ * validated once, then evaluated any number of times against different values
+ * for its variables. Each distinct variable is resolved to a slot when the
+ * expression is prepared; the values are passed to evaluate() as a float array
+ * indexed by slot, so evaluating looks nothing up by name.
+ *
+ * A variable name is a letter or underscore followed by any number of letters,
+ * digits and underscores, and may appear anywhere a number may, except
+ * directly after a right paren or another operand.
+ */
+public final class PreparedExpression {
+
+    /** The expression's text, as it was prepared. */
+    private final String expression;
+
+    /** The compiled form of the expression. */
+    private final PostfixProgram program;
+
+    /* Constructs a PreparedExpression around its text and compiled form. */
+    private PreparedExpression(final String expressionVal, final PostfixProgram programVal) {
+        expression = expressionVal;
+        program = programVal;
+    }
+
+    /**
+     * Parses, optimizes and compiles an arithmetic expression which may contain
+     * variables. Repeated subexpressions are interned, so each is computed
+     * only once per evaluation. Throws a ParseException if invalid syntax was
+     * used.
+     *
+     * @param  expression the arithmetic expression to prepare
+     * @return the prepared expression
+     */
+    public static PreparedExpression prepare(final String expression) throws ParseException {
+        if (expression == null) { throw new IllegalArgumentException("argument 'expression' was null"); }
+        ParseTreeNode parseTree = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression(expression, true));
+        parseTree = new ExpressionInterner().intern(parseTree);
+        return new PreparedExpression(expression, PostfixProgram.compile(parseTree));
+    }
+
+    /**
+     * Returns the number of distinct variables in the expression, which is
+     * the length of the array evaluate() expects.
+     *
+     * @return the number of variable slots
+     */
+    public int variableCount() {
+        return program.variableCount();
+    }
+
+    /**
+     * Returns the name of the variable bound to a slot.
+     *
+     * @param  slot a slot index, less than variableCount()
+     * @return the variable's name
+     */
+    public String variableName(final int slot) {
+        return program.variableName(slot);
+    }
+
+    /**
+     * Returns the slot a variable is bound to. Slots are numbered in the order
+     * the variables first appear in the expression.
+     *
+     * @param  name a variable name
+     * @return the variable's slot, or -1 if the expression has no such
+     *         variable
+     */
+    public int slotOf(final String name) {
+        return program.slotOf(name);
+    }
+
+    /**
+     * Evaluates the expression with each variable bound to the value in its
+     * slot, returning a float value. Throws an IllegalStateException on a
+     * divide by zero, as ParseTreeNode.evaluate() does.
+     *
+     * @param  slotValues the value of each variable, indexed by slot
+     * @return the arithmetic result of the expression
+     */
+    public float evaluate(final float... slotValues) throws IllegalStateException {
+        return program.evaluate(slotValues);
+    }
+
+    /**
+     * Returns the compiled form of the expression.
+     *
+     * @return the expression's PostfixProgram
+     */
+    public PostfixProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Returns the expression's text, as it was prepared.
+     *
+     * @return the expression
+     */
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,80 @@
+package org.kmfahey.jcalculator;
+
+import java.math.BigDecimal;
+
+/**
+ * Formats the results of evaluating expressions for display. A result with no
+ * fractional part is shown as an integer, and any other result as its type's
+ * toString() renders it. The calculator's display and the batch evaluator both
+ * format results here, so a given expression reads the same in either.
+ */
+public final class ResultFormatter {
+
+    /** The magnitude below which an integral double result is shown in
+     *  full. */
+    private static final double LARGEST_PLAIN_DOUBLE = 1e15;
+
+    /** The power of ten at and beyond which a BigDecimal result's leading
+     *  digit puts it in scientific notation. */
+    private static final int PLAIN_DECIMAL_DIGITS = 40;
+
+    private ResultFormatter() { }
+
+    /**
+     * Formats an expression's result. A result with no fractional part is
+     * narrowed to an int, as the calculator has always shown it, so a result
+     * beyond the range of an int is shown as Integer.MAX_VALUE or
+     * Integer.MIN_VALUE.
+     *
+     * @param  expressionValue the result of evaluating an expression
+     * @return the result, formatted for display
+     */
+    public static String format(final float expressionValue) {
+        if (Math.floor(expressionValue) == expressionValue) {
+            return String.valueOf((int) expressionValue);
+        } else {
+            return String.valueOf(expressionValue);
+        }
+    }
+
+    /**
+     * Formats an expression's result computed in double. A result with no
+     * fractional part and a magnitude below 10^15 is shown as an integer, and
+     * any other result as Double.toString() renders it, which for larger
+     * integers is in scientific notation. Unlike a float result, it's never
+     * narrowed to an int.
+     *
+     * @param  expressionValue the result of evaluating an expression
+     * @return the result, formatted for display
+     */
+    public static String format(final double expressionValue) {
+        if (Math.floor(expressionValue) == expressionValue && Math.abs(expressionValue) < LARGEST_PLAIN_DOUBLE) {
+            return String.valueOf((long) expressionValue);
+        } else {
+            return String.valueOf(expressionValue);
+        }
+    }
+
+    /**
+     * Formats an expression's result computed in BigDecimal, without trailing
+     * zeros after its decimal point. It's shown in plain notation unless its
+     * magnitude is 10^40 or more, or below 10^-39, and then in the scientific
+     * notation BigDecimal.toString() uses.
+     *
+     * @param  expressionValue the result of evaluating an expression
+     * @return the result, formatted for display
+     */
+    public static String format(final BigDecimal expressionValue) {
+        if (expressionValue == null) { throw new IllegalArgumentException("argument 'expressionValue' was null"); }
+        if (expressionValue.signum() == 0) {
+            return "0";
+        }
+        BigDecimal strippedValue = expressionValue.stripTrailingZeros();
+        int leadingDigitExponent = strippedValue.precision() - strippedValue.scale() - 1;
+        if (Math.abs(leadingDigitExponent) < PLAIN_DECIMAL_DIGITS) {
+            return strippedValue.toPlainString();
+        } else {
+            return strippedValue.toString();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package org.kmfahey.jcalculator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Implements a compact, versioned binary encoding of a parsed expression, for
+ * storing parse results outside the process, and an expression that evaluates
+ * straight out of the encoded bytes. serialize() encodes the PostfixProgram a
+ * parse tree compiles to; deserialize() checks the encoding once and wraps the
+ * instructions where they lie in the ByteBuffer, without copying or decoding
+ * them into objects, so loading a stored expression costs far less than
+ * parsing its text again.
+ *
+ * An encoded expression is laid out as follows. A varint is an unsigned
+ * LEB128 integer, seven bits to a byte, least significant group first.
+ *
+ *   the magic bytes 'J', 'C', 'X', then the format version, 1
+ *   a varint: the program's maximum stack depth
+ *   a varint: the number of temporaries its STORE and LOAD instructions use
+ *   a varint: the number of variables, then each variable's name, in slot
+ *       order, as a varint byte length and that many bytes of UTF-8
+ *   a varint: the byte length of the instructions, then the instructions
+ *
+ * Each instruction is its opcode from Opcodes, in a byte. A CONSTANT is
+ * followed by its value as a raw big-endian IEEE 754 double and then as a
+ * float, since the float evaluate() reads isn't always the double narrowed;
+ * a VARIABLE, STORE or LOAD by its slot or temporary as a varint. Operators
+ * have no operand, since their operands are the values on the stack, so a
+ * tree's child layout is implicit in the postfix order. Only the built-in
+ * operators have instructions, so an expression using one defined in an
+ * OperatorRegistry can't be serialized.
+ *
+ * A SerializedExpression evaluates to exactly what the PostfixProgram it was
+ * serialized from does. The ByteBuffer it was deserialized from mustn't be
+ * modified while it's in use.
+ */
+public final class SerializedExpression {
+
+    /** The version of the encoding serialize() writes, and the only one
+     *  deserialize() reads. */
+    public static final int FORMAT_VERSION = 1;
+
+    /* The bytes every encoded expression begins with. */
+    private static final byte[] MAGIC = {'J', 'C', 'X'};
+
+    /** The program's instructions, as a slice of the buffer it was
+     *  deserialized from. */
+    private final ByteBuffer instructions;
+
+    /** The number of instructions. */
+    private final int length;
+
+    /** The greatest number of values the program holds on the operand stack
+     *  at once. */
+    private final int maxStackDepth;
+
+    /** The number of temporaries the STORE and LOAD instructions use. */
+    private final int temporaryCount;
+
+    /** The name of the variable bound to each slot, indexed by slot. */
+    private final String[] variableNames;
+
+    /* Constructs a SerializedExpression from its already-checked parts. */
+    private SerializedExpression(final ByteBuffer instructionsVal, final int lengthVal, final int maxStackDepthVal,
+                                 final int temporaryCountVal, final String[] variableNamesVal) {
+        instructions = instructionsVal;
+        length = lengthVal;
+        maxStackDepth = maxStackDepthVal;
+        temporaryCount = temporaryCountVal;
+        variableNames = variableNamesVal;
+    }
+
+    /**
+     * Serializes a parse tree, by compiling it into a PostfixProgram and
+     * serializing that.
+     *
+     * @param  root the root of the parse tree to serialize
+     * @return the encoded expression
+     */
+    public static byte[] serialize(final ParseTreeNode root) {
+        return serialize(PostfixProgram.compile(root));
+    }
+
+    /**
+     * Serializes a PostfixProgram.
+     *
+     * @param  program the program to serialize
+     * @return the encoded expression
+     */
+    public static byte[] serialize(final PostfixProgram program) {
+        if (program == null) { throw new IllegalArgumentException("argument 'program' was null"); }
+        Writer body = new Writer();
+        for (int index = 0; index < program.length(); index++) {
+            byte opcode = program.opcodeAt(index);
+            body.writeByte(opcode);
+            if (opcode == Opcodes.CONSTANT) {
+                body.writeDouble(program.constantAt(index));
+                body.writeFloat(program.floatConstantAt(index));
+            } else if (opcode == Opcodes.VARIABLE) {
+                body.writeVarint(program.slotAt(index));
+            } else if (opcode == Opcodes.STORE || opcode == Opcodes.LOAD) {
+                body.writeVarint(program.temporaryAt(index));
+            }
+        }
+        Writer writer = new Writer();
+        writer.writeBytes(MAGIC, MAGIC.length);
+        writer.writeByte((byte) FORMAT_VERSION);
+        writer.writeVarint(program.maxStackDepth());
+        writer.writeVarint(program.temporaryCount());
+        writer.writeVarint(program.variableCount());
+        for (int slot = 0; slot < program.variableCount(); slot++) {
+            byte[] name = program.variableName(slot).getBytes(StandardCharsets.UTF_8);
+            writer.writeVarint(name.length);
+            writer.writeBytes(name, name.length);
+        }
+        writer.writeVarint(body.size);
+        writer.writeBytes(body.bytes, body.size);
+        return Arrays.copyOf(writer.bytes, writer.size);
+    }
+
+    /**
+     * Deserializes an expression from a ByteBuffer, reading from its position
+     * and leaving its position after the expression, so several expressions
+     * can be stored one after another in the same buffer. The encoding is
+     * checked in full, so the expression can't fail to evaluate for any reason
+     * the PostfixProgram it was serialized from wouldn't.
+     *
+     * @param  buffer the buffer to read the expression from
+     * @return the expression
+     */
+    public static SerializedExpression deserialize(final ByteBuffer buffer) {
+        if (buffer == null) { throw new IllegalArgumentException("argument 'buffer' was null"); }
+        Reader reader = new Reader(buffer);
+        for (byte magicByte : MAGIC) {
+            if (reader.readByte() != magicByte) {
+                throw new IllegalArgumentException("buffer doesn't hold a serialized expression");
+            }
+        }
+        int version = reader.readByte() & 0xFF;
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("serialized expression format version " + version
+                                               + " isn't supported");
+        }
+        int maxStackDepth = reader.readVarint();
+        int temporaryCount = reader.readVarint();
+        /* Each variable name takes at least a byte, so a count the buffer
+         * can't hold is rejected before an array is made for it. */
+        int variableCount = reader.readVarint();
+        reader.require(variableCount);
+        String[] variableNames = new String[variableCount];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            int nameLength = reader.readVarint();
+            variableNames[slot] = new String(reader.readBytes(nameLength), StandardCharsets.UTF_8);
+        }
+        int instructionsLength = reader.readVarint();
+        int instructionsStart = reader.position;
+        reader.require(instructionsLength);
+        ByteBuffer instructions = buffer.slice(instructionsStart, instructionsLength).order(ByteOrder.BIG_ENDIAN);
+        int length = check(new Reader(instructions), maxStackDepth, temporaryCount, variableNames.length);
+        buffer.position(instructionsStart + instructionsLength);
+        return new SerializedExpression(instructions, length, maxStackDepth, temporaryCount, variableNames);
+    }
+
+    /* Checks that a run of instructions is a well-formed program: that every
+     * opcode and operand is valid, that no instruction pops more values than
+     * the stack holds, that the stack reaches exactly the stated depth, that
+     * every LOAD follows the STORE of its temporary, and that the program
+     * leaves one value. Returns the number of instructions. */
+    private static int check(final Reader reader, final int maxStackDepth, final int temporaryCount,
+                             final int variableCount) {
+        /* Each temporary's STORE takes two bytes at least. */
+        if (temporaryCount > reader.buffer.limit() / 2) {
+            throw new IllegalArgumentException("serialized expression misuses temporary " + temporaryCount);
+        }
+        boolean[] stored = new boolean[temporaryCount];
+        int stackDepth = 0;
+        int reachedStackDepth = 0;
+        int length = 0;
+        while (reader.position < reader.buffer.limit()) {
+            byte opcode = reader.readByte();
+            int popCount = 0;
+            if (opcode == Opcodes.CONSTANT) {
+                reader.readDouble();
+                reader.readFloat();
+            } else if (opcode == Opcodes.VARIABLE) {
+                int slot = reader.readVarint();
+                if (slot >= variableCount) {
+                    throw new IllegalArgumentException("serialized expression reads unbound slot " + slot);
+                }
+            } else if (opcode == Opcodes.STORE || opcode == Opcodes.LOAD) {
+                int temporary = reader.readVarint();
+                if (temporary >= temporaryCount || (opcode == Opcodes.STORE) == stored[temporary]) {
+                    throw new IllegalArgumentException("serialized expression misuses temporary " + temporary);
+                }
+                stored[temporary] = true;
+                popCount = (opcode == Opcodes.STORE) ? 1 : 0;
+            } else if (opcode > Opcodes.CONSTANT && opcode <= Opcodes.SQUARE_ROOT) {
+                popCount = Opcodes.isUnary(opcode) ? 1 : 2;
+            } else {
+                throw new IllegalArgumentException("serialized expression has unknown opcode " + opcode);
+            }
+            /* Every instruction leaves one value on top of the stack, whether
+             * it pushes one or replaces its operands with one. */
+            if (stackDepth < popCount) {
+                throw new IllegalArgumentException("serialized expression underflows its stack");
+            }
+            stackDepth += 1 - popCount;
+            reachedStackDepth = Math.max(reachedStackDepth, stackDepth);
+            length++;
+        }
+        if (reachedStackDepth != maxStackDepth) {
+            throw new IllegalArgumentException("serialized expression's stack depth isn't " + maxStackDepth);
+        }
+        if (stackDepth != 1) {
+            throw new IllegalArgumentException("serialized expression leaves " + stackDepth + " values");
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of instructions in the expression's program.
+     *
+     * @return the number of instructions
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the number of distinct variables in the expression.
+     *
+     * @return the number of variables, and so of slots
+     */
+    public int variableCount() {
+        return variableNames.length;
+    }
+
+    /**
+     * Returns the name of the variable bound to a slot.
+     *
+     * @param  slot a slot, from 0 to variableCount() - 1
+     * @return the variable's name
+     */
+    public String variableName(final int slot) {
+        return variableNames[slot];
+    }
+
+    /**
+     * Evaluates the expression, returning a float value. Throws an
+     * IllegalStateException if the expression has variables, since they have
+     * no values to read.
+     *
+     * @return the arithmetic result of the calculation
+     */
+    public float evaluate() throws IllegalStateException {
+        if (variableNames.length > 0) {
+            throw new IllegalStateException("variable '" + variableNames[0] + "' is unbound");
+        }
+        return evaluate(new float[0]);
+    }
+
+    /**
+     * Evaluates the expression with each variable bound to the value in its
+     * slot, running its instructions where they lie in the buffer.
+     *
+     * @param  slotValues the value of each variable, indexed by slot
+     * @return the arithmetic result of the calculation
+     */
+    public float evaluate(final float[] slotValues) throws IllegalStateException {
+        if (slotValues.length < variableNames.length) {
+            throw new IllegalArgumentException("expected " + variableNames.length + " slot values, got "
+                                               + slotValues.length);
+        }
+        double[] stack = new double[maxStackDepth];
+        double[] temporaries = (temporaryCount > 0) ? new double[temporaryCount] : null;
+        int stackDepth = 0;
+        int position = 0;
+        int limit = instructions.limit();
+        while (position < limit) {
+            byte opcode = instructions.get(position++);
+            if (opcode == Opcodes.CONSTANT) {
+                stack[stackDepth++] = instructions.getFloat(position + Double.BYTES);
+                position += Double.BYTES + Float.BYTES;
+            } else if (opcode >= Opcodes.VARIABLE) {
+                /* VARIABLE, STORE and LOAD are the opcodes with a varint
+                 * operand. */
+                int operand = 0;
+                byte operandByte;
+                int shift = 0;
+                do {
+                    operandByte = instructions.get(position++);
+                    operand |= (operandByte & 0x7F) << shift;
+                    shift += 7;
+                } while (operandByte < 0);
+                if (opcode == Opcodes.VARIABLE) {
+                    stack[stackDepth++] = slotValues[operand];
+                } else if (opcode == Opcodes.STORE) {
+                    temporaries[operand] = stack[stackDepth - 1];
+                } else {
+                    stack[stackDepth++] = temporaries[operand];
+                }
+            } else if (Opcodes.isUnary(opcode)) {
+                stack[stackDepth - 1] = Opcodes.apply(opcode, 0F, (float) stack[stackDepth - 1]);
+            } else {
+                stackDepth--;
+                stack[stackDepth - 1] = Opcodes.apply(opcode, (float) stack[stackDepth - 1], (float) stack[stackDepth]);
+            }
+        }
+        return (float) stack[0];
+    }
+
+    /**
+     * Decodes the expression into a PostfixProgram, copying its instructions
+     * out of the buffer.
+     *
+     * @return a PostfixProgram equal to the one the expression was serialized
+     *         from
+     */
+    public PostfixProgram toProgram() {
+        byte[] code = new byte[length];
+        int[] operands = new int[length];
+        double[] constants = new double[length];
+        float[] floatConstants = new float[length];
+        int constantCount = 0;
+        Reader reader = new Reader(instructions);
+        for (int index = 0; index < length; index++) {
+            code[index] = reader.readByte();
+            if (code[index] == Opcodes.CONSTANT) {
+                constants[constantCount] = reader.readDouble();
+                floatConstants[constantCount] = reader.readFloat();
+                operands[index] = constantCount++;
+            } else if (code[index] >= Opcodes.VARIABLE) {
+                operands[index] = reader.readVarint();
+            }
+        }
+        return new PostfixProgram(code, operands, Arrays.copyOf(constants, constantCount),
+                                  Arrays.copyOf(floatConstants, constantCount), maxStackDepth, variableNames.clone(),
+                                  temporaryCount);
+    }
+
+    /**
+     * Decodes the expression into the parse tree it was serialized from, as
+     * PostfixProgram.toParseTree() does.
+     *
+     * @return the root of the expression's parse tree
+     */
+    public ParseTreeNode toParseTree() {
+        return toProgram().toParseTree();
+    }
+
+    /* Reads the parts of an encoding from a ByteBuffer at a position of its
+     * own, throwing an IllegalArgumentException if the buffer ends first. */
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        Reader(final ByteBuffer bufferVal) {
+            buffer = bufferVal;
+            position = bufferVal.position();
+        }
+
+        void require(final int byteCount) {
+            if (byteCount < 0 || buffer.limit() - position < byteCount) {
+                throw new IllegalArgumentException("serialized expression is truncated");
+            }
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer.get(position++);
+        }
+
+        /* Reads a double; only the instructions have any, and they're read
+         * through a big-endian slice. */
+        double readDouble() {
+            require(Double.BYTES);
+            double value = buffer.getDouble(position);
+            position += Double.BYTES;
+            return value;
+        }
+
+        /* Reads a float, as readDouble() reads a double. */
+        float readFloat() {
+            require(Float.BYTES);
+            float value = buffer.getFloat(position);
+            position += Float.BYTES;
+            return value;
+        }
+
+        byte[] readBytes(final int byteCount) {
+            require(byteCount);
+            byte[] bytes = new byte[byteCount];
+            buffer.get(position, bytes);
+            position += byteCount;
+            return bytes;
+        }
+
+        /* Reads a varint, which must fit in a nonnegative int. */
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte thisByte = readByte();
+                /* The fifth byte holds the top four bits, and ends the varint. */
+                if (shift == 28 && (thisByte & 0xF8) != 0) {
+                    break;
+                }
+                value |= (thisByte & 0x7F) << shift;
+                if (thisByte >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("serialized expression has an oversized varint");
+        }
+    }
+
+    /* Accumulates an encoding into a growable byte array. */
+    private static final class Writer {
+
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        void writeByte(final byte value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = value;
+        }
+
+        void writeBytes(final byte[] values, final int count) {
+            if (bytes.length - size < count) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + count));
+            }
+            System.arraycopy(values, 0, bytes, size, count);
+            size += count;
+        }
+
+        /* Writes a double's IEEE 754 bits, most significant byte first. */
+        void writeDouble(final double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((byte) (bits >>> shift));
+            }
+        }
+
+        /* Writes a float's IEEE 754 bits, most significant byte first. */
+        void writeFloat(final float value) {
+            int bits = Float.floatToRawIntBits(value);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte((byte) (bits >>> shift));
+            }
+        }
+
+        /* Writes a nonnegative int as a varint. */
+        void writeVarint(final int value) {
+            int remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                writeByte((byte) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            writeByte((byte) remaining);
+        }
+    }
+}
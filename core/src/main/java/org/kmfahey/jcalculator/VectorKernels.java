@@ -0,0 +1,82 @@
+package org.kmfahey.jcalculator;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implements BatchEvaluator's kernels with the incubating Vector API, so that
+ * "+", "-", "×" and "÷" run across as many lanes as the CPU's preferred vector
+ * width allows. The tail of each column that doesn't fill a whole vector runs
+ * as a plain loop.
+ *
+ * This class is only loaded if the jdk.incubator.vector module is resolved at
+ * run time (for example with --add-modules jdk.incubator.vector); otherwise
+ * BatchEvaluator uses BatchKernels.Scalar.
+ */
+final class VectorKernels implements BatchKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    public void add(final float[] left, final float[] right, final int length) {
+        int index = 0;
+        for (int bound = SPECIES.loopBound(length); index < bound; index += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, left, index).add(FloatVector.fromArray(SPECIES, right, index))
+                       .intoArray(left, index);
+        }
+        for (; index < length; index++) {
+            left[index] += right[index];
+        }
+    }
+
+    public void subtract(final float[] left, final float[] right, final int length) {
+        int index = 0;
+        for (int bound = SPECIES.loopBound(length); index < bound; index += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, left, index).sub(FloatVector.fromArray(SPECIES, right, index))
+                       .intoArray(left, index);
+        }
+        for (; index < length; index++) {
+            left[index] -= right[index];
+        }
+    }
+
+    public void multiply(final float[] left, final float[] right, final int length) {
+        int index = 0;
+        for (int bound = SPECIES.loopBound(length); index < bound; index += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, left, index).mul(FloatVector.fromArray(SPECIES, right, index))
+                       .intoArray(left, index);
+        }
+        for (; index < length; index++) {
+            left[index] *= right[index];
+        }
+    }
+
+    public void divide(final float[] left, final float[] right, final int length, final boolean[] errorMask,
+                       final int firstRow) {
+        int index = 0;
+        for (int bound = SPECIES.loopBound(length); index < bound; index += SPECIES.length()) {
+            FloatVector divisors = FloatVector.fromArray(SPECIES, right, index);
+            FloatVector quotients = FloatVector.fromArray(SPECIES, left, index).div(divisors);
+            VectorMask<Float> zeroLanes = divisors.eq(0F);
+            /* Lanes dividing by zero are rare, so they're flagged with a plain
+             * loop over the vector only when there are any. */
+            if (zeroLanes.anyTrue()) {
+                quotients = quotients.blend(Float.NaN, zeroLanes);
+                for (int lane = 0; lane < SPECIES.length(); lane++) {
+                    if (right[index + lane] == 0) {
+                        errorMask[firstRow + index + lane] = true;
+                    }
+                }
+            }
+            quotients.intoArray(left, index);
+        }
+        for (; index < length; index++) {
+            if (right[index] == 0) {
+                left[index] = Float.NaN;
+                errorMask[firstRow + index] = true;
+            } else {
+                left[index] /= right[index];
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.kmfahey.jcalculator.junit;
+
+import java.util.Arrays;
+
+/* The sample expressions the tests of each alternative representation of a
+ * parse tree check against the tree itself. */
+final class ExpressionFixtures {
+
+    /* Covers every built-in operator, nested parens, right-associative "^",
+     * and numbers with fractional parts. */
+    static final String[] EXPRESSIONS = {
+        "1+1", "1+2+3+(4+5)", "1+2×3+(4×5+6)", "-1+2×3+(4×5-√4)+2^2^2", "2.5÷4-(-3.75)", "1.5×√2+0.1"
+    };
+
+    private ExpressionFixtures() { }
+
+    /* Returns the sample expressions followed by some of a test's own. */
+    static String[] expressionsWith(final String... extraExpressions) {
+        String[] expressions = Arrays.copyOf(EXPRESSIONS, EXPRESSIONS.length + extraExpressions.length);
+        System.arraycopy(extraExpressions, 0, expressions, EXPRESSIONS.length, extraExpressions.length);
+        return expressions;
+    }
+}
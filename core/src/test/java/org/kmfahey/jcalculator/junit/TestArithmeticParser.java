@@ -0,0 +1,180 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.BatchCalculator;
+import org.kmfahey.jcalculator.CompiledExpression;
+import org.kmfahey.jcalculator.ExpressionOptimizer;
+import org.kmfahey.jcalculator.IncrementalExpression;
+import org.kmfahey.jcalculator.OperatorRegistry;
+import org.kmfahey.jcalculator.PackedParseTree;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+import org.kmfahey.jcalculator.SerializedExpression;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.EmptyStackException;
+
+public final class TestArithmeticParser extends TestCase {
+
+    public void testParseExpression1() throws ParseException, IllegalArgumentException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("1+1");
+        String parseTreeStr = parseTree.toString();
+        assertEquals("{ { 1 }, '+', { 1 } }", parseTreeStr);
+        assertEquals(2F, parseTree.evaluate());
+    }
+
+    public void testParseExpression2() throws ParseException, IllegalArgumentException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("1+2+3+(4+5)");
+        String parseTreeStr = parseTree.toString();
+        assertEquals("{ { { { 1 }, '+', { 2 } }, '+', { 3 } }, '+', { { 4 }, '+', { 5 } } }", parseTreeStr);
+        assertEquals(15F, parseTree.evaluate());
+    }
+
+    public void testParseExpression3() throws ParseException, IllegalArgumentException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("1+2×3+(4×5+6)");
+        String parseTreeStr = parseTree.toString();
+        assertEquals("{ { { 1 }, '+', { { 2 }, '×', { 3 } } }, '+', { { { 4 }, '×', { 5 } }, '+', { 6 } } }",
+                     parseTreeStr);
+        assertEquals(33F, parseTree.evaluate());
+    }
+
+    public void testParseExpression4() throws ParseException, IllegalArgumentException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("-1+2×3+(4×5-√4)+2^2^2");
+        String parseTreeStr = parseTree.toString();
+        assertEquals("{ { { { '-', { 1 } }, '+', { { 2 }, '×', { 3 } } }, '+', { { { 4 }, '×', { 5 } }, '-', { '√', "
+                     + "{ 4 } } } }, '+', { { 2 }, '^', { { 2 }, '^', { 2 } } } }", parseTreeStr);
+        assertEquals(39F, parseTree.evaluate());
+    }
+
+    public void testEvaluateDouble() throws ParseException, IllegalArgumentException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("0.1+0.2");
+        assertEquals(0.1F + 0.2F, parseTree.evaluate());
+        assertEquals(0.1 + 0.2, parseTree.evaluateDouble());
+        parseTree = ArithmeticParser.parseExpression("16777217×1.1^2");
+        assertEquals(16777217F * (float) Math.pow(1.1F, 2F), parseTree.evaluate());
+        assertEquals(16777217 * Math.pow(1.1, 2), parseTree.evaluateDouble());
+        assertEquals("{ { 16777216 }, '×', { { 1.1 }, '^', { 2 } } }", parseTree.toString());
+    }
+
+    public void testFloatMidpoint() throws ParseException, IllegalArgumentException {
+        /* The double nearest this number is exactly halfway between two
+         * floats, but the number itself is just under halfway, so narrowing
+         * the double would round up where Float.parseFloat() rounds down. */
+        String number = "1.00000017881393432617187499";
+        assertEquals(1.0000001788139343, Double.parseDouble(number));
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression(number + "+0");
+        assertEquals(Float.parseFloat(number), parseTree.evaluate());
+        assertEquals(Float.parseFloat(number), parseTree.getLeftChildFloat());
+        assertFalse(Float.parseFloat(number) == (float) parseTree.getLeftChildValue());
+        assertEquals(Float.parseFloat(number), PostfixProgram.compile(parseTree).evaluate());
+        assertEquals(Float.parseFloat(number), ArithmeticParser.compileExpression(number + "+0").evaluate());
+        assertEquals(Float.parseFloat(number), IncrementalExpression.of(number + "+0").parse().evaluate());
+        assertEquals(Float.parseFloat(number), ExpressionOptimizer.optimize(parseTree).evaluate());
+        assertEquals(Float.parseFloat(number), PackedParseTree.fromParseTree(parseTree).evaluate());
+        assertEquals(Float.parseFloat(number), CompiledExpression.compile(parseTree).evaluate());
+        assertEquals(parseTree, PostfixProgram.compile(parseTree).toParseTree());
+        SerializedExpression serialized =
+                SerializedExpression.deserialize(ByteBuffer.wrap(SerializedExpression.serialize(parseTree)));
+        assertEquals(Float.parseFloat(number), serialized.evaluate());
+        assertEquals(parseTree, serialized.toParseTree());
+        assertEquals("1.0000001", BatchCalculator.evaluateLine(number + "+0"));
+    }
+
+    public void testLongExpression() throws ParseException, IllegalArgumentException {
+        StringBuilder expression = new StringBuilder("0");
+        for (int index = 0; index < 200000; index++) {
+            expression.append("+1×2");
+        }
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression, false, OperatorRegistry.STANDARD);
+        assertEquals(400000F, PostfixProgram.compile(parseTree).evaluate());
+        assertEquals("{ { 1 }, '×', { 2 } }", parseTree.getRightChildNode().toString());
+    }
+
+    public void testErrorPrecedence() {
+        try {
+            ArithmeticParser.parseExpression("1)+2×");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertEquals("math expression cannot end with token '×'", exception.getMessage());
+        }
+        try {
+            ArithmeticParser.parseExpression("1)+2");
+            fail("ArithmeticParser did not throw exception given unbalanced parens");
+        } catch (ParseException exception) {
+            fail("ArithmeticParser threw a ParseException given unbalanced parens");
+        } catch (EmptyStackException exception) {
+            assertTrue(true);
+        }
+        try {
+            assertNull(ArithmeticParser.parseExpression("(1.2.3)"));
+            ArithmeticParser.parseExpression("1.2.3+1");
+            fail("ArithmeticParser did not throw exception given a malformed number");
+        } catch (ParseException exception) {
+            fail("ArithmeticParser threw a ParseException given a malformed number");
+        } catch (NumberFormatException exception) {
+            assertEquals("multiple points", exception.getMessage());
+        }
+    }
+
+    public void testInvalidExpression1() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("×3+(4×5-√4)+2^2^2");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression2() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("(4×5-√4)+2^2^2+3×");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression3() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("(4×5-4√2)+2^2^2+3");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression4() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("(4×5-√2)(3+2^2^2+3)");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression5() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("(4×+-√2)(3+2^2^2+3)");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression6() throws ParseException, IllegalArgumentException {
+        ArithmeticParser arithmeticParser = null;
+        try {
+            ArithmeticParser.parseExpression("(4×5+-√2)(3+2^^2+3)");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+}
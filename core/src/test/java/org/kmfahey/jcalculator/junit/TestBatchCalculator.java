@@ -0,0 +1,138 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.BatchCalculator;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+public final class TestBatchCalculator extends TestCase {
+
+    public void testEvaluateLine() {
+        assertEquals("2", BatchCalculator.evaluateLine("1+1"));
+        assertEquals("15", BatchCalculator.evaluateLine("1+2+3+(4+5)"));
+        assertEquals("4.375", BatchCalculator.evaluateLine("2.5÷4-(-3.75)"));
+        assertEquals("7", BatchCalculator.evaluateLine("7"));
+        assertEquals("0.5", BatchCalculator.evaluateLine(".5"));
+        assertEquals("7", BatchCalculator.evaluateLine("(7)"));
+        ByteBuffer bytes = ByteBuffer.wrap("(2.5)".getBytes(StandardCharsets.UTF_8));
+        assertEquals("2.5", BatchCalculator.evaluateLine(bytes, 0, bytes.limit()));
+    }
+
+    public void testErrors() {
+        assertEquals("error: divide by zero", BatchCalculator.evaluateLine("1÷0"));
+        assertEquals("error: math expression cannot end with token '+' at offset 2",
+                     BatchCalculator.evaluateLine("1+"));
+        assertEquals("error: malformed number in math expression", BatchCalculator.evaluateLine("1.2.3+1"));
+        assertEquals("error: math expression is empty", BatchCalculator.evaluateLine(""));
+        assertEquals("error: malformed math expression", BatchCalculator.evaluateLine("-"));
+        assertEquals("error: malformed math expression", BatchCalculator.evaluateLine("1)+2"));
+        assertEquals("error: malformed number in math expression", BatchCalculator.evaluateLine("(1.2.3)"));
+        assertEquals("error: math expression has an operand with no operator", BatchCalculator.evaluateLine("2(3)"));
+        assertEquals("error: math expression has an operand with no operator",
+                     BatchCalculator.evaluateLine("2(3+4)"));
+    }
+
+    public void testEvaluateLines() throws IOException {
+        StringWriter output = new StringWriter();
+        long errorCount = BatchCalculator.evaluateLines(new BufferedReader(new StringReader("1+1\r\n2×3\n1÷0\n2+√4")),
+                                                        output);
+        assertEquals("2\n6\nerror: divide by zero\n4\n", output.toString());
+        assertEquals(1, errorCount);
+    }
+
+    public void testParallelMatchesSequential() throws IOException {
+        String[] expressions = {"1+1", "1+2×3+(4×5+6)", "-1+2×3+(4×5-√4)+2^2^2", "1÷0", "1.5×√2+0.1", "1+", "1)",
+                                "(7)"};
+        StringBuilder input = new StringBuilder();
+        for (int index = 0; index < 30000; index++) {
+            input.append(expressions[index % expressions.length]).append('+').append(index).append('\n');
+        }
+        StringWriter sequentialOutput = new StringWriter();
+        long sequentialErrorCount = BatchCalculator.evaluateLines(
+            new BufferedReader(new StringReader(input.toString())), sequentialOutput);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            StringWriter parallelOutput = new StringWriter();
+            long parallelErrorCount = BatchCalculator.evaluateLines(
+                new BufferedReader(new StringReader(input.toString())), parallelOutput, pool);
+            assertEquals(sequentialOutput.toString(), parallelOutput.toString());
+            assertEquals(sequentialErrorCount, parallelErrorCount);
+            assertEquals(11250, parallelErrorCount);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testMappedFileMatchesStream() throws IOException {
+        String[] expressions = {"1+1", "1+2×3+(4×5+6)", "-1+2×3+(4×5-√4)+2^2^2", "1÷0", "2.5÷4-(-3.75)", "√4",
+                                "", "1.5×√2+0.1\r", "7", "1+", "-", "1)+2", "(7)", "(1.2.3)"};
+        StringBuilder input = new StringBuilder();
+        for (int index = 0; index < 42000; index++) {
+            input.append(expressions[index % expressions.length]).append('\n');
+        }
+        input.append("2÷3");
+        Path file = Files.createTempFile("expressions", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            Files.write(file, input.toString().getBytes(StandardCharsets.UTF_8));
+            StringWriter streamedOutput = new StringWriter();
+            long streamedErrorCount = BatchCalculator.evaluateLines(
+                new BufferedReader(new StringReader(input.toString())), streamedOutput);
+
+            StringWriter mappedOutput = new StringWriter();
+            assertEquals(streamedErrorCount, BatchCalculator.evaluateMappedFile(file, mappedOutput, null));
+            assertEquals(streamedOutput.toString(), mappedOutput.toString());
+
+            StringWriter parallelMappedOutput = new StringWriter();
+            assertEquals(streamedErrorCount, BatchCalculator.evaluateMappedFile(file, parallelMappedOutput, pool));
+            assertEquals(streamedOutput.toString(), parallelMappedOutput.toString());
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    public void testChannelMatchesStream() throws IOException {
+        String[] expressions = {"1+1", "1+2×3+(4×5+6)", "1÷0", "2.5÷4-(-3.75)", "", "1.5×√2+0.1\r", "1+", "(7)"};
+        StringBuilder input = new StringBuilder();
+        for (int index = 0; index < 150000; index++) {
+            input.append(expressions[index % expressions.length]).append('\n');
+            /* A line longer than a chunk, so the buffer it's read into has to
+             * grow before it holds a whole line. */
+            if (index == 75000) {
+                input.append("0.").append("0".repeat(3 << 20)).append("1\n");
+            }
+        }
+        input.append("2÷3");
+        byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+        StringWriter streamedOutput = new StringWriter();
+        long streamedErrorCount = BatchCalculator.evaluateLines(
+            new BufferedReader(new StringReader(input.toString())), streamedOutput);
+
+        StringWriter channelOutput = new StringWriter();
+        assertEquals(streamedErrorCount, BatchCalculator.evaluateChannel(
+            Channels.newChannel(new ByteArrayInputStream(bytes)), channelOutput, null));
+        assertEquals(streamedOutput.toString(), channelOutput.toString());
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            StringWriter parallelChannelOutput = new StringWriter();
+            assertEquals(streamedErrorCount, BatchCalculator.evaluateChannel(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), parallelChannelOutput, pool));
+            assertEquals(streamedOutput.toString(), parallelChannelOutput.toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
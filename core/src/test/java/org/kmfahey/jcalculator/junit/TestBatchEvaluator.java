@@ -0,0 +1,59 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.BatchEvaluator;
+import org.kmfahey.jcalculator.PreparedExpression;
+
+import java.text.ParseException;
+
+public final class TestBatchEvaluator extends TestCase {
+
+    private static final int ROW_COUNT = 2500;
+
+    public void testMatchesPreparedExpression() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("(a+1.5)×b-a÷b+√a^2-b");
+        float[][] columns = new float[2][ROW_COUNT];
+        for (int row = 0; row < ROW_COUNT; row++) {
+            columns[0][row] = row * 0.25F;
+            columns[1][row] = (row % 7) - 3;
+        }
+        float[] output = new float[ROW_COUNT];
+        boolean[] errorMask = new boolean[ROW_COUNT];
+        int errorCount = new BatchEvaluator(prepared).evaluate(columns, output, errorMask);
+
+        int expectedErrorCount = 0;
+        for (int row = 0; row < ROW_COUNT; row++) {
+            try {
+                float expected = prepared.evaluate(columns[0][row], columns[1][row]);
+                assertFalse("row " + row, errorMask[row]);
+                assertEquals("row " + row, expected, output[row]);
+            } catch (IllegalStateException exception) {
+                assertTrue("row " + row, errorMask[row]);
+                assertTrue("row " + row, Float.isNaN(output[row]));
+                expectedErrorCount++;
+            }
+        }
+        assertEquals(expectedErrorCount, errorCount);
+        assertTrue(errorCount > 0);
+    }
+
+    public void testDoubleColumns() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("x×2+y");
+        double[][] columns = {{1, 2, 3}, {0.5, 0.25, 0.125}};
+        double[] output = new double[3];
+        assertEquals(0, new BatchEvaluator(prepared).evaluate(columns, output, new boolean[3]));
+        assertEquals(2.5, output[0]);
+        assertEquals(4.25, output[1]);
+        assertEquals(6.125, output[2]);
+    }
+
+    public void testTooFewColumns() throws ParseException {
+        try {
+            new BatchEvaluator(PreparedExpression.prepare("x+y")).evaluate(new float[1][1], new float[1],
+                                                                             new boolean[1]);
+            fail("BatchEvaluator did not throw exception given too few columns");
+        } catch (IllegalArgumentException exception) {
+            assertTrue(true);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.CalculatorServer;
+import org.kmfahey.jcalculator.ParseCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public final class TestCalculatorServer extends TestCase {
+
+    private CalculatorServer server;
+
+    protected void setUp() throws IOException {
+        server = new CalculatorServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+                                      new ParseCache(64));
+        server.start();
+    }
+
+    protected void tearDown() throws IOException {
+        server.close();
+    }
+
+    public void testRequestResponse() throws IOException {
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerFor(socket);
+            OutputStream output = socket.getOutputStream();
+            output.write("1+1\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("2", reader.readLine());
+            output.write("2.5÷4-(-3.75)\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("4.375", reader.readLine());
+            output.write("1÷0\n1+\n\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("error: divide by zero", reader.readLine());
+            assertEquals("error: math expression cannot end with token '+' at offset 2", reader.readLine());
+            assertEquals("error: math expression is empty", reader.readLine());
+        }
+    }
+
+    public void testMalformedRequests() throws IOException {
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerFor(socket);
+            OutputStream output = socket.getOutputStream();
+            output.write("-\n1)+2\n(7)\n1+1\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("error: malformed math expression", reader.readLine());
+            assertEquals("error: malformed math expression", reader.readLine());
+            assertEquals("7", reader.readLine());
+            assertEquals("2", reader.readLine());
+        }
+        /* Connections are handed to the two event loops in turn, so both are
+         * still serving. */
+        for (int index = 0; index < 2; index++) {
+            try (Socket socket = connect()) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("2+2\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("4", readerFor(socket).readLine());
+            }
+        }
+    }
+
+    public void testPipelinedRequests() throws IOException {
+        StringBuilder requests = new StringBuilder();
+        for (int index = 0; index < 20000; index++) {
+            requests.append(index).append("×2+1\n");
+        }
+        requests.append("3×3");
+        Socket[] sockets = new Socket[3];
+        try {
+            for (int index = 0; index < sockets.length; index++) {
+                sockets[index] = connect();
+            }
+            for (Socket socket : sockets) {
+                Thread writer = new Thread(() -> {
+                    try {
+                        socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.UTF_8));
+                        socket.shutdownOutput();
+                    } catch (IOException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                });
+                writer.start();
+            }
+            for (Socket socket : sockets) {
+                BufferedReader reader = readerFor(socket);
+                for (int index = 0; index < 20000; index++) {
+                    assertEquals(String.valueOf(index * 2 + 1), reader.readLine());
+                }
+                assertEquals("9", reader.readLine());
+                assertNull(reader.readLine());
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+        assertEquals(3 * 20001, server.getLatencies().count());
+        ParseCache parseCache = server.getParseCache();
+        assertEquals(3 * 20001, parseCache.hitCount() + parseCache.missCount());
+        assertTrue(parseCache.evictionCount() > 0);
+    }
+
+    public void testStatistics() throws IOException {
+        try (Socket socket = connect()) {
+            BufferedReader reader = readerFor(socket);
+            socket.getOutputStream().write("1+1\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("2", reader.readLine());
+            socket.getOutputStream().write("#stats\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().startsWith("connections=1 requests: count=1 "));
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    private static BufferedReader readerFor(final Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,53 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.CompiledExpression;
+import org.kmfahey.jcalculator.OperatorRegistry;
+import org.kmfahey.jcalculator.ParseTreeNode;
+
+import java.text.ParseException;
+
+public final class TestCompiledExpression extends TestCase {
+
+    private static final String[] EXPRESSIONS = ExpressionFixtures.expressionsWith("0-0×-1");
+
+    public void testMatchesParseTree() throws ParseException {
+        for (String expression : EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            CompiledExpression compiledExpression = CompiledExpression.compile(parseTree);
+            assertFalse(expression, compiledExpression.isInterpreted());
+            assertEquals(expression, parseTree.evaluate(), compiledExpression.evaluate());
+        }
+    }
+
+    public void testFallsBackForLargeExpression() throws ParseException {
+        StringBuilder expression = new StringBuilder("1");
+        for (int index = 0; index < 5000; index++) {
+            expression.append("+1.5");
+        }
+        CompiledExpression compiledExpression = CompiledExpression.compile(
+                ArithmeticParser.parseExpression(expression.toString()));
+        assertTrue(compiledExpression.isInterpreted());
+        assertEquals(7501F, compiledExpression.evaluate());
+    }
+
+    public void testFallsBackForRegistryOperator() throws ParseException {
+        OperatorRegistry registry = OperatorRegistry.STANDARD.withFunction("ln", Math::log);
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("2×ln4+1", false, registry);
+        CompiledExpression compiledExpression = CompiledExpression.compile(parseTree);
+        assertTrue(compiledExpression.isInterpreted());
+        assertEquals(parseTree.evaluate(), compiledExpression.evaluate());
+    }
+
+    public void testDivideByZero() throws ParseException {
+        CompiledExpression compiledExpression = CompiledExpression.compile(
+                ArithmeticParser.parseExpression("1÷(2-2)"));
+        try {
+            compiledExpression.evaluate();
+            fail("CompiledExpression did not throw exception when dividing by zero");
+        } catch (IllegalStateException exception) {
+            assertTrue(true);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.BatchEvaluator;
+import org.kmfahey.jcalculator.CompiledExpression;
+import org.kmfahey.jcalculator.ExpressionInterner;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+import org.kmfahey.jcalculator.PreparedExpression;
+
+import java.text.ParseException;
+
+public final class TestExpressionInterner extends TestCase {
+
+    public void testEqualsAndHashCode() throws ParseException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("-1+2×3+(4×5-√4)+2^2^2");
+        ParseTreeNode sameTree = ArithmeticParser.parseExpression("-1+2×3+(4×5-√4)+2^2^2");
+        assertNotSame(parseTree, sameTree);
+        assertEquals(parseTree, sameTree);
+        assertEquals(parseTree.hashCode(), sameTree.hashCode());
+        assertFalse(parseTree.equals(ArithmeticParser.parseExpression("-1+2×3+(4×5-√4)+2^2^3")));
+        assertFalse(ArithmeticParser.parseExpression("1-0").equals(ArithmeticParser.parseExpression("1-(-0)")));
+        assertFalse(new ParseTreeNode("x").equals(new ParseTreeNode("y")));
+    }
+
+    public void testSharesEqualSubtrees() throws ParseException {
+        ParseTreeNode parseTree = new ExpressionInterner().intern(
+            ArithmeticParser.parseExpression("(a+b)^2×(a+b)", true));
+        assertSame(parseTree.getLeftChildNode().getLeftChildNode(), parseTree.getRightChildNode());
+
+        ExpressionInterner interner = new ExpressionInterner();
+        ParseTreeNode firstTree = interner.intern(ArithmeticParser.parseExpression("1+2×3"));
+        int size = interner.size();
+        ParseTreeNode secondTree = interner.intern(ArithmeticParser.parseExpression("1+2×3"));
+        assertSame(firstTree, secondTree);
+        assertEquals(size, interner.size());
+    }
+
+    public void testSharedSubtreeComputedOnce() throws ParseException {
+        String expression = "(1.5+√2)^2×(1.5+√2)-(1.5+√2)÷(3-√2)";
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+        ParseTreeNode internedTree = new ExpressionInterner().intern(parseTree);
+        PostfixProgram program = PostfixProgram.compile(parseTree);
+        PostfixProgram internedProgram = PostfixProgram.compile(internedTree);
+        assertTrue(internedProgram.length() < program.length());
+        assertEquals(parseTree.evaluate(), internedTree.evaluate());
+        assertEquals(parseTree.evaluate(), internedProgram.evaluate());
+
+        CompiledExpression compiledExpression = CompiledExpression.compile(internedTree);
+        assertFalse(compiledExpression.isInterpreted());
+        assertEquals(parseTree.evaluate(), compiledExpression.evaluate());
+    }
+
+    public void testPreparedExpressionWithSharedSubtree() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("(a+b)^2×(a+b)-√(a+b)÷b");
+        float[][] columns = {{1F, 2F, 3F, -4F}, {2F, 0F, 0.5F, 5F}};
+        float[] output = new float[4];
+        boolean[] errorMask = new boolean[4];
+        assertEquals(1, new BatchEvaluator(prepared).evaluate(columns, output, errorMask));
+        for (int row = 0; row < 4; row++) {
+            float a = columns[0][row];
+            float b = columns[1][row];
+            if (b == 0F) {
+                assertTrue(errorMask[row]);
+                continue;
+            }
+            float sum = a + b;
+            float expected = (float) Math.pow(sum, 2) * sum - (float) Math.sqrt(sum) / b;
+            assertEquals(expected, prepared.evaluate(a, b));
+            assertEquals(expected, output[row]);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.ExpressionOptimizer;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+
+import java.text.ParseException;
+
+public final class TestExpressionOptimizer extends TestCase {
+
+    public void testFoldsConstantTrees() throws ParseException {
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            ParseTreeNode optimized = ExpressionOptimizer.optimize(parseTree);
+            assertTrue(expression, optimized.isLeaf());
+            assertEquals(expression, parseTree.evaluate(), optimized.evaluate());
+        }
+    }
+
+    public void testFoldsConstantSubtrees() throws ParseException {
+        ParseTreeNode optimized = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression("x+(4×5-√4)", true));
+        assertEquals("{ { x }, '+', { 18 } }", optimized.toString());
+    }
+
+    public void testIdentities() throws ParseException {
+        String[][] cases = {{"x×1", "{ x }"}, {"1×x", "{ x }"}, {"x÷1", "{ x }"}, {"x^1", "{ x }"},
+                            {"x-0", "{ x }"}, {"-(-x)", "{ x }"}, {"x+(1-1)×1", "{ { x }, '+', { 0 } }"},
+                            {"(x+1)+0", "{ { x }, '+', { 1 } }"}, {"x×(2-1)", "{ x }"}};
+        for (String[] testCase : cases) {
+            ParseTreeNode optimized = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression(testCase[0], true));
+            assertEquals(testCase[0], testCase[1], optimized.toString());
+        }
+    }
+
+    public void testUnsafeRewritesNotMade() throws ParseException {
+        /* x+0 is -0 rather than x when x is -0, and x×0 is NaN rather than 0
+         * when x is NaN or infinite. */
+        ParseTreeNode sum = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression("x+0", true));
+        assertEquals("{ { x }, '+', { 0 } }", sum.toString());
+        ParseTreeNode product = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression("x×0", true));
+        assertEquals("{ { x }, '×', { 0 } }", product.toString());
+        float[] values = {-0F, Float.NaN, Float.POSITIVE_INFINITY, 2.5F};
+        for (float value : values) {
+            assertEquals(Float.floatToRawIntBits(value + 0F),
+                         Float.floatToRawIntBits(PostfixProgram.compile(sum).evaluate(new float[] {value})));
+        }
+    }
+
+    public void testDivideByZeroNotFolded() throws ParseException {
+        ParseTreeNode optimized = ExpressionOptimizer.optimize(ArithmeticParser.parseExpression("1+2÷(3-3)"));
+        assertEquals("{ { 1 }, '+', { { 2 }, '÷', { 0 } } }", optimized.toString());
+        try {
+            optimized.evaluate();
+            fail("optimized tree did not throw exception when dividing by zero");
+        } catch (IllegalStateException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testUnoptimizableTreeShared() throws ParseException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("(a+b)×c-√d", true);
+        assertSame(parseTree, ExpressionOptimizer.optimize(parseTree));
+    }
+}
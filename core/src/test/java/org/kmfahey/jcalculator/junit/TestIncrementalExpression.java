@@ -0,0 +1,79 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.IncrementalExpression;
+import org.kmfahey.jcalculator.ParseTreeNode;
+
+import java.text.ParseException;
+import java.util.Random;
+
+public final class TestIncrementalExpression extends TestCase {
+
+    public void testQueries() {
+        IncrementalExpression expression = IncrementalExpression.of("1÷((2+3.5");
+        assertEquals("1÷((2+3.5", expression.toString());
+        assertEquals(9, expression.length());
+        assertEquals('5', expression.lastChar());
+        assertEquals(2, expression.parenDepth());
+        assertEquals(3, expression.numberLength());
+        assertTrue(expression.numberHasPoint());
+        assertTrue(expression.startsWith("1÷"));
+        assertTrue(expression.contentEquals("1÷((2+3.5"));
+        assertFalse(expression.contentEquals("1÷((2+3.6"));
+
+        IncrementalExpression shorter = expression.removeLast().removeLast().removeLast();
+        assertEquals("1÷((2+", shorter.toString());
+        assertEquals(0, shorter.numberLength());
+        assertSame(shorter, shorter.append('7').removeLast());
+        assertSame(IncrementalExpression.EMPTY, IncrementalExpression.of("1").removeLast());
+    }
+
+    public void testParseMatchesArithmeticParser() throws ParseException {
+        String[] expressions = {"1+1", "1+2×3-4÷5", "-1+2×3+(4×5-√4)+2^2^2", "--1+-2×-√4", "2×-(-3)", "((1+1)+1)",
+                                "-2^2", "2^-3^2", "1-√√16"};
+        for (String text : expressions) {
+            assertEquals(ArithmeticParser.parseExpression(text), IncrementalExpression.of(text).parse());
+        }
+        assertNull(IncrementalExpression.of("42").parse());
+        assertNull(IncrementalExpression.of("(5)").parse());
+    }
+
+    public void testParseErrorsMatchArithmeticParser() {
+        String[] expressions = {"1+", "×2", "1+)", "(1+2", "1+2)", "(", "-", "1.2.3+1", "1+a", "", "2(3)", "(1)2+3"};
+        for (String text : expressions) {
+            assertEquals(text, describeParse(() -> ArithmeticParser.parseExpression(text)),
+                         describeParse(() -> IncrementalExpression.of(text).parse()));
+        }
+    }
+
+    public void testRandomExpressions() {
+        String alphabet = "0123456789.()+-×÷^√";
+        Random random = new Random(1);
+        for (int trial = 0; trial < 20000; trial++) {
+            StringBuilder text = new StringBuilder();
+            for (int index = random.nextInt(12); index > 0; index--) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String expected = describeParse(() -> ArithmeticParser.parseExpression(text.toString()));
+            assertEquals(text.toString(), expected, describeParse(() -> IncrementalExpression.of(text).parse()));
+            IncrementalExpression backedUp = IncrementalExpression.of(text + "×(").removeLast().removeLast();
+            assertEquals(text.toString(), expected, describeParse(backedUp::parse));
+        }
+    }
+
+    private interface Parse {
+        ParseTreeNode run() throws ParseException;
+    }
+
+    /* Renders the tree a parse returns, or the exception it throws. */
+    private static String describeParse(final Parse parse) {
+        try {
+            return String.valueOf(parse.run());
+        } catch (ParseException exception) {
+            return exception.getMessage() + " at offset " + exception.getErrorOffset();
+        } catch (RuntimeException exception) {
+            return exception.toString();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.BatchCalculator;
+import org.kmfahey.jcalculator.DecimalBackend;
+import org.kmfahey.jcalculator.NumberBackend;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.text.ParseException;
+
+public final class TestNumberBackend extends TestCase {
+
+    public void testFloatMatchesEvaluate() throws ParseException {
+        String[] expressions = {"1+2×3+(4×5+6)", "-1+2×3+(4×5-√4)+2^2^2", "1.5×√2+0.1", "0.1+0.2", "2^0.5÷3"};
+        for (String expression : expressions) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            assertEquals(Float.valueOf(parseTree.evaluate()), NumberBackend.FLOAT.evaluate(parseTree));
+            assertEquals(BatchCalculator.evaluateLine(expression), NumberBackend.FLOAT.evaluateAndFormat(parseTree));
+        }
+    }
+
+    public void testDoubleAndDecimal() throws ParseException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("0.1+0.2");
+        assertEquals(0.30000000000000004, NumberBackend.DOUBLE.evaluate(parseTree));
+        assertEquals("0.3", NumberBackend.forName("decimal").evaluateAndFormat(parseTree));
+        assertEquals("1267650600228229401496703205376",
+                     BatchCalculator.evaluateLine("2^100", NumberBackend.forName("decimal")));
+        assertEquals("1.2676506002282294E30", BatchCalculator.evaluateLine("2^100", NumberBackend.DOUBLE));
+        assertEquals("0.3333333333", BatchCalculator.evaluateLine("1÷3", NumberBackend.forName("decimal:10")));
+        assertEquals("0.1234567890123456789", BatchCalculator.evaluateLine("0.1234567890123456789",
+                                                                             NumberBackend.forName("decimal")));
+    }
+
+    public void testDecimalTakesTerminalsExactly() throws ParseException {
+        /* A number with more significant digits than a double holds keeps
+         * them inside an expression, as it does standing alone. */
+        NumberBackend<?> decimal = NumberBackend.forName("decimal");
+        assertEquals("123456789012345678901234567891",
+                     BatchCalculator.evaluateLine("123456789012345678901234567890+1", decimal));
+        assertEquals("0.2469135780246913578", BatchCalculator.evaluateLine("0.1234567890123456789×2", decimal));
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("2×(0.10000000000000000001+x)", true);
+        assertEquals("0.10000000000000000001", parseTree.getRightChildNode().getLeftChildText());
+        assertNull(PostfixProgram.compile(parseTree).toParseTree().getRightChildNode().getLeftChildText());
+        assertEquals(parseTree, PostfixProgram.compile(parseTree).toParseTree());
+    }
+
+    public void testDecimalPowerAndRoot() {
+        DecimalBackend backend = new DecimalBackend(new MathContext(40));
+        BigDecimal two = BigDecimal.valueOf(2);
+        assertDecimalEquals("1.414213562373095048801688724209698078570", backend.squareRoot(two));
+        assertDecimalEquals("1.414213562373095048801688724209698078570", backend.power(two, new BigDecimal("0.5")));
+        assertDecimalEquals("12157665459056928801", backend.power(BigDecimal.valueOf(3), BigDecimal.valueOf(40)));
+        assertDecimalEquals("0.0009765625", backend.power(two, BigDecimal.valueOf(-10)));
+        assertDecimalEquals("2.718280469319376883819799708454356392752",
+                            backend.power(new BigDecimal("1.000001"), new BigDecimal("1000000")));
+        assertDecimalEquals("2.718280469319376883819799708454356392752",
+                            backend.power(new BigDecimal("1.000001"), new BigDecimal("1000000.0")));
+        assertDecimalEquals("0.001", backend.power(new BigDecimal("1E-300"), new BigDecimal("0.01")));
+    }
+
+    public void testErrors() {
+        NumberBackend<?> decimal = NumberBackend.forName("decimal");
+        assertEquals("error: divide by zero", BatchCalculator.evaluateLine("1÷0", decimal));
+        assertEquals("error: fractional power of a negative number", BatchCalculator.evaluateLine("(-8)^0.5", decimal));
+        assertEquals("error: square root of a negative number", BatchCalculator.evaluateLine("2×√-4", decimal));
+        assertEquals("error: divide by zero", BatchCalculator.evaluateLine("0^-1", decimal));
+        assertEquals("error: result out of range", BatchCalculator.evaluateLine("10^10000000000", decimal));
+        assertEquals("error: divide by zero", BatchCalculator.evaluateLine("1÷0", NumberBackend.DOUBLE));
+        try {
+            NumberBackend.forName("decimal:0");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException exception) {
+            assertEquals("invalid precision in number backend 'decimal:0'", exception.getMessage());
+        }
+        try {
+            NumberBackend.forName("quad");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException exception) {
+            assertEquals("unknown number backend 'quad'", exception.getMessage());
+        }
+    }
+
+    private static void assertDecimalEquals(final String expected, final BigDecimal actual) {
+        assertEquals(expected, new BigDecimal(expected).compareTo(actual) == 0 ? expected : actual.toPlainString());
+    }
+}
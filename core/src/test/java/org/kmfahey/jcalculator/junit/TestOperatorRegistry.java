@@ -0,0 +1,85 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.Opcodes;
+import org.kmfahey.jcalculator.OperatorRegistry;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+
+import java.text.ParseException;
+
+public final class TestOperatorRegistry extends TestCase {
+
+    private static final OperatorRegistry REGISTRY = OperatorRegistry.STANDARD
+            .withBinaryOperator("%", 1, true, (left, right) -> left % right)
+            .withBinaryOperator("mod", 1, true, (left, right) -> left - right * Math.floor(left / right))
+            .withBinaryOperator("@", 0, false, (left, right) -> left - right)
+            .withFunction("sin", Math::sin)
+            .withFunction("ln", Math::log);
+
+    public void testBinaryOperators() throws ParseException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("7%4+1", false, REGISTRY);
+        assertEquals("{ { { 7 }, '%', { 4 } }, '+', { 1 } }", parseTree.toString());
+        assertEquals(4F, parseTree.evaluate());
+        parseTree = ArithmeticParser.parseExpression("2+-7mod4×3", false, REGISTRY);
+        assertEquals("{ { 2 }, '+', { { { '-', { 7 } }, 'mod', { 4 } }, '×', { 3 } } }", parseTree.toString());
+        assertEquals(5.0, parseTree.evaluateDouble());
+        parseTree = ArithmeticParser.parseExpression("2@3@2", false, REGISTRY);
+        assertEquals("{ { 2 }, '@', { { 3 }, '@', { 2 } } }", parseTree.toString());
+        assertEquals(1F, parseTree.evaluate());
+    }
+
+    public void testFunctions() throws ParseException {
+        ParseTreeNode parseTree = ArithmeticParser.parseExpression("2×ln2^2-sin(0)", false, REGISTRY);
+        assertEquals("{ { { 2 }, '×', { 'ln', { { 2 }, '^', { 2 } } } }, '-', { 'sin', { 0 } } }",
+                     parseTree.toString());
+        assertEquals(2 * Math.log(4), parseTree.evaluateDouble());
+        assertEquals(2F * (float) Math.log(4F), parseTree.evaluate());
+        parseTree = ArithmeticParser.parseExpression("-sin(x)+sinh", true, REGISTRY);
+        assertEquals("{ { '-', { 'sin', { x } } }, '+', { sinh } }", parseTree.toString());
+    }
+
+    public void testSyntaxErrors() {
+        String[][] cases = {
+            {"5%", "math expression cannot end with token '%'"},
+            {"mod5", "math expression cannot begin with token 'mod'"},
+            {"2sin(1)", "in math expression, token 'sin' cannot follow token '2'"},
+            {"ln×2", "in math expression, token '×' cannot follow token 'ln'"}
+        };
+        for (String[] testCase : cases) {
+            try {
+                ArithmeticParser.parseExpression(testCase[0], false, REGISTRY);
+                fail("ArithmeticParser did not throw exception given '" + testCase[0] + "'");
+            } catch (ParseException exception) {
+                assertEquals(testCase[1], exception.getMessage());
+            }
+        }
+    }
+
+    public void testDefinitions() throws ParseException {
+        assertNull(OperatorRegistry.STANDARD.operator(Opcodes.FIRST_USER_OPERATOR));
+        assertEquals("%", REGISTRY.operator(Opcodes.FIRST_USER_OPERATOR).symbol());
+        assertEquals("^", REGISTRY.operator(Opcodes.POWER).symbol());
+        String[][] cases = {
+            {"%", "operator '%' is already defined"},
+            {"+", "operator symbol '+' isn't a free character or a word"},
+            {"x1", "operator symbol 'x1' isn't a free character or a word"},
+            {"", "operator symbol '' isn't a free character or a word"}
+        };
+        for (String[] testCase : cases) {
+            try {
+                REGISTRY.withBinaryOperator(testCase[0], 1, true, (left, right) -> left);
+                fail("OperatorRegistry did not throw exception given '" + testCase[0] + "'");
+            } catch (IllegalArgumentException exception) {
+                assertEquals(testCase[1], exception.getMessage());
+            }
+        }
+        try {
+            PostfixProgram.compile(ArithmeticParser.parseExpression("7%4", false, REGISTRY));
+            fail("PostfixProgram did not throw exception given a user-defined operator");
+        } catch (IllegalArgumentException exception) {
+            assertEquals("operator '%' isn't built in", exception.getMessage());
+        }
+    }
+}
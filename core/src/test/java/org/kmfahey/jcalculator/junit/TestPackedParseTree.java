@@ -0,0 +1,35 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.PackedParseTree;
+import org.kmfahey.jcalculator.ParseTreeNode;
+
+import java.text.ParseException;
+
+public final class TestPackedParseTree extends TestCase {
+
+    public void testMatchesParseTree() throws ParseException {
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            PackedParseTree packedTree = PackedParseTree.fromParseTree(parseTree);
+            assertEquals(expression, parseTree.toString(), packedTree.toString());
+            assertEquals(expression, parseTree.evaluate(), packedTree.evaluate());
+        }
+    }
+
+    public void testSize() throws ParseException {
+        assertEquals(3, PackedParseTree.fromParseTree(ArithmeticParser.parseExpression("1+1")).size());
+        assertEquals(5, PackedParseTree.fromParseTree(ArithmeticParser.parseExpression("-1+√4")).size());
+    }
+
+    public void testDivideByZero() throws ParseException {
+        PackedParseTree packedTree = PackedParseTree.fromParseTree(ArithmeticParser.parseExpression("1÷(2-2)"));
+        try {
+            packedTree.evaluate();
+            fail("PackedParseTree did not throw exception when dividing by zero");
+        } catch (IllegalStateException exception) {
+            assertTrue(true);
+        }
+    }
+}
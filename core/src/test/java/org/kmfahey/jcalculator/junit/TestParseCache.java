@@ -0,0 +1,103 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.ParseCache;
+import org.kmfahey.jcalculator.ParseTreeNode;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class TestParseCache extends TestCase {
+
+    public void testHitsAndMisses() throws ParseException {
+        ParseCache cache = new ParseCache(16);
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = cache.parseExpression(expression);
+            assertEquals(ArithmeticParser.parseExpression(expression).toString(), parseTree.toString());
+            assertSame(parseTree, cache.parseExpression(expression));
+        }
+        assertEquals(ExpressionFixtures.EXPRESSIONS.length, cache.missCount());
+        assertEquals(ExpressionFixtures.EXPRESSIONS.length, cache.hitCount());
+        assertEquals(ExpressionFixtures.EXPRESSIONS.length, cache.size());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    public void testWhitespace() throws ParseException {
+        ParseCache cache = new ParseCache(8);
+        int parsedCount = 0;
+        for (String expression : new String[] {"1 2+3", "1+2×3", " 1 + 2\t× 3 ", "1.5 ×2", "√ 4"}) {
+            String expected;
+            try {
+                expected = String.valueOf(ArithmeticParser.parseExpression(expression));
+                parsedCount++;
+            } catch (ParseException exception) {
+                expected = exception.getMessage() + " at " + exception.getErrorOffset();
+            }
+            String actual;
+            try {
+                actual = String.valueOf(cache.parseExpression(expression));
+            } catch (ParseException exception) {
+                actual = exception.getMessage() + " at " + exception.getErrorOffset();
+            }
+            assertEquals("'" + expression + "'", expected, actual);
+        }
+        assertEquals(parsedCount, cache.size());
+    }
+
+    public void testEviction() throws ParseException {
+        ParseCache cache = new ParseCache(10);
+        ParseTreeNode hotTree = cache.parseExpression("1+1");
+        for (int index = 2; index < 100; index++) {
+            assertSame(hotTree, cache.parseExpression("1+1"));
+            cache.parseExpression("1+" + index);
+            assertTrue(cache.size() <= 10);
+        }
+        assertEquals(99 - 10, cache.evictionCount());
+        /* The expression that was reused throughout was promoted rather than
+         * evicted. */
+        long missCount = cache.missCount();
+        assertSame(hotTree, cache.parseExpression("1+1"));
+        assertEquals(missCount, cache.missCount());
+    }
+
+    public void testInvalidExpressionNotCached() {
+        ParseCache cache = new ParseCache(4);
+        try {
+            cache.parseExpression("1+");
+            fail("ParseCache did not throw exception given '1+'");
+        } catch (ParseException exception) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final ParseCache cache = new ParseCache(64);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final int seed = thread;
+                futures.add(executor.submit(() -> {
+                    for (int index = 0; index < 20000; index++) {
+                        String expression = "1+" + ((index * 31 + seed) % 200);
+                        assertEquals(ArithmeticParser.parseExpression(expression).evaluate(),
+                                     cache.parseExpression(expression).evaluate());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(80000, cache.hitCount() + cache.missCount());
+        assertTrue(cache.evictionCount() <= cache.missCount() - cache.size());
+    }
+}
@@ -0,0 +1,85 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+
+import java.text.ParseException;
+import java.util.EmptyStackException;
+
+public final class TestPostfixProgram extends TestCase {
+
+    public void testMatchesParseTree() throws ParseException {
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            assertEquals(expression, parseTree.evaluate(), PostfixProgram.compile(parseTree).evaluate());
+        }
+    }
+
+    public void testStackDepth() throws ParseException {
+        PostfixProgram program = PostfixProgram.compile(ArithmeticParser.parseExpression("1+2+3+(4+5)"));
+        assertEquals(9, program.length());
+        assertEquals(3, program.maxStackDepth());
+    }
+
+    public void testDeepExpression() throws ParseException {
+        StringBuilder expression = new StringBuilder("2");
+        for (int index = 0; index < 20000; index++) {
+            expression.append("^1");
+        }
+        assertEquals(2F, PostfixProgram.compile(ArithmeticParser.parseExpression(expression.toString())).evaluate());
+    }
+
+    public void testDivideByZero() throws ParseException {
+        PostfixProgram program = PostfixProgram.compile(ArithmeticParser.parseExpression("1÷(2-2)"));
+        try {
+            program.evaluate();
+            fail("PostfixProgram did not throw exception when dividing by zero");
+        } catch (IllegalStateException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testCompileExpression() throws ParseException {
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            PostfixProgram program = ArithmeticParser.compileExpression(expression);
+            assertEquals(expression, PostfixProgram.compile(parseTree).length(), program.length());
+            assertEquals(expression, parseTree.evaluate(), program.evaluate());
+            assertEquals(expression, parseTree, program.toParseTree());
+        }
+        PostfixProgram program = ArithmeticParser.compileExpression("x×(y+x)-√z", true);
+        assertEquals(3, program.variableCount());
+        assertEquals(ArithmeticParser.parseExpression("x×(y+x)-√z", true), program.toParseTree());
+        assertEquals(7F, program.evaluate(new float[] {2F, 3F, 9F}));
+        program = ArithmeticParser.compileExpression("(2.5)");
+        assertEquals(2.5F, program.evaluate());
+        assertEquals("{ 2.5 }", program.toParseTree().toString());
+    }
+
+    public void testCompileExpressionErrors() {
+        try {
+            ArithmeticParser.compileExpression("1)+2×");
+            fail("ArithmeticParser did not throw exception given invalid input");
+        } catch (ParseException exception) {
+            assertEquals("math expression cannot end with token '×'", exception.getMessage());
+        }
+        try {
+            ArithmeticParser.compileExpression("1)+2");
+            fail("ArithmeticParser did not throw exception given unbalanced parens");
+        } catch (ParseException exception) {
+            fail("ArithmeticParser threw a ParseException given unbalanced parens");
+        } catch (EmptyStackException exception) {
+            assertTrue(true);
+        }
+        try {
+            ArithmeticParser.compileExpression("(1.2.3)");
+            fail("ArithmeticParser did not throw exception given a malformed number");
+        } catch (ParseException exception) {
+            fail("ArithmeticParser threw a ParseException given a malformed number");
+        } catch (NumberFormatException exception) {
+            assertEquals("multiple points", exception.getMessage());
+        }
+    }
+}
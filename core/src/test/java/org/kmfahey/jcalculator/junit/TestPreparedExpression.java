@@ -0,0 +1,64 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.PreparedExpression;
+
+import java.text.ParseException;
+
+public final class TestPreparedExpression extends TestCase {
+
+    public void testEvaluate() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("(rate+1)×x-x^2÷√base_2");
+        assertEquals(3, prepared.variableCount());
+        assertEquals(0, prepared.slotOf("rate"));
+        assertEquals(1, prepared.slotOf("x"));
+        assertEquals(2, prepared.slotOf("base_2"));
+        assertEquals(-1, prepared.slotOf("y"));
+        assertEquals(6F, prepared.evaluate(2F, 6F, 9F));
+        assertEquals(-2F, prepared.evaluate(0F, 2F, 1F));
+    }
+
+    public void testMatchesParseTree() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("-a+2×b+(4×5-√c)+2^2^2");
+        float expected = ArithmeticParser.parseExpression("-1+2×3+(4×5-√4)+2^2^2").evaluate();
+        assertEquals(expected, prepared.evaluate(1F, 3F, 4F));
+    }
+
+    public void testConstantExpression() throws ParseException {
+        assertEquals(0, PreparedExpression.prepare("7").variableCount());
+        assertEquals(7F, PreparedExpression.prepare("7").evaluate());
+        assertEquals(5F, PreparedExpression.prepare("x").evaluate(5F));
+    }
+
+    public void testVariablesRejectedByDefault() {
+        try {
+            ArithmeticParser.parseExpression("1+x");
+            fail("ArithmeticParser did not throw exception given a variable");
+        } catch (ParseException exception) {
+            assertTrue(true);
+        }
+    }
+
+    public void testInvalidExpression() {
+        for (String expression : new String[] {"2x", "(1)x", "x y", "x(1)", "1+"}) {
+            try {
+                PreparedExpression.prepare(expression);
+                fail("PreparedExpression did not throw exception given '" + expression + "'");
+            } catch (ParseException exception) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    public void testDivideByZero() throws ParseException {
+        PreparedExpression prepared = PreparedExpression.prepare("1÷x");
+        assertEquals(0.5F, prepared.evaluate(2F));
+        try {
+            prepared.evaluate(0F);
+            fail("PreparedExpression did not throw exception when dividing by zero");
+        } catch (IllegalStateException exception) {
+            assertTrue(true);
+        }
+    }
+}
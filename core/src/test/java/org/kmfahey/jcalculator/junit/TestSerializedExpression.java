@@ -0,0 +1,144 @@
+package org.kmfahey.jcalculator.junit;
+
+import junit.framework.TestCase;
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.ExpressionInterner;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+import org.kmfahey.jcalculator.SerializedExpression;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+
+public final class TestSerializedExpression extends TestCase {
+
+    public void testRoundTrip() throws ParseException {
+        for (String expression : ExpressionFixtures.EXPRESSIONS) {
+            ParseTreeNode parseTree = ArithmeticParser.parseExpression(expression);
+            SerializedExpression serialized =
+                    SerializedExpression.deserialize(ByteBuffer.wrap(SerializedExpression.serialize(parseTree)));
+            assertEquals(expression, parseTree.evaluate(), serialized.evaluate());
+            assertEquals(expression, parseTree, serialized.toParseTree());
+            assertEquals(expression, PostfixProgram.compile(parseTree).length(), serialized.length());
+        }
+        byte[] bytes = SerializedExpression.serialize(ArithmeticParser.parseExpression("x×(y+x)-√z", true));
+        SerializedExpression serialized = SerializedExpression.deserialize(ByteBuffer.wrap(bytes));
+        assertEquals(3, serialized.variableCount());
+        assertEquals("y", serialized.variableName(1));
+        assertEquals(7F, serialized.evaluate(new float[] {2F, 3F, 9F}));
+        assertEquals(ArithmeticParser.parseExpression("x×(y+x)-√z", true), serialized.toParseTree());
+    }
+
+    public void testSharedSubexpressions() throws ParseException {
+        ParseTreeNode parseTree =
+                new ExpressionInterner().intern(ArithmeticParser.parseExpression("(1+2)×(1+2)-(1+2)"));
+        PostfixProgram program = PostfixProgram.compile(parseTree);
+        SerializedExpression serialized =
+                SerializedExpression.deserialize(ByteBuffer.wrap(SerializedExpression.serialize(program)));
+        assertEquals(program.length(), serialized.length());
+        assertEquals(6F, serialized.evaluate());
+        ParseTreeNode rebuilt = serialized.toParseTree();
+        assertEquals(parseTree, rebuilt);
+        assertSame(rebuilt.getLeftChildNode().getLeftChildNode(), rebuilt.getRightChildNode());
+    }
+
+    public void testVarintBoundaries() throws ParseException {
+        /* A chain of n "^" operators is right-associative, so it holds n + 1
+         * values on the stack at once; the depth is the varint at offset 4. */
+        int[] depths = {127, 128, 16383, 16384};
+        byte[][] headers = {{127}, {(byte) 0x80, 1}, {(byte) 0xFF, 127}, {(byte) 0x80, (byte) 0x80, 1}};
+        for (int index = 0; index < depths.length; index++) {
+            StringBuilder expression = new StringBuilder("1");
+            for (int count = 1; count < depths[index]; count++) {
+                expression.append("^1");
+            }
+            byte[] bytes = SerializedExpression.serialize(ArithmeticParser.parseExpression(expression.toString()));
+            assertTrue(Arrays.equals(headers[index], Arrays.copyOfRange(bytes, 4, 4 + headers[index].length)));
+            SerializedExpression serialized = SerializedExpression.deserialize(ByteBuffer.wrap(bytes));
+            assertEquals(2 * depths[index] - 1, serialized.length());
+            assertEquals(1F, serialized.evaluate());
+        }
+    }
+
+    public void testManySlotsAndTemporaries() throws ParseException {
+        /* 200 variables and 200 shared subexpressions, so the slot and
+         * temporary operands past 127 take two varint bytes. */
+        StringBuilder variables = new StringBuilder("v0");
+        StringBuilder shared = new StringBuilder("(0+0)×(0+0)");
+        float[] slotValues = new float[200];
+        for (int index = 1; index < 200; index++) {
+            variables.append("+v").append(index);
+            shared.append("+(").append(index).append("+0)×(").append(index).append("+0)");
+            slotValues[index] = index;
+        }
+        SerializedExpression serialized = SerializedExpression.deserialize(ByteBuffer.wrap(
+                SerializedExpression.serialize(ArithmeticParser.parseExpression(variables.toString(), true))));
+        assertEquals(200, serialized.variableCount());
+        assertEquals("v199", serialized.variableName(199));
+        assertEquals(19900F, serialized.evaluate(slotValues));
+
+        ParseTreeNode parseTree = new ExpressionInterner().intern(ArithmeticParser.parseExpression(shared.toString()));
+        PostfixProgram program = PostfixProgram.compile(parseTree);
+        serialized = SerializedExpression.deserialize(ByteBuffer.wrap(SerializedExpression.serialize(program)));
+        assertEquals(program.length(), serialized.length());
+        assertEquals(program.evaluate(), serialized.evaluate());
+        assertEquals(parseTree, serialized.toParseTree());
+    }
+
+    public void testBackToBackEncodings() throws ParseException {
+        String[] expressions = ExpressionFixtures.expressionsWith("7", "(1+2)×(1+2)-(1+2)");
+        byte[][] encodings = new byte[expressions.length][];
+        int totalLength = 1;
+        for (int index = 0; index < expressions.length; index++) {
+            encodings[index] = SerializedExpression.serialize(
+                    new ExpressionInterner().intern(ArithmeticParser.parseExpression(expressions[index], true)));
+            totalLength += encodings[index].length;
+        }
+        /* The encodings follow a byte that isn't part of any, in a direct
+         * buffer, so they're read at nonzero offsets without a backing
+         * array. */
+        ByteBuffer buffer = ByteBuffer.allocateDirect(totalLength);
+        buffer.put((byte) 0);
+        for (byte[] encoding : encodings) {
+            buffer.put(encoding);
+        }
+        buffer.flip().get();
+        SerializedExpression[] serialized = new SerializedExpression[expressions.length];
+        for (int index = 0; index < expressions.length; index++) {
+            serialized[index] = SerializedExpression.deserialize(buffer);
+        }
+        assertFalse(buffer.hasRemaining());
+        for (int index = 0; index < expressions.length; index++) {
+            assertEquals(expressions[index], ArithmeticParser.parseExpression(expressions[index], true).evaluate(),
+                         serialized[index].evaluate());
+        }
+    }
+
+    public void testMalformedInput() throws ParseException {
+        byte[] bytes = SerializedExpression.serialize(ArithmeticParser.parseExpression("1+2"));
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        byte[] badVersion = bytes.clone();
+        badVersion[3] = 2;
+        byte[] badOpcode = bytes.clone();
+        badOpcode[bytes.length - 1] = 42;
+        byte[] badDepth = bytes.clone();
+        badDepth[4] = 3;
+        Object[][] cases = {
+            {badMagic, "buffer doesn't hold a serialized expression"},
+            {badVersion, "serialized expression format version 2 isn't supported"},
+            {badOpcode, "serialized expression has unknown opcode 42"},
+            {badDepth, "serialized expression's stack depth isn't 3"},
+            {Arrays.copyOf(bytes, bytes.length - 1), "serialized expression is truncated"}
+        };
+        for (Object[] testCase : cases) {
+            try {
+                SerializedExpression.deserialize(ByteBuffer.wrap((byte[]) testCase[0]));
+                fail("SerializedExpression did not throw exception given '" + testCase[1] + "' input");
+            } catch (IllegalArgumentException exception) {
+                assertEquals(testCase[1], exception.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.kmfahey.jcalculator.jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two sets of benchmark results saved as CSV by BenchmarkRunner,
+ * printing for every benchmark and parameter combination in both its score
+ * before and after and the change between them. Only each benchmark's time
+ * and its bytes allocated per operation are compared; the GC profiler's other
+ * figures vary too much from run to run to be worth diffing.
+ *
+ * Usage: java -cp jmh/target/benchmarks.jar org.kmfahey.jcalculator.jmh.BaselineDiff
+ *            baseline.csv results.csv
+ */
+public final class BaselineDiff {
+
+    /** The suffix JMH gives the GC profiler's bytes-allocated-per-op rows. */
+    private static final String ALLOCATION_SUFFIX = ":gc.alloc.rate.norm";
+
+    /** The package prefix trimmed from benchmark names when printing them. */
+    private static final String PACKAGE_PREFIX = BaselineDiff.class.getPackageName() + ".";
+
+    private BaselineDiff() { }
+
+    /**
+     * Prints the differences between two result files.
+     *
+     * @param args the baseline's CSV file and the CSV file to compare with it
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: java " + BaselineDiff.class.getName() + " baseline.csv results.csv");
+            System.exit(2);
+        }
+        Map<String, String[]> baseline = readResults(Path.of(args[0]));
+        Map<String, String[]> results = readResults(Path.of(args[1]));
+        System.out.printf("%-72s %14s %14s %9s%n", "benchmark", "baseline", "results", "change");
+        for (Map.Entry<String, String[]> entry : results.entrySet()) {
+            String[] baselineRow = baseline.get(entry.getKey());
+            if (baselineRow == null) {
+                continue;
+            }
+            double baselineScore = Double.parseDouble(baselineRow[4]);
+            double score = Double.parseDouble(entry.getValue()[4]);
+            double change = (baselineScore != 0) ? (score - baselineScore) / baselineScore * 100 : 0;
+            System.out.printf("%-72s %14.3f %14.3f %+8.1f%% %s%n", entry.getKey(), baselineScore, score, change,
+                              entry.getValue()[6]);
+        }
+    }
+
+    /* Reads a CSV result file into a map from each compared row's benchmark
+     * name and parameter values to the row's fields, in file order. */
+    private static Map<String, String[]> readResults(final Path path) throws IOException {
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (int lineIndex = 1; lineIndex < lines.size(); lineIndex++) {
+            String[] fields = splitFields(lines.get(lineIndex));
+            if (fields.length < 7) {
+                throw new IOException(path + ":" + (lineIndex + 1) + ": not a JMH CSV result row");
+            }
+            String benchmark = fields[0];
+            if (benchmark.indexOf(':') >= 0 && !benchmark.endsWith(ALLOCATION_SUFFIX)) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(benchmark.startsWith(PACKAGE_PREFIX)
+                                                  ? benchmark.substring(PACKAGE_PREFIX.length()) : benchmark);
+            for (int index = 7; index < fields.length; index++) {
+                key.append(' ').append(fields[index]);
+            }
+            rows.put(key.toString(), fields);
+        }
+        return rows;
+    }
+
+    /* Splits a CSV line into its fields, removing the quotes around any
+     * quoted field. */
+    private static String[] splitFields(final String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int index = 0; index < line.length(); index++) {
+            char thisChar = line.charAt(index);
+            if (thisChar == '"') {
+                quoted = !quoted;
+            } else if (thisChar == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(thisChar);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,62 @@
+package org.kmfahey.jcalculator.jmh;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result comes
+ * with the allocation rate and bytes allocated per operation alongside its
+ * time, and saves the results as CSV for BaselineDiff to compare.
+ *
+ * Usage: java -jar jmh/target/benchmarks.jar [JMH options]
+ *
+ * Any option JMH's own command line takes may be given, such as a regular
+ * expression selecting benchmarks or "-p size=16". Unless "-rff" names another
+ * file, results are written to jmh-result.csv.
+ */
+public final class BenchmarkRunner {
+
+    /** The file results are written to unless another is named. */
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.csv";
+
+    private BenchmarkRunner() { }
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @param args JMH command-line options
+     */
+    public static void main(final String[] args) throws RunnerException, IOException {
+        CommandLineOptions commandLineOptions;
+        try {
+            commandLineOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException exception) {
+            System.err.println("error: " + exception.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+                || commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions)
+                                                            .addProfiler(GCProfiler.class);
+        if (commandLineOptions.getResultFormat().hasValue() || commandLineOptions.getResult().hasValue()) {
+            options.resultFormat(commandLineOptions.getResultFormat().orElse(ResultFormatType.CSV));
+        } else {
+            options.resultFormat(ResultFormatType.CSV).result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+package org.kmfahey.jcalculator.jmh;
+
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.ExpressionLexer;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.kmfahey.jcalculator.PostfixProgram;
+import org.kmfahey.jcalculator.SerializedExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage of evaluating an expression, separately and end to
+ * end, over every ExpressionShape at a few sizes: tokenizing it, taking the
+ * text of each number as ArithmeticParser does, parsing it
+ * into a tree, evaluating the tree recursively, in float and in double, and
+ * as a compiled PostfixProgram, and parsing and evaluating it together as the
+ * calculator does. The postfix path is benchmarked both as parsing into a tree
+ * and compiling that, and as compiling straight from the parser. Loading and
+ * evaluating a stored SerializedExpression is benchmarked against parsing the
+ * expression's text again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ExpressionBenchmark {
+
+    @Param({"SHORT", "FLAT_SUM", "DEEP_PARENS", "POWER_CHAIN", "UNARY_HEAVY"})
+    private ExpressionShape shape;
+
+    @Param({"16", "256"})
+    private int size;
+
+    private String expression;
+    private ParseTreeNode parseTree;
+    private PostfixProgram program;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws ParseException {
+        expression = shape.build(size);
+        parseTree = ArithmeticParser.parseExpression(expression);
+        program = PostfixProgram.compile(parseTree);
+        serialized = SerializedExpression.serialize(program);
+        if (Float.isInfinite(parseTree.evaluate())) {
+            throw new IllegalStateException("expression " + shape + " overflowed at size " + size);
+        }
+    }
+
+    @Benchmark
+    public void tokenize(final Blackhole blackhole) throws ParseException {
+        ExpressionLexer lexer = new ExpressionLexer(expression);
+        int tokenCode;
+        while ((tokenCode = lexer.nextToken()) != ExpressionLexer.END_OF_INPUT) {
+            blackhole.consume((tokenCode == ExpressionLexer.NUMBER) ? lexer.tokenText() : tokenCode);
+        }
+    }
+
+    @Benchmark
+    public ParseTreeNode parse() throws ParseException {
+        return ArithmeticParser.parseExpression(expression);
+    }
+
+    @Benchmark
+    public PostfixProgram parseThenCompile() throws ParseException {
+        return PostfixProgram.compile(ArithmeticParser.parseExpression(expression));
+    }
+
+    @Benchmark
+    public PostfixProgram compile() throws ParseException {
+        return ArithmeticParser.compileExpression(expression);
+    }
+
+    @Benchmark
+    public float evaluateTree() {
+        return parseTree.evaluate();
+    }
+
+    @Benchmark
+    public double evaluateTreeDouble() {
+        return parseTree.evaluateDouble();
+    }
+
+    @Benchmark
+    public float evaluatePostfix() {
+        return program.evaluate();
+    }
+
+    @Benchmark
+    public float parseAndEvaluate() throws ParseException {
+        return ArithmeticParser.parseExpression(expression).evaluate();
+    }
+
+    @Benchmark
+    public float compileAndEvaluate() throws ParseException {
+        return ArithmeticParser.compileExpression(expression).evaluate();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return SerializedExpression.serialize(program);
+    }
+
+    @Benchmark
+    public float deserializeAndEvaluate() {
+        return SerializedExpression.deserialize(ByteBuffer.wrap(serialized)).evaluate();
+    }
+}
@@ -0,0 +1,68 @@
+package org.kmfahey.jcalculator.jmh;
+
+/**
+ * Enumerates the shapes of expression the benchmarks are run over, each of
+ * which stresses a different part of the tokenizer, parser and evaluator.
+ * Every shape but SHORT is built to a requested size, the number of operands
+ * it holds, and evaluates without error.
+ */
+public enum ExpressionShape {
+
+    /** A short expression of the kind typed into the calculator, which
+     *  ignores the size. */
+    SHORT {
+        String build(final int size) {
+            return "1+2×3-4÷5";
+        }
+    },
+
+    /** A long run of additions, which keeps the operator stack shallow and
+     *  builds a tree as deep as it is long down its left side. */
+    FLAT_SUM {
+        String build(final int size) {
+            StringBuilder expression = new StringBuilder("1");
+            for (int index = 1; index < size; index++) {
+                expression.append('+').append(index % 10).append(".5");
+            }
+            return expression.toString();
+        }
+    },
+
+    /** An addition nested inside size levels of parentheses. */
+    DEEP_PARENS {
+        String build(final int size) {
+            StringBuilder expression = new StringBuilder();
+            expression.append("(".repeat(size)).append('1');
+            for (int index = 0; index < size; index++) {
+                expression.append("+1)");
+            }
+            return expression.toString();
+        }
+    },
+
+    /** A chain of exponentiations, which are right-associative, so every
+     *  operator stays on the operator stack until the end of the input. */
+    POWER_CHAIN {
+        String build(final int size) {
+            StringBuilder expression = new StringBuilder("1.001");
+            for (int index = 1; index < size; index++) {
+                expression.append("^1.001");
+            }
+            return expression.toString();
+        }
+    },
+
+    /** Operands each wrapped in several unary minuses and square roots. */
+    UNARY_HEAVY {
+        String build(final int size) {
+            StringBuilder expression = new StringBuilder("--√4");
+            for (int index = 1; index < size; index += 2) {
+                expression.append((index % 4 == 1) ? "×-√-" : "+--√").append(index % 10);
+            }
+            return expression.toString();
+        }
+    };
+
+    /* Returns an expression of this shape holding about size operands. */
+    abstract String build(int size);
+}
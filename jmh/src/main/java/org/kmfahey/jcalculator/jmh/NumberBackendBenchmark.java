@@ -0,0 +1,57 @@
+package org.kmfahey.jcalculator.jmh;
+
+import org.kmfahey.jcalculator.ArithmeticParser;
+import org.kmfahey.jcalculator.NumberBackend;
+import org.kmfahey.jcalculator.ParseTreeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks evaluating the same parse tree in each NumberBackend, over the
+ * shapes of expression that evaluate in all of them; UNARY_HEAVY takes square
+ * roots of negative numbers, which only float and double evaluate.
+ * POWER_CHAIN's fractional powers are the decimal backend's slowest case.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class NumberBackendBenchmark {
+
+    @Param({"float", "double", "decimal"})
+    private String backendName;
+
+    @Param({"SHORT", "FLAT_SUM", "DEEP_PARENS", "POWER_CHAIN"})
+    private ExpressionShape shape;
+
+    @Param({"64"})
+    private int size;
+
+    private NumberBackend<?> backend;
+    private ParseTreeNode parseTree;
+
+    @Setup
+    public void setUp() throws ParseException {
+        backend = NumberBackend.forName(backendName);
+        parseTree = ArithmeticParser.parseExpression(shape.build(size));
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return backend.evaluate(parseTree);
+    }
+}
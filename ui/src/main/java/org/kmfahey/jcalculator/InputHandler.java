@@ -0,0 +1,331 @@
+package org.kmfahey.jcalculator;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyledDocument;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.ParseException;
+
+
+/**
+ * Implements the ActionListener interface; used by JButtons defined in
+ * JCalculator to handle click events. Stores a reference to the calculator's
+ * JTextPane display field, and an IncrementalExpression holding the display
+ * text and the state of parsing it, which is kept in step with the display as
+ * each button is pressed. The actionPerformed method handles each button press
+ * and updates the display field accordingly.
+ *
+ * Every handler decides what to do from the end of the expression, which the
+ * IncrementalExpression answers for without looking at the rest of the text,
+ * and the display is updated by appending or removing the characters that
+ * changed, so a button press that edits the end of the expression takes the
+ * same time however long the expression is. Pressing "=" finishes the parse
+ * the IncrementalExpression has kept up with. Only "±" and "1/𝘹", which change
+ * the start of the expression, rebuild it.
+ */
+public class InputHandler implements ActionListener {
+
+    /** The expression the display is reset to. */
+    private static final IncrementalExpression ZERO = IncrementalExpression.of("0");
+
+    private final JTextPane calculatorField;
+
+    /** The expression in the display. */
+    private IncrementalExpression displayExpression;
+
+    /** The preview told of each change to the display, or null if none. */
+    private final LivePreview livePreview;
+
+    /** The arithmetic expressions are evaluated in. */
+    private final NumberBackend<?> numberBackend;
+
+    /**
+     * Constructs the object, storing the calculator's JTextPane for later.
+     *
+     * @param calcField The calculator's JTextPane object representing its
+     *                  display. */
+    public InputHandler(final JTextPane calcField) {
+        this(calcField, null);
+    }
+
+    /**
+     * Constructs the object, storing the calculator's JTextPane for later,
+     * and a LivePreview to tell of each change to the display.
+     *
+     * @param calcField      The calculator's JTextPane object representing
+     *                       its display.
+     * @param livePreviewVal The preview showing the running value of the
+     *                       display's expression, or null for none. */
+    public InputHandler(final JTextPane calcField, final LivePreview livePreviewVal) {
+        this(calcField, livePreviewVal, NumberBackend.FLOAT);
+    }
+
+    /**
+     * Constructs the object, storing the calculator's JTextPane for later, a
+     * LivePreview to tell of each change to the display, and the
+     * NumberBackend expressions are evaluated in when "=" is pressed.
+     *
+     * @param calcField        The calculator's JTextPane object representing
+     *                         its display.
+     * @param livePreviewVal   The preview showing the running value of the
+     *                         display's expression, or null for none.
+     * @param numberBackendVal The arithmetic expressions are evaluated in. */
+    public InputHandler(final JTextPane calcField, final LivePreview livePreviewVal,
+                        final NumberBackend<?> numberBackendVal) {
+        if (numberBackendVal == null) { throw new IllegalArgumentException("argument 'numberBackendVal' was null"); }
+        calculatorField = calcField;
+        displayExpression = IncrementalExpression.of(calcField.getText());
+        livePreview = livePreviewVal;
+        numberBackend = numberBackendVal;
+    }
+
+    /**
+     * Called by any of the JButtons defined in JCalculator when one is pressed.
+     * An error message or an empty display, which "±" and "1/𝘹" can leave, is
+     * treated as "0". Extracts the button text from the event, and uses a
+     * private handler method based on the button text to determine how to
+     * modify the expression in the display. The calculator's JTextPane's text
+     * is modified based on the handler method's results.
+     *
+     * @param event an ActionEvent object generated by the JButton which calls
+     *              this method when clicked
+     */
+    public void actionPerformed(final ActionEvent event) {
+        JButton sourceButton = (JButton) event.getSource();
+        IncrementalExpression expression = displayExpression;
+        if (expression.length() == 0 || expression.contentEquals("Error")) {
+            expression = ZERO;
+        }
+        String buttonText = sourceButton.getText();
+        IncrementalExpression newExpression = expression;
+        switch (buttonText) {
+            case "0": case "1": case "2": case "3": case "4": case "5": case "6": case "7": case "8": case "9":
+                newExpression = handleDigit(expression, buttonText.charAt(0)); break;
+            case ".":
+                newExpression = handleDecimalPoint(expression); break;
+            case "+": case "-": case "×": case "÷":
+                newExpression = handlePlusMinusMultDiv(expression, buttonText.charAt(0)); break;
+            case "𝘹ʸ":
+                newExpression = handleExponentiation(expression); break;
+            case "√𝘹":
+                newExpression = handleSquareRoot(expression); break;
+            case "(":
+                newExpression = handleLeftParen(expression); break;
+            case ")":
+                newExpression = handleRightParen(expression); break;
+            case "C":
+                newExpression = handleClear(expression); break;
+            case "⌫":
+                newExpression = handleBackspace(expression); break;
+            case "±":
+                newExpression = handlePlusOrMinus(expression); break;
+            case "1/𝘹":
+                newExpression = handleReciprocal(expression); break;
+            case "=":
+                newExpression = handleEquals(expression); break;
+            default:
+                break;
+        }
+        updateDisplay(newExpression);
+        if (livePreview != null && newExpression != expression) {
+            livePreview.expressionChanged(newExpression);
+        }
+        if (buttonText.equals("=")) {
+            StartupTiming.markFirstResult();
+        }
+    }
+
+    /* Replaces the expression in the display. Where the new expression is the
+     * old one with a character appended, removed or replaced at the end, only
+     * that character of the display's document is changed; otherwise the
+     * display's text is replaced. */
+    private void updateDisplay(final IncrementalExpression newExpression) {
+        IncrementalExpression oldExpression = displayExpression;
+        displayExpression = newExpression;
+        int oldLength = oldExpression.length();
+        int newLength = newExpression.length();
+        StyledDocument document = calculatorField.getStyledDocument();
+        try {
+            if (newExpression == oldExpression) {
+                return;
+            } else if (newLength > 0 && newExpression.removeLast() == oldExpression) {
+                document.insertString(oldLength, String.valueOf(newExpression.lastChar()), null);
+            } else if (oldLength > 0 && oldExpression.removeLast() == newExpression) {
+                document.remove(newLength, 1);
+            } else if (newLength > 0 && oldLength > 0 && newExpression.removeLast() == oldExpression.removeLast()) {
+                document.remove(oldLength - 1, 1);
+                document.insertString(oldLength - 1, String.valueOf(newExpression.lastChar()), null);
+            } else {
+                calculatorField.setText(newExpression.toString());
+            }
+        } catch (BadLocationException exception) {
+            /* The document has been changed from outside; overwrite it. */
+            calculatorField.setText(newExpression.toString());
+        }
+    }
+
+    /* Returns true if the character is one of [0-9.]. */
+    private static boolean isNumeric(final char thisChar) {
+        return (thisChar >= '0' && thisChar <= '9') || thisChar == '.';
+    }
+
+    /* Returns true if the character is matched by the regex character class
+     * [+-×÷^√], the test a few of the handlers have always used for an
+     * expression ending in an operator. Read as written, the class's "+-×"
+     * is the range U+002B to U+00D7, which takes in digits, ".", "^" and
+     * letters too, but not parens. */
+    private static boolean isInOperatorRange(final char thisChar) {
+        return (thisChar >= '+' && thisChar <= '×') || thisChar == '÷' || thisChar == '√';
+    }
+
+    /* Handles one of the digit buttons being pressed. If the display text
+     * equals "0", it's replaced with the digit.
+     *
+     * Otherwise if it's one character long, the digit is appended to the
+     * display text.
+     *
+     * Otherwise if the display text ends with [^0-9.] followed by a "0", the
+     * "0" is replaced with the digit.
+     *
+     * Otherwise the digit is appended to the display text. */
+    private IncrementalExpression handleDigit(final IncrementalExpression expression, final char digit) {
+        if (expression.contentEquals("0")) {
+            return IncrementalExpression.EMPTY.append(digit);
+        } else if (expression.length() == 1) {
+            return expression.append(digit);
+        } else if (expression.lastChar() == '0' && !isNumeric(expression.removeLast().lastChar())) {
+            return expression.removeLast().append(digit);
+        } else {
+            return expression.append(digit);
+        }
+    }
+
+    /* Handles the "." button being pressed. If the display text is "0", or it's
+     * entirely digits, or it ends with [^0-9.] followed by [0-9], a "." is
+     * appended to the display text: that is, if it ends with a number that
+     * doesn't yet have a decimal point. Otherwise, the display text is
+     * unaltered. */
+    private IncrementalExpression handleDecimalPoint(final IncrementalExpression expression) {
+        if (expression.numberLength() > 0 && !expression.numberHasPoint()) {
+            return expression.append('.');
+        } else {
+            return expression;
+        }
+    }
+
+    /* Handles the "+", "×", "÷", or "-" buttons being pressed. If the display
+     * text ends in one of [+×÷^√-], it's replaced by the button text.
+     * Otherwise the button text is appended to the end of the display text. */
+    private IncrementalExpression handlePlusMinusMultDiv(final IncrementalExpression expression,
+                                                         final char operator) {
+        if ("+×÷^√-".indexOf(expression.lastChar()) >= 0) {
+            return expression.removeLast().append(operator);
+        } else {
+            return expression.append(operator);
+        }
+    }
+
+    /* Handles the "𝘹ʸ" button being pressed. If the display text ends in
+     * one of [+-×÷^√], it's replaced by a "^". Otherwise, a "^" is appended
+     * to the display text. */
+    private IncrementalExpression handleExponentiation(final IncrementalExpression expression) {
+        if (isInOperatorRange(expression.lastChar())) {
+            return expression.removeLast().append('^');
+        } else {
+            return expression.append('^');
+        }
+    }
+
+    /* Handles the "√" button being pressed. If the display text doesn't
+     * end in a digit or a "√", adds a "√" to the end. Otherwise leaves it
+     * unchanged. */
+    private IncrementalExpression handleSquareRoot(final IncrementalExpression expression) {
+        if (!isNumeric(expression.lastChar()) && expression.lastChar() != '√') {
+            return expression.append('√');
+        } else {
+            return expression;
+        }
+    }
+
+    /* Handles the "(" button being pressed. If the display text is "0", sets it
+     * to "(". If display text doesn't end in a number, adds a left paren at the
+     * end. Otherwise, leaves the display text unchanged. */
+    private IncrementalExpression handleLeftParen(final IncrementalExpression expression) {
+        if (expression.contentEquals("0")) {
+            return IncrementalExpression.EMPTY.append('(');
+        } else if (!isNumeric(expression.lastChar())) {
+            return expression.append('(');
+        } else {
+            return expression;
+        }
+    }
+
+    /* Handles the ")" button being pressed. If the left parens in the display
+     * text outnumber the right parens, which the expression keeps count of,
+     * adds a right paren at the end of the display text. Otherwise, leaves the
+     * display text unchanged. */
+    private IncrementalExpression handleRightParen(final IncrementalExpression expression) {
+        if (!isInOperatorRange(expression.lastChar()) && expression.parenDepth() > 0) {
+            return expression.append(')');
+        } else {
+            return expression;
+        }
+    }
+
+    /* Handles the clear button being pressed. Sets the display text to "0". */
+    private IncrementalExpression handleClear(final IncrementalExpression expression) {
+        return ZERO;
+    }
+
+    /* Handles the backspace button being pressed. If the display text is longer
+     * than 1 character, the last character is removed; otherwise the display
+     * text is set to 0. */
+    private IncrementalExpression handleBackspace(final IncrementalExpression expression) {
+        if (expression.length() > 1) {
+            return expression.removeLast();
+        } else {
+            return ZERO;
+        }
+    }
+
+    /* Handles the "±" button being pressed. If the display text already begins
+     * with a "-", it's removed; otherwise a "-" is prepended to the display
+     * text. */
+    private IncrementalExpression handlePlusOrMinus(final IncrementalExpression expression) {
+        if (expression.startsWith("-")) {
+            return IncrementalExpression.of(expression.toString().substring(1));
+        } else {
+            return IncrementalExpression.of("-" + expression);
+        }
+    }
+
+    /* Handles the "1/x" button being pressed. If the display text is already
+     * in a reciprocal, that is it begins with "1÷", it's undone, otherwise the
+     * display text is wrapped in a reciprocal. */
+    private IncrementalExpression handleReciprocal(final IncrementalExpression expression) {
+        if (expression.startsWith("1÷")) {
+            return IncrementalExpression.of(expression.toString().substring(2));
+        } else {
+            return IncrementalExpression.of("1÷(" + expression + ")");
+        }
+    }
+
+    /* Handles the "=" button being pressed. Finishes parsing the expression in
+     * the display into a parse tree of ParseTreeNode objects, then evaluates
+     * it in the NumberBackend, a float result by default. Returns the result,
+     * formatted by the backend. A lone number is left as it is. */
+    private IncrementalExpression handleEquals(final IncrementalExpression expression) {
+        try {
+            ParseTreeNode parseTree = expression.parse();
+            if (parseTree == null) {
+                return expression;
+            }
+            return IncrementalExpression.of(numberBackend.evaluateAndFormat(parseTree));
+        } catch (IllegalStateException exception) {
+            return IncrementalExpression.of("Error");
+        } catch (ParseException | NullPointerException exception) {
+            return expression;
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package org.kmfahey.jcalculator;
 
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.Toolkit;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import javax.swing.AbstractAction;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRootPane;
 import javax.swing.JTextPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
@@ -28,6 +37,21 @@ import javax.swing.text.StyleConstants;
  */
 public class JCalculator extends JFrame {
 
+    /** The system property naming the NumberBackend expressions are
+     *  evaluated in, as NumberBackend.forName() names them. */
+    private static final String NUMBERS_PROPERTY = "jcalculator.numbers";
+
+    /** The buttons pressed, in order, when the calculator is run with the
+     *  --exercise option: a few sample expressions, between them pressing
+     *  every button, each ended with "=". */
+    private static final String[][] EXERCISE_BUTTON_PRESSES = {
+        {"1", "2", "+", "3", "×", "4", "="},
+        {"C", "(", "7", ".", "5", "-", "2", ")", "÷", "4", "="},
+        {"C", "9", "√𝘹", "="},
+        {"C", "2", "𝘹ʸ", "1", "0", "="},
+        {"C", "8", "1/𝘹", "±", "6", "⌫", "="},
+    };
+
     /*
      * Instances the JFrame subclass JCalculator object and sets up the entire
      * calculator UI.
@@ -110,14 +134,27 @@ public class JCalculator extends JFrame {
         StyleConstants.setFontSize(attribs, 36);
         displayTextPane.setParagraphAttributes(attribs, true);
 
+        /* Instancing the label above the display field that previews the
+         * running value of the expression, and configuring it to match. */
+        JLabel previewLabel = new JLabel(" ", SwingConstants.RIGHT);
+        previewLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+        previewLabel.setForeground(Color.GRAY);
+        previewLabel.setBackground(displayTextPane.getBackground());
+        previewLabel.setOpaque(true);
+
         /* Setting bounds on the display field so it doesn't resize when text
-         * overflows it. */
+         * overflows it; the preview label takes its height from the top. */
+        textPaneDimensions.height -= previewLabel.getPreferredSize().height;
         displayTextPane.setMaximumSize(textPaneDimensions);
         displayTextPane.setPreferredSize(textPaneDimensions);
 
+        JPanel displayPanel = new JPanel(new BorderLayout());
+        displayPanel.add(previewLabel, BorderLayout.NORTH);
+        displayPanel.add(displayTextPane, BorderLayout.CENTER);
+
         /* Affixing each button to the GridBagLayout object with the appropriate
          * constraints. Can't summarize this one as a for loop either. */
-        calculatorPanel.add(displayTextPane, buildConstraints(0, 0, 1, 4));
+        calculatorPanel.add(displayPanel, buildConstraints(0, 0, 1, 4));
 
         calculatorPanel.add(leftParenthesisButton,  buildConstraints(1, 0, 1, 1));
         calculatorPanel.add(rightParenthesisButton, buildConstraints(1, 1, 1, 1));
@@ -151,8 +188,13 @@ public class JCalculator extends JFrame {
 
 
         /* Adding the InputHandler object, which implements ActionListener, to
-         * each JButton. */
-        InputHandler inputHandler = new InputHandler(displayTextPane);
+         * each JButton. It tells the LivePreview object of each change to the
+         * display, which evaluates the expression in the background. Both
+         * evaluate in the NumberBackend the jcalculator.numbers system
+         * property names, float by default. */
+        NumberBackend<?> numberBackend = NumberBackend.forName(System.getProperty(NUMBERS_PROPERTY, "float"));
+        InputHandler inputHandler = new InputHandler(displayTextPane, new LivePreview(previewLabel, numberBackend),
+                                                     numberBackend);
 
         plusOrMinusButton.addActionListener(inputHandler);
         zeroButton.addActionListener(inputHandler);
@@ -364,12 +406,43 @@ public class JCalculator extends JFrame {
         return elementConstraints;
     }
 
+    /*
+     * Presses through the sample expressions in EXERCISE_BUTTON_PRESSES on the
+     * event dispatch thread, as a user would, then closes the calculator. Used
+     * to train a CDS archive on the classes a real session loads, and to time
+     * startup.
+     */
+    private void exercise() throws InterruptedException, InvocationTargetException {
+        HashMap<String, JButton> buttonsByText = new HashMap<>();
+        for (Component component : getContentPane().getComponents()) {
+            if (component instanceof JButton) {
+                buttonsByText.put(((JButton) component).getText(), (JButton) component);
+            }
+        }
+        for (String[] buttonPresses : EXERCISE_BUTTON_PRESSES) {
+            for (String buttonText : buttonPresses) {
+                JButton button = buttonsByText.get(buttonText);
+                SwingUtilities.invokeAndWait(() -> button.doClick(0));
+            }
+        }
+        SwingUtilities.invokeAndWait(this::dispose);
+    }
+
     /**
      * The package's main() method; instances a JCalculator object and locates
-     * it on the screen. */
-    public static void main(final String[] args) {
+     * it on the screen. Given the --exercise option, presses through a few
+     * sample expressions and exits instead of waiting for input.
+     */
+    public static void main(final String[] args) throws InterruptedException, InvocationTargetException {
         JCalculator jcalc = new JCalculator();
+        jcalc.addWindowListener(new WindowAdapter() {
+            public void windowOpened(final WindowEvent event) { StartupTiming.markFirstFrame(); }
+        });
         jcalc.setVisible(true);
         jcalc.setLocationRelativeTo(null);
+        if (args.length > 0 && args[0].equals("--exercise")) {
+            jcalc.exercise();
+            System.exit(0);
+        }
     }
 }
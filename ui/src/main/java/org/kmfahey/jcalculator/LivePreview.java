@@ -0,0 +1,166 @@
+package org.kmfahey.jcalculator;
+
+import java.text.ParseException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JLabel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Shows the running value of the expression in the calculator's display as
+ * it's typed, in a label alongside the display. The value is worked out on a
+ * SwingWorker's background thread rather than the event dispatch thread, so
+ * however long the expression gets, pressing a button takes no longer than it
+ * did without the preview.
+ *
+ * InputHandler tells the preview each time the display changes, which only
+ * records the new expression and restarts a timer. Once no button has been
+ * pressed for DEBOUNCE_MILLIS, the latest expression is evaluated in the
+ * background; a burst of key presses is evaluated once, at its end. An
+ * evaluation still running when the display changes again is cancelled, and
+ * its result, if it arrives anyway, is dropped: only the result for the
+ * expression currently in the display is ever shown.
+ *
+ * The value shown is that of the expression as it would be if it were ended
+ * where it can be: any operators or left parens it ends in are left off, and
+ * any parens still open are closed, so "2×(3+4" and "2×(3+4×" both show 14.
+ * Nothing is shown where that leaves just a number, which the display already
+ * shows, or where the expression can't be evaluated.
+ */
+public final class LivePreview {
+
+    /** The milliseconds without a button press to wait before evaluating. */
+    public static final int DEBOUNCE_MILLIS = 150;
+
+    private final JLabel previewLabel;
+
+    /** The arithmetic the expression is evaluated in. */
+    private final NumberBackend<?> numberBackend;
+
+    private final Timer debounceTimer;
+
+    /* The expression to evaluate when the timer next fires. */
+    private IncrementalExpression pendingExpression = IncrementalExpression.EMPTY;
+
+    /* Counts the changes to the display, so an evaluation can tell whether
+     * the display has changed since it started. */
+    private long generation;
+
+    /* The evaluation running in the background, if any. */
+    private SwingWorker<String, Void> runningWorker;
+
+    /**
+     * Constructs the object, storing the label the preview is shown in and
+     * the NumberBackend the expression is evaluated in, which should be the
+     * one "=" evaluates in. The label is cleared.
+     *
+     * @param previewLabelVal  the label to show the running value in
+     * @param numberBackendVal the arithmetic the expression is evaluated in
+     */
+    public LivePreview(final JLabel previewLabelVal, final NumberBackend<?> numberBackendVal) {
+        if (previewLabelVal == null) { throw new IllegalArgumentException("argument 'previewLabelVal' was null"); }
+        if (numberBackendVal == null) { throw new IllegalArgumentException("argument 'numberBackendVal' was null"); }
+        previewLabel = previewLabelVal;
+        numberBackend = numberBackendVal;
+        previewLabel.setText(" ");
+        debounceTimer = new Timer(DEBOUNCE_MILLIS, event -> startEvaluation());
+        debounceTimer.setRepeats(false);
+    }
+
+    /**
+     * Called on the event dispatch thread when the display changes. Cancels
+     * any evaluation of an earlier expression, and schedules the new one to be
+     * evaluated once the debounce delay has passed without another change.
+     *
+     * @param expression the expression now in the display
+     */
+    public void expressionChanged(final IncrementalExpression expression) {
+        generation++;
+        pendingExpression = expression;
+        cancelRunningWorker();
+        if (expression.numberLength() == expression.length()) {
+            /* Just a number, as after "=" or "C"; there's nothing to preview,
+             * and no need to wait to say so. */
+            debounceTimer.stop();
+            previewLabel.setText(" ");
+        } else {
+            debounceTimer.restart();
+        }
+    }
+
+    /* Cancels the evaluation running in the background, if any. */
+    private void cancelRunningWorker() {
+        if (runningWorker != null) {
+            runningWorker.cancel(true);
+            runningWorker = null;
+        }
+    }
+
+    /* Called on the event dispatch thread when the debounce timer fires.
+     * Ends the pending expression where it can be ended, and evaluates it on
+     * a background thread. */
+    private void startEvaluation() {
+        IncrementalExpression expression = completed(pendingExpression);
+        if (expression.length() == 0) {
+            previewLabel.setText(" ");
+            return;
+        }
+        final long startedGeneration = generation;
+        runningWorker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return evaluate(expression);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || startedGeneration != generation) {
+                    return;
+                }
+                runningWorker = null;
+                try {
+                    String value = get();
+                    previewLabel.setText(value == null ? " " : "= " + value);
+                } catch (InterruptedException | ExecutionException | CancellationException exception) {
+                    previewLabel.setText(" ");
+                }
+            }
+        };
+        runningWorker.execute();
+    }
+
+    /* Returns the expression with any operators and left parens at its end
+     * left off, and any parens still open then closed. Each character taken
+     * off or added takes the same time however long the expression is, so
+     * this is cheap enough to do on the event dispatch thread. */
+    private static IncrementalExpression completed(final IncrementalExpression expression) {
+        IncrementalExpression completedExpression = expression;
+        while (completedExpression.length() > 0 && completedExpression.numberLength() == 0
+                && completedExpression.lastChar() != ')') {
+            completedExpression = completedExpression.removeLast();
+        }
+        for (int parenDepth = completedExpression.parenDepth(); parenDepth > 0; parenDepth--) {
+            completedExpression = completedExpression.append(')');
+        }
+        return completedExpression;
+    }
+
+    /* Evaluates an expression, off the event dispatch thread, and returns its
+     * value formatted for display, or null if it's just a number, evaluates to
+     * itself or can't be evaluated. */
+    private String evaluate(final IncrementalExpression expression) {
+        try {
+            ParseTreeNode parseTree = expression.parse();
+            if (parseTree == null) {
+                return null;
+            }
+            String value = numberBackend.evaluateAndFormat(parseTree);
+            /* A negative result left in the display by "=" parses as a
+             * negation, and needn't be repeated either. */
+            return expression.contentEquals(value) ? null : value;
+        } catch (ParseException | IllegalStateException | NullPointerException exception) {
+            return null;
+        }
+    }
+}
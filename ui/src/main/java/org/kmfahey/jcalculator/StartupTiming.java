@@ -0,0 +1,190 @@
+package org.kmfahey.jcalculator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the calculator takes to start: the time from launch to its
+ * window first opening, and to its first result, the first time "=" is
+ * pressed. Both are measured from when the process was launched, so they
+ * include JVM startup and class loading as well as the calculator's own setup.
+ *
+ * When the system property jcalculator.reportStartup is "true", JCalculator
+ * prints both times on standard error once it has them, in the form
+ *
+ *     jcalculator.startup first-frame-ms=N first-result-ms=N
+ *
+ * Run as a program, this class is a harness which launches the calculator
+ * repeatedly, each time with the --exercise option so it opens its window,
+ * presses through a few sample expressions and exits, and reports the median
+ * and range of both times: first without a CDS archive, then, if one is given,
+ * with it. The calculator is launched with this JVM's class path, which for
+ * an archive to be used must be the class path it was created with.
+ *
+ * Usage: java -cp ... org.kmfahey.jcalculator.StartupTiming [--runs=N]
+ *            [--archive=jcalculator.jsa]
+ */
+public final class StartupTiming {
+
+    /** The system property that turns on reporting. */
+    private static final String REPORT_PROPERTY = "jcalculator.reportStartup";
+
+    /** The system property the harness passes its launch time in, as
+     *  milliseconds since the epoch. */
+    private static final String LAUNCH_TIME_PROPERTY = "jcalculator.launchTime";
+
+    /** The prefix of the line the times are reported on. */
+    private static final String REPORT_PREFIX = "jcalculator.startup ";
+
+    /** The number of times the calculator is launched for each configuration
+     *  by default. */
+    private static final int DEFAULT_RUNS = 10;
+
+    /* The milliseconds from launch to each milestone, or -1 until it's been
+     * reached. */
+    private static final AtomicLong firstFrameMillis = new AtomicLong(-1);
+    private static final AtomicLong firstResultMillis = new AtomicLong(-1);
+
+    private StartupTiming() { }
+
+    /**
+     * Records that the calculator's window has opened, if it hasn't been
+     * recorded already.
+     */
+    public static void markFirstFrame() {
+        mark(firstFrameMillis);
+    }
+
+    /**
+     * Records that the calculator has produced a result, if it hasn't been
+     * recorded already.
+     */
+    public static void markFirstResult() {
+        mark(firstResultMillis);
+    }
+
+    /**
+     * Launches the calculator repeatedly and reports its startup times.
+     *
+     * @param args the options described above
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        int runs = DEFAULT_RUNS;
+        String archive = null;
+        for (String option : args) {
+            if (option.startsWith("--runs=")) {
+                try {
+                    runs = Integer.parseInt(option.substring("--runs=".length()));
+                } catch (NumberFormatException exception) {
+                    runs = 0;
+                }
+            } else if (option.startsWith("--archive=")) {
+                archive = option.substring("--archive=".length());
+            } else {
+                runs = 0;
+            }
+            if (runs < 1) {
+                System.err.println("usage: java " + StartupTiming.class.getName()
+                                   + " [--runs=N] [--archive=jcalculator.jsa]");
+                System.exit(2);
+            }
+        }
+        if (archive != null && !new File(archive).isFile()) {
+            System.err.println("error: no such archive: " + archive);
+            System.exit(2);
+        }
+
+        measure("without archive", runs, List.of("-Xshare:auto"));
+        if (archive != null) {
+            /* -Xshare:on makes the JVM fail rather than quietly carry on
+             * without the archive if it can't be used. */
+            measure("with archive", runs, List.of("-Xshare:on", "-XX:SharedArchiveFile=" + archive));
+        }
+    }
+
+    /* Records the time since launch in a milestone, if it's the first time
+     * it's been reached, and reports both milestones once both have been. */
+    private static void mark(final AtomicLong milestoneMillis) {
+        if (milestoneMillis.get() >= 0) {
+            return;
+        }
+        if (milestoneMillis.compareAndSet(-1, System.currentTimeMillis() - launchTimeMillis())
+                && firstFrameMillis.get() >= 0 && firstResultMillis.get() >= 0
+                && Boolean.getBoolean(REPORT_PROPERTY)) {
+            System.err.println(REPORT_PREFIX + "first-frame-ms=" + firstFrameMillis.get() + " first-result-ms="
+                               + firstResultMillis.get());
+        }
+    }
+
+    /* Returns when this process was launched: the time passed by the harness
+     * if there is one, which includes starting the JVM process itself, or
+     * else the start time the operating system gives for the process. */
+    private static long launchTimeMillis() {
+        String launchTime = System.getProperty(LAUNCH_TIME_PROPERTY);
+        if (launchTime != null) {
+            return Long.parseLong(launchTime);
+        }
+        return ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli)
+                            .orElse(System.currentTimeMillis());
+    }
+
+    /* Launches the calculator the given number of times with the given JVM
+     * options, and prints the median, minimum and maximum of each milestone. */
+    private static void measure(final String label, final int runs, final List<String> jvmOptions)
+            throws IOException, InterruptedException {
+        long[] firstFrames = new long[runs];
+        long[] firstResults = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.addAll(jvmOptions);
+            command.add("-D" + REPORT_PROPERTY + "=true");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(JCalculator.class.getName());
+            command.add("--exercise");
+            /* The launch time is added last, so that building the command
+             * isn't counted. */
+            command.add(1, "-D" + LAUNCH_TIME_PROPERTY + "=" + System.currentTimeMillis());
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+            String report = null;
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith(REPORT_PREFIX)) {
+                        report = line;
+                    } else {
+                        System.err.println(line);
+                    }
+                }
+            }
+            int exitStatus = process.waitFor();
+            if (exitStatus != 0 || report == null) {
+                throw new IOException("calculator exited with status " + exitStatus + " without reporting its "
+                                      + "startup time");
+            }
+            String[] fields = report.substring(REPORT_PREFIX.length()).split(" ");
+            firstFrames[run] = Long.parseLong(fields[0].substring(fields[0].indexOf('=') + 1));
+            firstResults[run] = Long.parseLong(fields[1].substring(fields[1].indexOf('=') + 1));
+        }
+        System.out.println(label + ": first frame " + summarize(firstFrames) + ", first result "
+                           + summarize(firstResults));
+    }
+
+    /* Renders the median and range of a set of times in milliseconds. */
+    private static String summarize(final long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return "median " + sorted[sorted.length / 2] + " ms (" + sorted[0] + "-" + sorted[sorted.length - 1] + ")";
+    }
+}